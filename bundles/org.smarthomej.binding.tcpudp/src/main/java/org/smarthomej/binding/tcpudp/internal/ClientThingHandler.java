@@ -13,22 +13,27 @@
 package org.smarthomej.binding.tcpudp.internal;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -49,8 +54,12 @@ import org.openhab.core.types.StateDescription;
 import org.openhab.core.types.StateDescriptionFragmentBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tcpudp.internal.client.RefreshScheduler;
+import org.smarthomej.binding.tcpudp.internal.client.ResponseCache;
+import org.smarthomej.binding.tcpudp.internal.client.TcpConnectionPool;
 import org.smarthomej.binding.tcpudp.internal.config.ClientConfiguration;
 import org.smarthomej.binding.tcpudp.internal.config.TcpUdpChannelConfig;
+import org.smarthomej.binding.tcpudp.internal.framing.FrameDecoder;
 import org.smarthomej.commons.SimpleDynamicStateDescriptionProvider;
 
 /**
@@ -60,16 +69,25 @@ import org.smarthomej.commons.SimpleDynamicStateDescriptionProvider;
  */
 @NonNullByDefault
 public class ClientThingHandler extends BaseThingHandler {
+    // maximum time between two checks for new data if idle gap framing is used
+    private static final long IDLE_GAP_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final Logger logger = LoggerFactory.getLogger(ClientThingHandler.class);
     private final ScheduledExecutorService scheduler = ThreadPoolManager.getScheduledPool("SHJ-tcpudp");
 
     private final SimpleDynamicStateDescriptionProvider dynamicStateDescriptionProvider;
     private final Map<ChannelUID, ChannelHandler> channels = new HashMap<>();
     private final Map<ChannelUID, String> readCommands = new HashMap<>();
+    // channels with the same stateContent share the request and the response
+    private final Map<String, List<ChannelUID>> requestSubscribers = new HashMap<>();
+    private final Map<String, Integer> refreshIntervals = new HashMap<>();
 
     private Function<String, Optional<ChannelHandlerContent>> doSyncRequest = this::doTcpSyncRequest;
     private final ChannelHandlerFactory channelHandlerFactory;
-    private @Nullable ScheduledFuture<?> refreshJob = null;
+    private @Nullable RefreshScheduler<String> refreshScheduler = null;
+    private ResponseCache<ChannelHandlerContent> responseCache = new ResponseCache<>(0);
+    private @Nullable TcpConnectionPool connectionPool = null;
+    private FrameDecoder frameDecoder = new FrameDecoder(new ClientConfiguration());
 
     protected ClientConfiguration config = new ClientConfiguration();
 
@@ -90,13 +108,22 @@ public class ClientThingHandler extends BaseThingHandler {
 
         if (command instanceof RefreshType) {
             String stateContent = readCommands.get(channelUID);
-            if (stateContent != null) {
-                // return fast in handleCommand
-                scheduler.execute(() -> refreshChannel(channelUID, stateContent));
+            RefreshScheduler<String> refreshScheduler = this.refreshScheduler;
+            if (stateContent != null && refreshScheduler != null) {
+                ChannelHandlerContent cachedResponse = responseCache.get(stateContent);
+                if (cachedResponse != null) {
+                    logger.trace("Refreshing '{}' from cached response to '{}'", channelUID, stateContent);
+                    itemValueConverter.process(cachedResponse);
+                } else {
+                    // return fast in handleCommand
+                    refreshScheduler.refresh(stateContent);
+                }
             } else {
                 logger.warn("Could not find stateContent for channel, '{}', REFRESH command failed.", channelUID);
             }
         } else {
+            // the command may change the responses of the device
+            responseCache.clear();
             try {
                 itemValueConverter.send(command);
             } catch (IllegalArgumentException e) {
@@ -123,9 +150,21 @@ public class ClientThingHandler extends BaseThingHandler {
             channelHandlerFactory.setSendValue(this::doUdpAsyncSend);
             logger.debug("Configured '{}' for UDP connections.", thing.getUID());
         } else if (config.protocol == ClientConfiguration.Protocol.TCP) {
+            try {
+                frameDecoder = new FrameDecoder(config);
+            } catch (IllegalArgumentException e) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, e.getMessage());
+                return;
+            }
             doSyncRequest = this::doTcpSyncRequest;
             channelHandlerFactory.setSendValue(this::doTcpAsyncSend);
-            logger.debug("Configured '{}' for TCP connections.", thing.getUID());
+            closeConnectionPool();
+            if (config.keepAlive) {
+                connectionPool = new TcpConnectionPool(config.host, config.port, config.timeout,
+                        config.maxConnections, config.idleTimeout, scheduler);
+            }
+            logger.debug("Configured '{}' for {} TCP connections.", thing.getUID(),
+                    config.keepAlive ? "persistent" : "single-use");
         } else {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
                     "Protocol for connection not set!");
@@ -140,25 +179,59 @@ public class ClientThingHandler extends BaseThingHandler {
         }
 
         stopRefresh();
-        refreshJob = scheduler.scheduleWithFixedDelay(() -> readCommands.forEach(this::refreshChannel), 0,
-                config.refresh, TimeUnit.SECONDS);
+        responseCache = new ResponseCache<>(config.responseCacheTime);
+        RefreshScheduler<String> refreshScheduler = new RefreshScheduler<>(scheduler, config.maxConcurrentRequests,
+                getMaxPipelinedRequests(), this::refreshRequests);
+        refreshIntervals.forEach(refreshScheduler::add);
+        refreshScheduler.start();
+        this.refreshScheduler = refreshScheduler;
 
         updateStatus(ThingStatus.UNKNOWN);
     }
 
     private void stopRefresh() {
-        ScheduledFuture<?> refreshJob = this.refreshJob;
-        if (refreshJob != null) {
-            refreshJob.cancel(true);
-            this.refreshJob = null;
+        RefreshScheduler<String> refreshScheduler = this.refreshScheduler;
+        if (refreshScheduler != null) {
+            refreshScheduler.stop();
+            this.refreshScheduler = null;
+        }
+    }
+
+    /**
+     * Get the number of requests that can be sent on a connection before the responses are read
+     * <p>
+     * Pipelining needs a persistent connection and a framing that can separate the responses.
+     */
+    private int getMaxPipelinedRequests() {
+        if (config.maxPipelinedRequests <= 1) {
+            return 1;
+        }
+        if (config.protocol != ClientConfiguration.Protocol.TCP || !config.keepAlive
+                || frameDecoder.isIdleGapFraming()) {
+            logger.info("Pipelining for '{}' requires TCP with keepAlive and a framing other than IDLE_GAP.",
+                    thing.getUID());
+            return 1;
+        }
+        return config.maxPipelinedRequests;
+    }
+
+    private void closeConnectionPool() {
+        TcpConnectionPool connectionPool = this.connectionPool;
+        if (connectionPool != null) {
+            connectionPool.close();
+            this.connectionPool = null;
         }
     }
 
     public void dispose() {
         stopRefresh();
+        closeConnectionPool();
 
         channels.clear();
         readCommands.clear();
+        requestSubscribers.clear();
+        refreshIntervals.clear();
+        responseCache.clear();
 
         // remove state descriptions
         dynamicStateDescriptionProvider.removeDescriptionsForThing(thing.getUID());
@@ -166,16 +239,35 @@ public class ClientThingHandler extends BaseThingHandler {
         super.dispose();
     }
 
-    private void refreshChannel(ChannelUID channelUID, String stateContent) {
-        logger.trace("Refreshing '{}' with command '{}'", channelUID, stateContent);
-        ChannelHandler channelHandler = channels.get(channelUID);
-
-        if (channelHandler == null) {
-            logger.warn("Failed to refresh '{}': itemValueConverter not found.", channelUID);
+    private void refreshRequests(List<String> requests) {
+        if (requests.size() == 1) {
+            String request = requests.get(0);
+            logger.trace("Refreshing {} with command '{}'", requestSubscribers.get(request), request);
+            doSyncRequest.apply(request).ifPresent(response -> processResponse(request, response));
             return;
         }
 
-        doSyncRequest.apply(stateContent).ifPresent(channelHandler::process);
+        logger.trace("Refreshing with pipelined commands {}", requests);
+        List<Optional<ChannelHandlerContent>> responses = doTcpPipelinedRequest(requests);
+        for (int i = 0; i < responses.size(); i++) {
+            String request = requests.get(i);
+            responses.get(i).ifPresent(response -> processResponse(request, response));
+        }
+    }
+
+    /**
+     * Report a response to all channels that use the request as stateContent
+     */
+    private void processResponse(String request, ChannelHandlerContent response) {
+        responseCache.put(request, response);
+        for (ChannelUID channelUID : requestSubscribers.getOrDefault(request, List.of())) {
+            ChannelHandler channelHandler = channels.get(channelUID);
+            if (channelHandler == null) {
+                logger.warn("Failed to refresh '{}': itemValueConverter not found.", channelUID);
+                continue;
+            }
+            channelHandler.process(response);
+        }
     }
 
     private void createChannel(Channel channel) {
@@ -190,14 +282,18 @@ public class ClientThingHandler extends BaseThingHandler {
                             "Empty stateContent configured for channel '{}' with capability 'read'. State updates are disabled.",
                             channelUID);
                 } else {
-                    if (!readCommands.containsValue(channelConfig.stateContent)) {
-                        readCommands.put(channelUID, channelConfig.stateContent);
-                    } else {
-                        logger.warn(
-                                "'{}' is configured as 'stateContent' for more than one channel. Ignoring for channel '{}'.",
-                                channelConfig.stateContent, channelUID);
-                        return;
+                    String stateContent = channelConfig.stateContent;
+                    int refresh = channelConfig.refresh > 0 ? channelConfig.refresh : config.refresh;
+                    readCommands.put(channelUID, stateContent);
+                    List<ChannelUID> subscribers = requestSubscribers.computeIfAbsent(stateContent,
+                            k -> new ArrayList<>());
+                    subscribers.add(channelUID);
+                    if (subscribers.size() > 1) {
+                        logger.debug("Channels {} share the stateContent '{}', the request is sent once.", subscribers,
+                                stateContent);
                     }
+                    // a shared request is refreshed as often as the channel with the shortest refresh time requires
+                    refreshIntervals.merge(stateContent, refresh, Math::min);
                 }
             }
 
@@ -216,12 +312,36 @@ public class ClientThingHandler extends BaseThingHandler {
         return Objects.requireNonNullElse(config.encoding, StandardCharsets.UTF_8.name());
     }
 
+    /**
+     * Execute an operation on a TCP connection to the configured host
+     * <p>
+     * If persistent connections are enabled, a connection from the pool is used. Otherwise a new connection is opened
+     * and closed afterwards.
+     */
+    private <T> T executeTcp(TcpConnectionPool.SocketOperation<T> operation) throws IOException {
+        TcpConnectionPool connectionPool = this.connectionPool;
+        if (connectionPool != null) {
+            return connectionPool.execute(operation);
+        }
+        try (Socket socket = new Socket(config.host, config.port)) {
+            socket.setSoTimeout(config.timeout);
+            return operation.apply(socket);
+        }
+    }
+
     protected void doTcpAsyncSend(String command) {
         scheduler.execute(() -> {
-            try (Socket socket = new Socket(config.host, config.port); OutputStream out = socket.getOutputStream()) {
-                socket.setSoTimeout(config.timeout);
-                out.write(command.getBytes(getEncoding()));
-                out.flush();
+            try {
+                byte[] data = command.getBytes(getEncoding());
+                executeTcp(socket -> {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(data);
+                    out.flush();
+                    if (config.commandReply && connectionPool != null) {
+                        discardReply(socket);
+                    }
+                    return null;
+                });
 
                 updateStatus(ThingStatus.ONLINE);
             } catch (IOException e) {
@@ -231,30 +351,55 @@ public class ClientThingHandler extends BaseThingHandler {
         });
     }
 
-    protected Optional<ChannelHandlerContent> doTcpSyncRequest(String request) {
-        try (Socket socket = new Socket(config.host, config.port);
-                OutputStream out = socket.getOutputStream();
-                InputStream in = socket.getInputStream();
-                ByteArrayOutputStream outputByteArrayStream = new ByteArrayOutputStream()) {
-            socket.setSoTimeout(config.timeout);
-            out.write(request.getBytes(getEncoding()));
-            out.flush();
-            byte[] buffer = new byte[config.bufferSize];
-            int len;
-
-            do {
-                len = in.read(buffer);
-                if (len != -1) {
-                    outputByteArrayStream.write(buffer, 0, len);
+    /**
+     * Read and discard the reply to a command on a persistent connection
+     * <p>
+     * A reply that is received later would be taken as response to the next request on the connection. If nothing is
+     * received within the timeout, the connection is re-used. If the connection was closed by the remote host or an
+     * incomplete reply or unexpected data was received, the connection is closed, so that it is not re-used.
+     */
+    private void discardReply(Socket socket) {
+        try {
+            ResponseReader responseReader = new ResponseReader(socket.getInputStream());
+            try {
+                byte[] reply = responseReader.read();
+                if (!responseReader.hasRemainingData()) {
+                    logger.trace("Discarded reply '{}' in thing '{}'", reply, thing.getUID());
+                    return;
                 }
-                if (len < buffer.length) {
-                    Thread.sleep(100);
+                logger.debug("Unexpected data after the reply to a command in thing '{}', closing connection",
+                        thing.getUID());
+            } catch (SocketTimeoutException e) {
+                if (!responseReader.hasRemainingData()) {
+                    // nothing was received, so the connection is still usable
+                    logger.debug("No reply to command in thing '{}' within {} ms", thing.getUID(), config.timeout);
+                    return;
                 }
-            } while (in.available() > 0);
+                logger.debug("Incomplete reply to command in thing '{}', closing connection", thing.getUID());
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the command was sent, so the error is not reported, but the connection must not be re-used
+            logger.debug("Failed to read reply to command in thing '{}', closing connection: {}", thing.getUID(),
+                    e.getMessage());
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // ignore, the connection is discarded anyway
+        }
+    }
 
-            outputByteArrayStream.flush();
+    protected Optional<ChannelHandlerContent> doTcpSyncRequest(String request) {
+        try {
+            byte[] data = request.getBytes(getEncoding());
+            byte[] response = executeTcp(socket -> {
+                OutputStream out = socket.getOutputStream();
+                out.write(data);
+                out.flush();
+                return readResponse(socket.getInputStream());
+            });
 
-            ChannelHandlerContent contentWrapper = new ChannelHandlerContent(outputByteArrayStream.toByteArray(),
+            ChannelHandlerContent contentWrapper = new ChannelHandlerContent(response,
                     Objects.requireNonNullElse(config.encoding, StandardCharsets.UTF_8.name()), null);
 
             updateStatus(ThingStatus.ONLINE);
@@ -267,6 +412,74 @@ public class ClientThingHandler extends BaseThingHandler {
         return Optional.empty();
     }
 
+    /**
+     * Send several requests on one TCP connection and read the responses afterwards
+     * <p>
+     * The requests are sent without waiting for the responses, the responses are expected in the same order.
+     *
+     * @return the responses, in the order of the requests
+     */
+    protected List<Optional<ChannelHandlerContent>> doTcpPipelinedRequest(List<String> requests) {
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (String request : requests) {
+                data.writeBytes(request.getBytes(getEncoding()));
+            }
+            List<byte[]> responses = executeTcp(socket -> {
+                OutputStream out = socket.getOutputStream();
+                data.writeTo(out);
+                out.flush();
+                ResponseReader responseReader = new ResponseReader(socket.getInputStream());
+                List<byte[]> received = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    received.add(responseReader.read());
+                }
+                return received;
+            });
+
+            updateStatus(ThingStatus.ONLINE);
+            return responses.stream()
+                    .map(response -> Optional.of(new ChannelHandlerContent(response, getEncoding(), null))).toList();
+        } catch (Exception e) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e.getMessage());
+            logger.debug("Failed to request '{}' in thing '{}': {}", requests, thing.getUID(), e.getMessage());
+        }
+
+        return requests.stream().map(request -> Optional.<ChannelHandlerContent> empty()).toList();
+    }
+
+    /**
+     * Read a response from a TCP connection
+     */
+    private byte[] readResponse(InputStream in) throws IOException {
+        // additional data is discarded (on persistent connections before the next request)
+        return new ResponseReader(in).read();
+    }
+
+    /**
+     * Read the available data, wait at most for the given gap if no data is available
+     *
+     * @return the number of bytes read, 0 if no data was received within the gap
+     */
+    private int readWithinIdleGap(InputStream in, byte[] buffer, int offset, long idleGap) throws IOException {
+        long gapEnd = System.nanoTime() + idleGap;
+        while (true) {
+            int available = in.available();
+            if (available > 0) {
+                return in.read(buffer, offset, Math.min(available, buffer.length - offset));
+            }
+            long remaining = gapEnd - System.nanoTime();
+            if (remaining <= 0) {
+                return 0;
+            }
+            LockSupport.parkNanos(Math.min(remaining, IDLE_GAP_POLL_INTERVAL));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the response");
+            }
+        }
+    }
+
     protected void doUdpAsyncSend(String command) {
         scheduler.execute(() -> {
             try (DatagramSocket socket = new DatagramSocket()) {
@@ -310,4 +523,76 @@ public class ClientThingHandler extends BaseThingHandler {
 
         return Optional.empty();
     }
+
+    /**
+     * The {@link ResponseReader} reads consecutive responses from a TCP connection
+     * <p>
+     * A response is complete as soon as the configured framing detects the end of the message, if the connection is
+     * closed by the remote host or (for idle gap framing) no more data was received within the idle gap. Data received
+     * after the end of a response is kept for the next response. Responses are limited to the configured buffer size.
+     */
+    private class ResponseReader {
+        private final InputStream in;
+        private final FrameDecoder frameDecoder = ClientThingHandler.this.frameDecoder;
+        private final byte[] buffer = new byte[Math.max(1, config.bufferSize)];
+        private int length = 0;
+
+        public ResponseReader(InputStream in) {
+            this.in = in;
+        }
+
+        public byte[] read() throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.timeout);
+            // the response may have been received while reading the previous response
+            int frameLength = length > 0 ? frameDecoder.findFrame(buffer, 0, length) : -1;
+
+            while (frameLength < 0) {
+                if (length == buffer.length) {
+                    // a partial response can't be used and would corrupt the next response on the connection
+                    throw new IOException("Response exceeds the buffer size of " + buffer.length + " bytes");
+                }
+                int len;
+                if (length > 0 && frameDecoder.isIdleGapFraming()) {
+                    len = readWithinIdleGap(in, buffer, length, frameDecoder.getIdleGap());
+                    if (len == 0) {
+                        // no data within the idle gap, the message is complete
+                        return take(length, 0);
+                    }
+                } else {
+                    len = in.read(buffer, length, buffer.length - length);
+                }
+                if (len == -1) {
+                    if (length == 0 && connectionPool != null) {
+                        // a persistent connection that is closed without response has to be re-opened
+                        throw new EOFException("Connection closed by remote host");
+                    }
+                    return take(length, 0);
+                }
+                length += len;
+
+                frameLength = frameDecoder.findFrame(buffer, 0, length);
+                if (frameLength < 0 && config.timeout > 0 && System.nanoTime() - deadline > 0) {
+                    throw new SocketTimeoutException("Response not complete within " + config.timeout + " ms");
+                }
+            }
+
+            return take(frameLength, frameDecoder.getTrailerLength());
+        }
+
+        /**
+         * Check if data after the last response was received
+         *
+         * @return true if data is available
+         */
+        public boolean hasRemainingData() {
+            return length > 0;
+        }
+
+        private byte[] take(int frameLength, int trailerLength) {
+            byte[] frame = Arrays.copyOf(buffer, frameLength - trailerLength);
+            length -= frameLength;
+            System.arraycopy(buffer, frameLength, buffer, 0, length);
+            return frame;
+        }
+    }
 }
@@ -12,24 +12,30 @@
  */
 package org.smarthomej.binding.tcpudp.internal;
 
+import static org.smarthomej.binding.tcpudp.internal.TcpUdpBindingConstants.*;
+
 import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
 import org.openhab.core.thing.binding.BaseThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
 import org.openhab.core.thing.binding.generic.ChannelHandler;
 import org.openhab.core.thing.binding.generic.ChannelHandlerContent;
+import org.openhab.core.thing.type.ChannelTypeUID;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
 import org.openhab.core.types.State;
@@ -38,6 +44,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tcpudp.internal.config.ReceiverConfiguration;
 import org.smarthomej.binding.tcpudp.internal.config.TcpUdpChannelConfig;
+import org.smarthomej.binding.tcpudp.internal.framing.FrameDecoder;
+import org.smarthomej.binding.tcpudp.internal.receiver.AddressFilterIndex;
 import org.smarthomej.binding.tcpudp.internal.receiver.Receiver;
 import org.smarthomej.binding.tcpudp.internal.receiver.TcpReceiver;
 import org.smarthomej.binding.tcpudp.internal.receiver.UdpReceiver;
@@ -49,14 +57,22 @@ import org.smarthomej.binding.tcpudp.internal.receiver.UdpReceiver;
  */
 @NonNullByDefault
 public class ReceiverThingHandler extends BaseThingHandler implements Receiver.ReceiverListener {
+    // only available for UDP receivers
+    private static final Map<String, ChannelTypeUID> STATISTICS_CHANNELS = Map.of(CHANNEL_RECEIVED_PACKETS,
+            CHANNEL_TYPE_UID_RECEIVED_PACKETS, CHANNEL_DROPPED_PACKETS, CHANNEL_TYPE_UID_DROPPED_PACKETS);
+    private static final int STATISTICS_INTERVAL = 10; // s
+
     private final Logger logger = LoggerFactory.getLogger(ReceiverThingHandler.class);
 
     private final ChannelHandlerFactory itemValueConverterFactory;
-    private final Set<ContentListener> contentListeners = new HashSet<>();
+    private volatile AddressFilterIndex<ChannelHandler> contentListeners = new AddressFilterIndex<>();
     private final Map<ChannelUID, State> stateCache = new ConcurrentHashMap<>();
 
     private @Nullable Future<?> refreshJob;
+    private @Nullable ScheduledFuture<?> statisticsJob;
     private @Nullable Receiver receiver;
+    private long reportedReceivedPackets = -1;
+    private long reportedDroppedPackets = -1;
 
     protected ReceiverConfiguration config = new ReceiverConfiguration();
 
@@ -89,32 +105,97 @@ public class ReceiverThingHandler extends BaseThingHandler implements Receiver.R
         // set methods depending on thing-type
         if (config.protocol == ReceiverConfiguration.Protocol.UDP) {
             logger.debug("Configured '{}' for UDP connections.", thing.getUID());
-            receiver = new UdpReceiver(this, config.localAddress, config.port, config.bufferSize);
+            receiver = new UdpReceiver(this, config.localAddress, config.port, config.bufferSize, config.queueSize,
+                    config.receiveBufferSize);
         } else if (config.protocol == ReceiverConfiguration.Protocol.TCP) {
+            FrameDecoder frameDecoder;
+            try {
+                frameDecoder = new FrameDecoder(config);
+            } catch (IllegalArgumentException e) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, e.getMessage());
+                return;
+            }
             logger.debug("Configured '{}' for TCP connections.", thing.getUID());
-            receiver = new TcpReceiver(this, config.localAddress, config.port, config.bufferSize);
+            receiver = new TcpReceiver(this, config.localAddress, config.port, config.bufferSize, frameDecoder,
+                    config.maxConnections);
         } else {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
                     "Protocol for connection not set!");
             return;
         }
 
+        updateStatisticsChannels(receiver instanceof UdpReceiver);
+
+        AddressFilterIndex<ChannelHandler> contentListeners = new AddressFilterIndex<>();
         thing.getChannels().forEach(channel -> {
+            if (STATISTICS_CHANNELS.containsKey(channel.getUID().getId())) {
+                return;
+            }
             TcpUdpChannelConfig channelConfig = channel.getConfiguration().as(TcpUdpChannelConfig.class);
             itemValueConverterFactory.create(channel.getUID(), channel.getAcceptedItemType(), channelConfig)
-                    .ifPresent(itemValueConverter -> contentListeners
-                            .add(new ContentListener(itemValueConverter, channelConfig.addressFilter)));
+                    .ifPresent(itemValueConverter -> contentListeners.add(channelConfig.addressFilter,
+                            itemValueConverter));
         });
 
         if (contentListeners.isEmpty()) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "No channels defined.");
             return;
         }
+        this.contentListeners = contentListeners;
 
         updateStatus(ThingStatus.UNKNOWN);
 
         this.receiver = receiver;
         this.refreshJob = scheduler.submit(receiver);
+        if (receiver instanceof UdpReceiver udpReceiver) {
+            reportedReceivedPackets = -1;
+            reportedDroppedPackets = -1;
+            this.statisticsJob = scheduler.scheduleWithFixedDelay(() -> updateStatistics(udpReceiver), 0,
+                    STATISTICS_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Add or remove the statistics channels, depending on the protocol
+     *
+     * @param enabled true if the channels shall be present
+     */
+    private void updateStatisticsChannels(boolean enabled) {
+        ThingHandlerCallback callback = getCallback();
+        if (callback == null) {
+            logger.warn("Thing '{}' not initialized, could not get callback.", thing.getUID());
+            return;
+        }
+        ThingBuilder thingBuilder = editThing();
+        boolean changed = false;
+        for (Map.Entry<String, ChannelTypeUID> statisticsChannel : STATISTICS_CHANNELS.entrySet()) {
+            ChannelUID channelUID = new ChannelUID(thing.getUID(), statisticsChannel.getKey());
+            boolean present = thing.getChannel(channelUID) != null;
+            if (enabled && !present) {
+                thingBuilder
+                        .withChannel(callback.createChannelBuilder(channelUID, statisticsChannel.getValue()).build());
+                changed = true;
+            } else if (!enabled && present) {
+                thingBuilder.withoutChannel(channelUID);
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateThing(thingBuilder.build());
+        }
+    }
+
+    private void updateStatistics(UdpReceiver udpReceiver) {
+        long receivedPackets = udpReceiver.getReceivedPackets();
+        if (receivedPackets != reportedReceivedPackets) {
+            reportedReceivedPackets = receivedPackets;
+            updateState(CHANNEL_RECEIVED_PACKETS, new DecimalType(receivedPackets));
+        }
+        long droppedPackets = udpReceiver.getDroppedPackets();
+        if (droppedPackets != reportedDroppedPackets) {
+            reportedDroppedPackets = droppedPackets;
+            updateState(CHANNEL_DROPPED_PACKETS, new DecimalType(droppedPackets));
+        }
     }
 
     @Override
@@ -133,7 +214,12 @@ public class ReceiverThingHandler extends BaseThingHandler implements Receiver.R
         if (refreshJob != null) {
             refreshJob.cancel(true);
         }
-        contentListeners.clear();
+        ScheduledFuture<?> statisticsJob = this.statisticsJob;
+        if (statisticsJob != null) {
+            statisticsJob.cancel(false);
+            this.statisticsJob = null;
+        }
+        contentListeners = new AddressFilterIndex<>();
         stateCache.clear();
         super.dispose();
     }
@@ -144,10 +230,16 @@ public class ReceiverThingHandler extends BaseThingHandler implements Receiver.R
 
     @Override
     public void onReceive(String sender, byte[] content) {
-        ChannelHandlerContent contentWrapper = new ChannelHandlerContent(content, getEncoding(), null);
+        List<ChannelHandler> channelHandlers = contentListeners.get(sender);
+        if (channelHandlers.isEmpty()) {
+            logger.trace("No channel accepts data from {}", sender);
+            return;
+        }
 
-        contentListeners.stream().filter(listener -> listener.addressFilter.matcher(sender).matches())
-                .forEach(listener -> listener.channelHandler.process(contentWrapper));
+        ChannelHandlerContent contentWrapper = new ChannelHandlerContent(content, getEncoding(), null);
+        for (ChannelHandler channelHandler : channelHandlers) {
+            channelHandler.process(contentWrapper);
+        }
     }
 
     @Override
@@ -158,18 +250,4 @@ public class ReceiverThingHandler extends BaseThingHandler implements Receiver.R
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, message);
         }
     }
-
-    /**
-     * The {@link ContentListener} is a class that groups an {@link ChannelHandler} and an associated address filter
-     */
-    public static class ContentListener {
-        public final ChannelHandler channelHandler;
-        public final Pattern addressFilter;
-
-        public ContentListener(ChannelHandler channelHandler, String addressFilter) {
-            this.channelHandler = channelHandler;
-            // convert input pattern to regex, using only * as wildcard
-            this.addressFilter = Pattern.compile(Pattern.quote(addressFilter).replace("*", "\\E.*?\\Q"));
-        }
-    }
 }
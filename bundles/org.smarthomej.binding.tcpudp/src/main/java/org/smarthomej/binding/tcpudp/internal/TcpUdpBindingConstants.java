@@ -14,6 +14,7 @@ package org.smarthomej.binding.tcpudp.internal;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.thing.type.ChannelTypeUID;
 
 /**
  * The {@link TcpUdpBindingConstants} class defines common constants, which are
@@ -29,4 +30,12 @@ public class TcpUdpBindingConstants {
     // List of all Thing Type UIDs
     public static final ThingTypeUID THING_TYPE_UID_CLIENT = new ThingTypeUID(BINDING_ID, "client");
     public static final ThingTypeUID THING_TYPE_UID_RECEIVER = new ThingTypeUID(BINDING_ID, "receiver");
+
+    // List of all fixed channels of the receiver
+    public static final String CHANNEL_RECEIVED_PACKETS = "receivedPackets";
+    public static final String CHANNEL_DROPPED_PACKETS = "droppedPackets";
+    public static final ChannelTypeUID CHANNEL_TYPE_UID_RECEIVED_PACKETS = new ChannelTypeUID(BINDING_ID,
+            "received-packets");
+    public static final ChannelTypeUID CHANNEL_TYPE_UID_DROPPED_PACKETS = new ChannelTypeUID(BINDING_ID,
+            "dropped-packets");
 }
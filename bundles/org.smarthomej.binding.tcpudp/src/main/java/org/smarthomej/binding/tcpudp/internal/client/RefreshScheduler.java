@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RefreshScheduler} periodically refreshes channels with individual intervals
+ * <p>
+ * Due refreshes are queued and executed by at most <code>maxConcurrentRequests</code> workers. A worker takes up to
+ * <code>maxBatchSize</code> queued refreshes at once (e.g. to pipeline the requests on a single connection). A
+ * refresh that is due while the previous refresh of the same channel is still queued or running is skipped, so slow
+ * devices don't accumulate pending refreshes.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class RefreshScheduler<T> {
+    private final Logger logger = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final int maxConcurrentRequests;
+    private final int maxBatchSize;
+    private final BatchExecutor<T> executor;
+
+    private final Map<Integer, List<T>> refreshGroups = new LinkedHashMap<>();
+    private final List<ScheduledFuture<?>> refreshJobs = new ArrayList<>();
+
+    // guarded by this
+    private final Queue<T> queue = new ArrayDeque<>();
+    private final Set<T> pending = new HashSet<>();
+    private int activeWorkers = 0;
+    private boolean stopped = false;
+
+    /**
+     * Create a new scheduler
+     *
+     * @param scheduler the scheduler used for timing and executing refreshes
+     * @param maxConcurrentRequests the maximum number of batches executed at the same time
+     * @param maxBatchSize the maximum number of refreshes in a single batch
+     * @param executor the executor that refreshes a batch of channels
+     */
+    public RefreshScheduler(ScheduledExecutorService scheduler, int maxConcurrentRequests, int maxBatchSize,
+            BatchExecutor<T> executor) {
+        this.scheduler = scheduler;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.executor = executor;
+    }
+
+    /**
+     * Add a channel that is periodically refreshed
+     * <p>
+     * Channels have to be added before {@link #start()} is called.
+     *
+     * @param key the channel
+     * @param interval the refresh interval (in s)
+     */
+    public void add(T key, int interval) {
+        refreshGroups.computeIfAbsent(Math.max(1, interval), k -> new ArrayList<>()).add(key);
+    }
+
+    /**
+     * Start the periodic refresh, all channels are refreshed immediately
+     */
+    public void start() {
+        refreshGroups.forEach((interval, keys) -> refreshJobs
+                .add(scheduler.scheduleAtFixedRate(() -> enqueue(keys), 0, interval, TimeUnit.SECONDS)));
+    }
+
+    /**
+     * Stop the periodic refresh and discard queued refreshes
+     * <p>
+     * Refreshes that are already running are not interrupted.
+     */
+    public void stop() {
+        refreshJobs.forEach(job -> job.cancel(false));
+        refreshJobs.clear();
+        synchronized (this) {
+            stopped = true;
+            queue.clear();
+            pending.clear();
+        }
+    }
+
+    /**
+     * Queue a refresh of a channel
+     *
+     * @param key the channel
+     */
+    public void refresh(T key) {
+        enqueue(List.of(key));
+    }
+
+    private synchronized void enqueue(List<T> keys) {
+        if (stopped) {
+            return;
+        }
+        // all keys are queued before a worker starts, so that they can be executed in one batch
+        for (T key : keys) {
+            if (pending.add(key)) {
+                queue.add(key);
+            } else {
+                logger.debug("Skipping refresh of '{}', previous refresh is not finished yet", key);
+            }
+        }
+        int workers = Math.min(maxConcurrentRequests - activeWorkers,
+                (queue.size() + maxBatchSize - 1) / maxBatchSize);
+        for (int i = 0; i < workers; i++) {
+            activeWorkers++;
+            scheduler.execute(this::work);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            List<T> batch = new ArrayList<>();
+            synchronized (this) {
+                while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                    batch.add(queue.remove());
+                }
+                if (batch.isEmpty()) {
+                    activeWorkers--;
+                    return;
+                }
+            }
+            try {
+                executor.execute(batch);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to refresh {}: {}", batch, e.getMessage());
+            } finally {
+                synchronized (this) {
+                    batch.forEach(pending::remove);
+                }
+            }
+        }
+    }
+
+    /**
+     * The {@link BatchExecutor} refreshes a batch of channels
+     */
+    @FunctionalInterface
+    public interface BatchExecutor<T> {
+        void execute(List<T> keys);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link ResponseCache} keeps the last response for each request for a limited time
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class ResponseCache<T> {
+    private final long timeToLive;
+    private final Map<String, CachedResponse<T>> responses = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new cache
+     *
+     * @param timeToLive the time a response is valid (in ms, 0 disables the cache)
+     */
+    public ResponseCache(int timeToLive) {
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+    }
+
+    /**
+     * Store a response
+     *
+     * @param request the request
+     * @param response the response to the request
+     */
+    public void put(String request, T response) {
+        if (timeToLive > 0) {
+            responses.put(request, new CachedResponse<>(response, System.nanoTime() + timeToLive));
+        }
+    }
+
+    /**
+     * Get the response to a request if it is still valid
+     *
+     * @param request the request
+     * @return the response or <code>null</code> if no valid response is available
+     */
+    public @Nullable T get(String request) {
+        CachedResponse<T> cachedResponse = responses.get(request);
+        if (cachedResponse == null) {
+            return null;
+        }
+        if (System.nanoTime() - cachedResponse.expiry >= 0) {
+            responses.remove(request, cachedResponse);
+            return null;
+        }
+        return cachedResponse.response;
+    }
+
+    /**
+     * Remove all responses (e.g. because a command changed the state of the device)
+     */
+    public void clear() {
+        responses.clear();
+    }
+
+    private static class CachedResponse<T> {
+        private final T response;
+        private final long expiry;
+
+        public CachedResponse(T response, long expiry) {
+            this.response = response;
+            this.expiry = expiry;
+        }
+    }
+}
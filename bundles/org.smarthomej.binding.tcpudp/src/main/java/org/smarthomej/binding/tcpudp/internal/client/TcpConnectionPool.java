@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link TcpConnectionPool} keeps persistent TCP connections to a single remote host
+ * <p>
+ * Connections are re-used for all requests. Connections that were idle for longer than the idle timeout are closed.
+ * Before an idle connection is re-used, it is checked that the remote host did not close it. If a request on a
+ * re-used connection fails, the request is repeated once on a new connection.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TcpConnectionPool {
+    // connections that were idle for a shorter time are not checked before re-use
+    private static final long HEALTH_CHECK_IDLE_TIME = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(TcpConnectionPool.class);
+
+    private final String host;
+    private final int port;
+    private final int timeout;
+    private final long idleTimeout;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+    private final @Nullable ScheduledFuture<?> cleanupJob;
+    private boolean closed = false;
+
+    /**
+     * Create a new pool
+     *
+     * @param host the remote host
+     * @param port the remote port
+     * @param timeout the connect and read timeout (in ms)
+     * @param maxConnections the maximum number of connections used at the same time
+     * @param idleTimeout the time after which an unused connection is closed (in s, 0 = never)
+     * @param scheduler the scheduler used for closing idle connections
+     */
+    public TcpConnectionPool(String host, int port, int timeout, int maxConnections, int idleTimeout,
+            ScheduledExecutorService scheduler) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(idleTimeout);
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+        this.cleanupJob = idleTimeout > 0
+                ? scheduler.scheduleWithFixedDelay(this::closeIdleConnections, idleTimeout, idleTimeout,
+                        TimeUnit.SECONDS)
+                : null;
+    }
+
+    /**
+     * Execute an operation on a pooled connection
+     * <p>
+     * The connection must not be used after the operation returned. If the operation throws an
+     * {@link IOException}, the connection is closed. An operation that leaves the connection in an unknown state (e.g.
+     * an expected response was not received) can close the socket, it is then not returned to the pool.
+     *
+     * @param operation the operation
+     * @return the result of the operation
+     * @throws IOException if no connection could be established or the operation failed
+     */
+    public <T> T execute(SocketOperation<T> operation) throws IOException {
+        try {
+            if (timeout <= 0) {
+                // like the socket timeout, 0 means waiting without limit
+                permits.acquire();
+            } else if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("No connection available within " + timeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection");
+        }
+        try {
+            PooledConnection connection = getIdleConnection();
+            if (connection != null) {
+                try {
+                    return executeAndRelease(connection, operation);
+                } catch (SocketTimeoutException e) {
+                    // the remote host is connected but did not answer in time, a new connection will not help
+                    throw e;
+                } catch (IOException e) {
+                    logger.debug("Request on re-used connection to {}:{} failed, reconnecting: {}", host, port,
+                            e.getMessage());
+                }
+            }
+            return executeAndRelease(connect(), operation);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close all connections
+     * <p>
+     * Connections that are in use are closed when the operation completed.
+     */
+    public void close() {
+        ScheduledFuture<?> cleanupJob = this.cleanupJob;
+        if (cleanupJob != null) {
+            cleanupJob.cancel(false);
+        }
+        List<PooledConnection> connections;
+        synchronized (idleConnections) {
+            closed = true;
+            connections = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        connections.forEach(PooledConnection::close);
+    }
+
+    private <T> T executeAndRelease(PooledConnection connection, SocketOperation<T> operation) throws IOException {
+        T result;
+        try {
+            result = operation.apply(connection.socket);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        if (connection.socket.isClosed()) {
+            return result;
+        }
+        connection.lastUsed = System.nanoTime();
+        synchronized (idleConnections) {
+            if (!closed) {
+                // most recently used first, so that surplus connections time out
+                idleConnections.addFirst(connection);
+                return result;
+            }
+        }
+        connection.close();
+        return result;
+    }
+
+    private @Nullable PooledConnection getIdleConnection() {
+        while (true) {
+            PooledConnection connection;
+            synchronized (idleConnections) {
+                connection = idleConnections.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+            if (isHealthy(connection)) {
+                return connection;
+            }
+            connection.close();
+        }
+    }
+
+    private boolean isHealthy(PooledConnection connection) {
+        Socket socket = connection.socket;
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            InputStream in = socket.getInputStream();
+            // discard data that was received after the last operation completed (e.g. late or unsolicited data)
+            skipAvailable(in);
+            if (System.nanoTime() - connection.lastUsed < HEALTH_CHECK_IDLE_TIME) {
+                return true;
+            }
+            // a read with a short timeout detects a connection that was closed by the remote host
+            socket.setSoTimeout(1);
+            try {
+                int read = in.read();
+                if (read == -1) {
+                    logger.debug("Connection to {}:{} was closed by the remote host", host, port);
+                    return false;
+                }
+                // discard the unexpected byte and the remaining data
+                skipAvailable(in);
+            } catch (SocketTimeoutException e) {
+                // expected, the connection is still open
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.debug("Connection to {}:{} failed the health check: {}", host, port, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void skipAvailable(InputStream in) throws IOException {
+        int available;
+        while ((available = in.available()) > 0) {
+            if (in.skip(available) <= 0) {
+                break;
+            }
+        }
+    }
+
+    private PooledConnection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        logger.debug("Opened connection to {}:{}", host, port);
+        return new PooledConnection(socket);
+    }
+
+    private void closeIdleConnections() {
+        long now = System.nanoTime();
+        List<PooledConnection> expiredConnections = new ArrayList<>();
+        synchronized (idleConnections) {
+            Iterator<PooledConnection> iterator = idleConnections.iterator();
+            while (iterator.hasNext()) {
+                PooledConnection connection = iterator.next();
+                if (now - connection.lastUsed >= idleTimeout) {
+                    iterator.remove();
+                    expiredConnections.add(connection);
+                }
+            }
+        }
+        if (!expiredConnections.isEmpty()) {
+            logger.debug("Closing {} idle connection(s) to {}:{}", expiredConnections.size(), host, port);
+            expiredConnections.forEach(PooledConnection::close);
+        }
+    }
+
+    /**
+     * The {@link SocketOperation} is an operation (e.g. a request) on a connected socket
+     */
+    @FunctionalInterface
+    public interface SocketOperation<T> {
+        T apply(Socket socket) throws IOException;
+    }
+
+    private static class PooledConnection {
+        private final Socket socket;
+        private long lastUsed = System.nanoTime();
+
+        public PooledConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore, the connection is discarded anyway
+            }
+        }
+    }
+}
@@ -21,7 +21,7 @@ import org.eclipse.jdt.annotation.Nullable;
  * @author Jan N. Klug - Initial contribution
  */
 @NonNullByDefault
-public class ClientConfiguration {
+public class ClientConfiguration extends FramingConfiguration {
     public String host = "";
     public int port = 0;
 
@@ -34,6 +34,15 @@ public class ClientConfiguration {
 
     public @Nullable String encoding = null;
 
+    public boolean keepAlive = false;
+    public int maxConnections = 1;
+    public int idleTimeout = 60;
+    public boolean commandReply = false;
+
+    public int maxConcurrentRequests = 1;
+    public int maxPipelinedRequests = 1;
+    public int responseCacheTime = 0;
+
     public enum Protocol {
         UDP,
         TCP
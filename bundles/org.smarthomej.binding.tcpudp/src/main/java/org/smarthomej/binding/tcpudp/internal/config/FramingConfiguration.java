@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.config;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link FramingConfiguration} class contains fields mapping the configuration parameters for splitting a TCP
+ * stream into messages.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class FramingConfiguration {
+    public Framing framing = Framing.IDLE_GAP;
+
+    // used for DELIMITER
+    public String delimiter = "\\r\\n";
+
+    // used for FIXED_LENGTH
+    public int frameLength = 0;
+
+    // used for LENGTH_FIELD
+    public int lengthFieldOffset = 0;
+    public int lengthFieldSize = 2;
+    public int lengthAdjustment = 0;
+
+    // used for IDLE_GAP, in µs
+    public int idleGap = 100000;
+
+    public enum Framing {
+        IDLE_GAP,
+        DELIMITER,
+        FIXED_LENGTH,
+        LENGTH_FIELD
+    }
+}
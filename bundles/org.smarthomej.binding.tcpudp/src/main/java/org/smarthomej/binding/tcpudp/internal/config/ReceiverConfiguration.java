@@ -21,11 +21,16 @@ import org.eclipse.jdt.annotation.Nullable;
  * @author Jan N. Klug - Initial contribution
  */
 @NonNullByDefault
-public class ReceiverConfiguration {
+public class ReceiverConfiguration extends FramingConfiguration {
     public String localAddress = "0.0.0.0";
     public int port = 0;
 
     public int bufferSize = 2048;
+    public int maxConnections = 16;
+
+    // used for UDP
+    public int queueSize = 256;
+    public int receiveBufferSize = 0;
 
     public Protocol protocol = Protocol.TCP;
 
@@ -29,6 +29,7 @@ public class TcpUdpChannelConfig extends ChannelValueConverterConfig {
     // used by client channels
     public @Nullable String commandTransformation;
     public String stateContent = "";
+    public int refresh = 0;
 
     // used by receiver channels
     public String addressFilter = "*";
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.framing;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.smarthomej.binding.tcpudp.internal.config.FramingConfiguration;
+
+/**
+ * The {@link FrameDecoder} finds the boundaries of messages in a stream of bytes
+ * <p>
+ * Depending on the configuration a message ends with a delimiter, has a fixed length or starts with a header that
+ * contains the length. For {@link FramingConfiguration.Framing#IDLE_GAP} the end of a message can't be determined
+ * from the content, the message is complete if no data was received for {@link #getIdleGap()}.
+ * <p>
+ * Decoders are immutable and can be shared.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class FrameDecoder {
+    private final FramingConfiguration.Framing framing;
+    private final byte[] delimiter;
+    private final int frameLength;
+    private final int lengthFieldOffset;
+    private final int lengthFieldSize;
+    private final int lengthAdjustment;
+    private final long idleGap;
+
+    /**
+     * Create a new decoder
+     *
+     * @param config the framing configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public FrameDecoder(FramingConfiguration config) {
+        this.framing = config.framing;
+        this.delimiter = parseDelimiter(config.delimiter);
+        this.frameLength = config.frameLength;
+        this.lengthFieldOffset = config.lengthFieldOffset;
+        this.lengthFieldSize = config.lengthFieldSize;
+        this.lengthAdjustment = config.lengthAdjustment;
+        this.idleGap = TimeUnit.MICROSECONDS.toNanos(config.idleGap);
+
+        switch (framing) {
+            case DELIMITER -> {
+                if (delimiter.length == 0) {
+                    throw new IllegalArgumentException("Delimiter must not be empty");
+                }
+            }
+            case FIXED_LENGTH -> {
+                if (frameLength <= 0) {
+                    throw new IllegalArgumentException("Frame length must be greater than 0");
+                }
+            }
+            case LENGTH_FIELD -> {
+                if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4) {
+                    throw new IllegalArgumentException("Length field size must be 1, 2 or 4");
+                }
+                if (lengthFieldOffset < 0) {
+                    throw new IllegalArgumentException("Length field offset must not be negative");
+                }
+            }
+            case IDLE_GAP -> {
+                if (idleGap <= 0) {
+                    throw new IllegalArgumentException("Idle gap must be greater than 0");
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the end of a message is determined by an idle gap instead of the content
+     *
+     * @return true if the message ends after an idle gap
+     */
+    public boolean isIdleGapFraming() {
+        return framing == FramingConfiguration.Framing.IDLE_GAP;
+    }
+
+    /**
+     * Get the time without data after which a message is complete
+     *
+     * @return the idle gap in ns
+     */
+    public long getIdleGap() {
+        return idleGap;
+    }
+
+    /**
+     * Find the end of the first message in a buffer
+     *
+     * @param buffer the buffer
+     * @param offset the index of the first byte of the message in the buffer
+     * @param length the number of bytes available in the buffer
+     * @return the number of bytes of the message (including delimiters or headers), -1 if the message is not complete
+     * @throws IllegalStateException if the length field contains an invalid length
+     */
+    public int findFrame(byte[] buffer, int offset, int length) {
+        switch (framing) {
+            case DELIMITER -> {
+                for (int i = 0; i <= length - delimiter.length; i++) {
+                    if (matchesDelimiter(buffer, offset + i)) {
+                        return i + delimiter.length;
+                    }
+                }
+                return -1;
+            }
+            case FIXED_LENGTH -> {
+                return length >= frameLength ? frameLength : -1;
+            }
+            case LENGTH_FIELD -> {
+                int headerLength = lengthFieldOffset + lengthFieldSize;
+                if (length < headerLength) {
+                    return -1;
+                }
+                long contentLength = 0;
+                for (int i = 0; i < lengthFieldSize; i++) {
+                    contentLength = (contentLength << 8) | (buffer[offset + lengthFieldOffset + i] & 0xff);
+                }
+                long totalLength = headerLength + contentLength + lengthAdjustment;
+                if (totalLength < headerLength || totalLength > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Invalid frame length " + totalLength);
+                }
+                return length >= totalLength ? (int) totalLength : -1;
+            }
+            default -> {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes at the end of a message that are not part of the content (i.e. the delimiter)
+     *
+     * @return the number of bytes
+     */
+    public int getTrailerLength() {
+        return framing == FramingConfiguration.Framing.DELIMITER ? delimiter.length : 0;
+    }
+
+    private boolean matchesDelimiter(byte[] buffer, int index) {
+        for (int i = 0; i < delimiter.length; i++) {
+            if (buffer[index + i] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert the delimiter configuration to bytes
+     * <p>
+     * The escape sequences <code>\r</code>, <code>\n</code>, <code>\t</code>, <code>\0</code>, <code>\\</code>
+     * and <code>\xHH</code> (hexadecimal) are supported, all other characters are used as UTF-8.
+     *
+     * @param delimiter the configured delimiter
+     * @return the delimiter bytes
+     * @throws IllegalArgumentException if an escape sequence is invalid
+     */
+    static byte[] parseDelimiter(String delimiter) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < delimiter.length()) {
+            int c = delimiter.codePointAt(i);
+            i += Character.charCount(c);
+            if (c != '\\') {
+                byte[] encoded = Character.toString(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+            if (i >= delimiter.length()) {
+                throw new IllegalArgumentException("Incomplete escape sequence in delimiter '" + delimiter + "'");
+            }
+            char escaped = delimiter.charAt(i++);
+            switch (escaped) {
+                case 'r' -> bytes.write('\r');
+                case 'n' -> bytes.write('\n');
+                case 't' -> bytes.write('\t');
+                case '0' -> bytes.write(0);
+                case '\\' -> bytes.write('\\');
+                case 'x' -> {
+                    if (i + 2 > delimiter.length()) {
+                        throw new IllegalArgumentException(
+                                "Incomplete escape sequence in delimiter '" + delimiter + "'");
+                    }
+                    try {
+                        bytes.write(Integer.parseInt(delimiter.substring(i, i + 2), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid escape sequence in delimiter '" + delimiter + "'");
+                    }
+                    i += 2;
+                }
+                default -> throw new IllegalArgumentException(
+                        "Unknown escape sequence '\\" + escaped + "' in delimiter '" + delimiter + "'");
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
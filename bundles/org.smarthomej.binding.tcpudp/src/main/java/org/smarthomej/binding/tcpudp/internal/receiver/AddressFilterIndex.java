@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.receiver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link AddressFilterIndex} finds the targets whose address filter matches a sender (e.g.
+ * <code>192.168.0.1:5000</code>)
+ * <p>
+ * Filters use <code>*</code> as wildcard. Filters without wildcard are stored in a hash map, filters with wildcard
+ * are stored in a prefix tree by their text before the first wildcard, so only filters with a matching prefix have
+ * to be evaluated. The result for each sender is cached, the cache is cleared when a filter is added.
+ * <p>
+ * Lookups are thread-safe, adding filters must not happen concurrently with lookups.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class AddressFilterIndex<T> {
+    // limits the memory used if many different senders are seen (e.g. changing source ports)
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private final Map<String, List<Entry<T>>> exactFilters = new HashMap<>();
+    private final Node<T> wildcardFilters = new Node<>();
+    private final Map<String, List<T>> cache = new ConcurrentHashMap<>();
+    private int entryCount = 0;
+
+    /**
+     * Add a target
+     *
+     * @param addressFilter the filter for the sender address, <code>*</code> matches any number of characters
+     * @param target the target that is returned for matching senders
+     */
+    public void add(String addressFilter, T target) {
+        Entry<T> entry = new Entry<>(entryCount++, target);
+        int wildcard = addressFilter.indexOf('*');
+        if (wildcard == -1) {
+            exactFilters.computeIfAbsent(addressFilter, k -> new ArrayList<>()).add(entry);
+        } else {
+            String remainder = addressFilter.substring(wildcard);
+            if (!"*".equals(remainder)) {
+                // convert remainder to regex, using only * as wildcard
+                entry.pattern = Pattern.compile(Pattern.quote(remainder).replace("*", "\\E.*?\\Q"));
+            }
+            Node<T> node = wildcardFilters;
+            for (int i = 0; i < wildcard; i++) {
+                node = node.children.computeIfAbsent(addressFilter.charAt(i), k -> new Node<>());
+            }
+            node.entries.add(entry);
+        }
+        cache.clear();
+    }
+
+    /**
+     * Remove all targets
+     */
+    public void clear() {
+        exactFilters.clear();
+        wildcardFilters.children.clear();
+        wildcardFilters.entries.clear();
+        entryCount = 0;
+        cache.clear();
+    }
+
+    /**
+     * Check if targets were added
+     *
+     * @return true if no target was added
+     */
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    /**
+     * Get all targets with a filter matching the sender
+     *
+     * @param sender the sender address
+     * @return the matching targets, in the order they were added
+     */
+    public List<T> get(String sender) {
+        List<T> targets = cache.get(sender);
+        if (targets == null) {
+            targets = resolve(sender);
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(sender, targets);
+        }
+        return targets;
+    }
+
+    private List<T> resolve(String sender) {
+        List<Entry<T>> matches = new ArrayList<>(exactFilters.getOrDefault(sender, List.of()));
+        Node<T> node = wildcardFilters;
+        int depth = 0;
+        while (true) {
+            for (Entry<T> entry : node.entries) {
+                Pattern pattern = entry.pattern;
+                if (pattern == null || pattern.matcher(sender).region(depth, sender.length()).matches()) {
+                    matches.add(entry);
+                }
+            }
+            if (depth == sender.length()) {
+                break;
+            }
+            node = node.children.get(sender.charAt(depth++));
+            if (node == null) {
+                break;
+            }
+        }
+        if (matches.isEmpty()) {
+            return List.of();
+        }
+        matches.sort(Comparator.comparingInt(entry -> entry.index));
+        return matches.stream().map(entry -> entry.target).toList();
+    }
+
+    private static class Entry<T> {
+        private final int index;
+        private final T target;
+        // the filter after the prefix, null if it matches everything
+        private @Nullable Pattern pattern;
+
+        public Entry(int index, T target) {
+            this.index = index;
+            this.target = target;
+        }
+    }
+
+    private static class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private final List<Entry<T>> entries = new ArrayList<>();
+    }
+}
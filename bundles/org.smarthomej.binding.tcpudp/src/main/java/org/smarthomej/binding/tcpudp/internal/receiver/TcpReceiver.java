@@ -13,20 +13,33 @@
 package org.smarthomej.binding.tcpudp.internal.receiver;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tcpudp.internal.framing.FrameDecoder;
 
 /**
  * The {@link TcpReceiver} is a receiver for TCP connections
+ * <p>
+ * All connections are served by a single thread using a {@link Selector}. Connections are kept open until the client
+ * closes them, the received data is split into messages by the {@link FrameDecoder}. Data that is left when the
+ * connection is closed is reported as last message.
  *
  * @author Jan N. Klug - Initial contribution
  */
@@ -34,17 +47,33 @@ import org.slf4j.LoggerFactory;
 public class TcpReceiver implements Receiver {
     private final Logger logger = LoggerFactory.getLogger(TcpReceiver.class);
 
-    private @Nullable ServerSocket socket;
+    private volatile @Nullable Selector selector;
     private final SocketAddress socketAddress;
     private final ReceiverListener receiverListener;
-    private byte[] buf;
+    private final int bufferSize;
+    private final FrameDecoder frameDecoder;
+    private final int maxConnections;
+    private final Set<Connection> connections = new HashSet<>();
 
-    private boolean reconnect;
+    private volatile boolean reconnect;
 
-    public TcpReceiver(ReceiverListener receiverListener, String localAddress, int port, int bufferSize) {
+    /**
+     * Create a new receiver
+     *
+     * @param receiverListener the listener for received messages
+     * @param localAddress the local address to listen on
+     * @param port the port to listen on
+     * @param bufferSize the maximum size of a message (per connection)
+     * @param frameDecoder the decoder used to split the received data into messages
+     * @param maxConnections the maximum number of concurrent connections, further clients have to wait
+     */
+    public TcpReceiver(ReceiverListener receiverListener, String localAddress, int port, int bufferSize,
+            FrameDecoder frameDecoder, int maxConnections) {
         this.socketAddress = new InetSocketAddress(localAddress, port);
         this.receiverListener = receiverListener;
-        this.buf = new byte[bufferSize];
+        this.bufferSize = Math.max(1, bufferSize);
+        this.frameDecoder = frameDecoder;
+        this.maxConnections = Math.max(1, maxConnections);
         reconnect = true;
     }
 
@@ -55,28 +84,37 @@ public class TcpReceiver implements Receiver {
     @Override
     public void run() {
         while (enabled()) {
-            try (ServerSocket serverSocket = new ServerSocket()) {
-                this.socket = serverSocket;
-                serverSocket.setReuseAddress(true);
-                serverSocket.bind(socketAddress);
+            try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+                this.selector = selector;
+                serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                serverChannel.bind(socketAddress);
+                serverChannel.configureBlocking(false);
+                SelectionKey serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
                 receiverListener.reportConnectionState(true, null);
                 while (enabled()) {
-                    try (Socket clientSocket = serverSocket.accept(); InputStream in = clientSocket.getInputStream()) {
-                        String sender = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
-
-                        int byteCount = in.read(buf);
-                        if (byteCount == -1) {
-                            logger.warn("Did not receive data from {}", sender);
-                        } else {
-                            byte[] data = Arrays.copyOfRange(buf, 0, byteCount);
-
-                            logger.trace("Received {} bytes from {}: {}", byteCount, sender, data);
-                            receiverListener.onReceive(sender, data);
+                    selector.select(getSelectTimeout());
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
                         }
+                        if (key.isAcceptable()) {
+                            accept(serverChannel, serverKey, selector);
+                        } else if (key.isReadable() && key.attachment() instanceof Connection connection) {
+                            read(connection, serverKey);
+                        }
+                    }
+                    if (frameDecoder.isIdleGapFraming()) {
+                        flushIdleConnections();
                     }
                 }
             } catch (IOException e) {
                 receiverListener.reportConnectionState(false, e.getMessage());
+            } finally {
+                new ArrayList<>(connections).forEach(this::close);
+                this.selector = null;
             }
         }
     }
@@ -84,13 +122,174 @@ public class TcpReceiver implements Receiver {
     @Override
     public void stop() {
         reconnect = false;
-        ServerSocket socket = this.socket;
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                logger.warn("Could not close connection: {}", e.getMessage());
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private long getSelectTimeout() {
+        if (!frameDecoder.isIdleGapFraming()) {
+            return 0; // wait until data is available
+        }
+        long now = System.nanoTime();
+        long timeout = Long.MAX_VALUE;
+        for (Connection connection : connections) {
+            if (connection.buffer.position() > 0) {
+                timeout = Math.min(timeout, connection.lastReceived + frameDecoder.getIdleGap() - now);
             }
         }
+        if (timeout == Long.MAX_VALUE) {
+            return 0;
+        }
+        // select has a resolution of 1 ms, a timeout of 0 would block forever
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    private void accept(ServerSocketChannel serverChannel, SelectionKey serverKey, Selector selector) {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            InetSocketAddress remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+            String sender = remoteAddress.getAddress().getHostAddress() + ":" + remoteAddress.getPort();
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel, sender, ByteBuffer.allocate(bufferSize));
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            logger.trace("Accepted connection from {} ({} open connections)", sender, connections.size());
+        } catch (IOException e) {
+            logger.debug("Failed to accept connection: {}", e.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return;
+        }
+        if (connections.size() >= maxConnections) {
+            // further clients wait in the backlog until a connection is closed
+            logger.debug("Maximum number of connections ({}) reached, not accepting new connections", maxConnections);
+            serverKey.interestOps(0);
+        }
+    }
+
+    private void read(Connection connection, SelectionKey serverKey) {
+        int byteCount;
+        try {
+            byteCount = connection.channel.read(connection.buffer);
+        } catch (IOException e) {
+            logger.debug("Failed to read from {}: {}", connection.sender, e.getMessage());
+            close(connection);
+            updateAccept(serverKey);
+            return;
+        }
+
+        if (byteCount == -1) {
+            // connection closed by the client, the remaining data is the last message
+            if (connection.buffer.position() > 0) {
+                deliver(connection, 0, connection.buffer.position());
+            } else if (!connection.received) {
+                logger.warn("Did not receive data from {}", connection.sender);
+            }
+            close(connection);
+            updateAccept(serverKey);
+            return;
+        }
+
+        connection.received = true;
+        connection.lastReceived = System.nanoTime();
+        try {
+            deliverFrames(connection);
+        } catch (IllegalStateException e) {
+            logger.warn("Received invalid data from {}, closing connection: {}", connection.sender, e.getMessage());
+            close(connection);
+            updateAccept(serverKey);
+            return;
+        }
+
+        if (!connection.buffer.hasRemaining()) {
+            if (frameDecoder.isIdleGapFraming()) {
+                // the message is larger than the buffer, report what we have
+                deliver(connection, 0, connection.buffer.position());
+                connection.buffer.clear();
+            } else {
+                logger.warn("Message from {} exceeds the buffer size of {} bytes, closing connection",
+                        connection.sender, bufferSize);
+                close(connection);
+                updateAccept(serverKey);
+            }
+        }
+    }
+
+    private void deliverFrames(Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        byte[] data = buffer.array();
+        int length = buffer.position();
+        int offset = 0;
+        int frameLength;
+        while (offset < length && (frameLength = frameDecoder.findFrame(data, offset, length - offset)) >= 0) {
+            deliver(connection, offset, frameLength - frameDecoder.getTrailerLength());
+            offset += frameLength;
+        }
+        if (offset > 0) {
+            // move the remaining data to the beginning of the buffer
+            System.arraycopy(data, offset, data, 0, length - offset);
+            buffer.position(length - offset);
+        }
+    }
+
+    private void flushIdleConnections() {
+        long now = System.nanoTime();
+        for (Connection connection : connections) {
+            if (connection.buffer.position() > 0 && now - connection.lastReceived >= frameDecoder.getIdleGap()) {
+                deliver(connection, 0, connection.buffer.position());
+                connection.buffer.clear();
+            }
+        }
+    }
+
+    private void deliver(Connection connection, int offset, int length) {
+        byte[] data = Arrays.copyOfRange(connection.buffer.array(), offset, offset + length);
+        logger.trace("Received {} bytes from {}: {}", length, connection.sender, data);
+        try {
+            receiverListener.onReceive(connection.sender, data);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to process message from {}: {}", connection.sender, e.getMessage());
+        }
+    }
+
+    private void updateAccept(SelectionKey serverKey) {
+        if (serverKey.isValid() && connections.size() < maxConnections
+                && (serverKey.interestOps() & SelectionKey.OP_ACCEPT) == 0) {
+            serverKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    private void close(Connection connection) {
+        connections.remove(connection);
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.debug("Could not close connection from {}: {}", connection.sender, e.getMessage());
+        }
+        logger.trace("Closed connection from {} ({} open connections)", connection.sender, connections.size());
+    }
+
+    private static class Connection {
+        private final SocketChannel channel;
+        private final String sender;
+        private final ByteBuffer buffer;
+        private long lastReceived = System.nanoTime();
+        private boolean received = false;
+
+        public Connection(SocketChannel channel, String sender, ByteBuffer buffer) {
+            this.channel = channel;
+            this.sender = sender;
+            this.buffer = buffer;
+        }
     }
 }
@@ -15,9 +15,12 @@ package org.smarthomej.binding.tcpudp.internal.receiver;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -26,6 +29,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The {@link UdpReceiver} is a receiver for UDP connections
+ * <p>
+ * Receiving and processing are decoupled: the receiving thread copies the datagrams into a ring buffer of
+ * pre-allocated slots and immediately waits for the next datagram. A processing thread reports the datagrams from
+ * the ring buffer to the listener. If the ring buffer is full, datagrams are dropped (and counted) instead of
+ * blocking the receiving thread.
  *
  * @author Jan N. Klug - Initial contribution
  */
@@ -36,14 +44,46 @@ public class UdpReceiver implements Receiver {
     private @Nullable DatagramSocket socket;
     private final SocketAddress socketAddress;
     private final ReceiverListener receiverListener;
-    private byte[] buf;
+    private final int receiveBufferSize;
 
-    private boolean reconnect;
+    // ring buffer, written by the receiving thread only, read by the processing thread only
+    private final byte[][] slotData;
+    private final int[] slotLength;
+    private final @Nullable InetAddress[] slotAddress;
+    private final int[] slotPort;
+    private final Semaphore filledSlots = new Semaphore(0);
+    private final Semaphore freeSlots;
+    private int writeIndex = 0;
+    private int readIndex = 0;
 
-    public UdpReceiver(ReceiverListener receiverListener, String localAddress, int port, int bufferSize) {
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    private volatile boolean reconnect;
+    private @Nullable Thread processingThread;
+
+    /**
+     * Create a new receiver
+     *
+     * @param receiverListener the listener for received datagrams
+     * @param localAddress the local address to listen on
+     * @param port the port to listen on
+     * @param bufferSize the maximum size of a datagram
+     * @param queueSize the number of datagrams that can wait for processing
+     * @param receiveBufferSize the size of the socket receive buffer (SO_RCVBUF) in bytes, 0 for the system default
+     */
+    public UdpReceiver(ReceiverListener receiverListener, String localAddress, int port, int bufferSize,
+            int queueSize, int receiveBufferSize) {
         this.socketAddress = new InetSocketAddress(localAddress, port);
         this.receiverListener = receiverListener;
-        this.buf = new byte[bufferSize];
+        this.receiveBufferSize = receiveBufferSize;
+
+        int slots = Math.max(1, queueSize);
+        this.slotData = new byte[slots][Math.max(1, bufferSize)];
+        this.slotLength = new int[slots];
+        this.slotAddress = new InetAddress[slots];
+        this.slotPort = new int[slots];
+        this.freeSlots = new Semaphore(slots);
         reconnect = true;
     }
 
@@ -51,27 +91,119 @@ public class UdpReceiver implements Receiver {
         return reconnect && !Thread.currentThread().isInterrupted();
     }
 
+    /**
+     * Get the number of datagrams that were received
+     *
+     * @return the number of datagrams (including dropped datagrams)
+     */
+    public long getReceivedPackets() {
+        return receivedPackets.get();
+    }
+
+    /**
+     * Get the number of datagrams that were dropped because the processing could not keep up
+     *
+     * @return the number of datagrams
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
     @Override
     public void run() {
-        while (enabled()) {
-            try (DatagramSocket socket = new DatagramSocket(null)) {
-                this.socket = socket;
-                socket.setReuseAddress(true);
-                socket.bind(socketAddress);
-                receiverListener.reportConnectionState(true, null);
-                while (enabled()) {
-                    DatagramPacket packet = new DatagramPacket(buf, buf.length);
-                    socket.receive(packet);
-
-                    String sender = packet.getAddress().getHostAddress() + ":" + packet.getPort();
-                    byte[] data = Arrays.copyOfRange(packet.getData(), 0, packet.getLength());
-
-                    logger.trace("Received {} bytes from {}: {}", packet.getLength(), sender, data);
-                    receiverListener.onReceive(sender, data);
+        Thread processingThread = new Thread(this::process, "OH-binding-tcpudp-udp-" + socketAddress);
+        processingThread.setDaemon(true);
+        processingThread.start();
+        this.processingThread = processingThread;
+
+        byte[] overflowBuffer = new byte[slotData[0].length];
+        DatagramPacket packet = new DatagramPacket(overflowBuffer, overflowBuffer.length);
+        try {
+            while (enabled()) {
+                try (DatagramSocket socket = new DatagramSocket(null)) {
+                    this.socket = socket;
+                    socket.setReuseAddress(true);
+                    if (receiveBufferSize > 0) {
+                        socket.setReceiveBufferSize(receiveBufferSize);
+                        if (socket.getReceiveBufferSize() < receiveBufferSize) {
+                            logger.info("Requested receive buffer size of {} bytes for {}, the system granted {} bytes",
+                                    receiveBufferSize, socketAddress, socket.getReceiveBufferSize());
+                        }
+                    }
+                    socket.bind(socketAddress);
+                    receiverListener.reportConnectionState(true, null);
+                    while (enabled()) {
+                        boolean slotAvailable = freeSlots.tryAcquire();
+                        byte[] buffer = slotAvailable ? slotData[writeIndex] : overflowBuffer;
+                        packet.setData(buffer, 0, buffer.length);
+                        try {
+                            socket.receive(packet);
+                        } catch (IOException e) {
+                            if (slotAvailable) {
+                                freeSlots.release();
+                            }
+                            throw e;
+                        }
+                        receivedPackets.incrementAndGet();
+
+                        if (!slotAvailable && freeSlots.tryAcquire()) {
+                            // a slot was freed while waiting for the datagram
+                            System.arraycopy(overflowBuffer, 0, slotData[writeIndex], 0, packet.getLength());
+                            slotAvailable = true;
+                        }
+                        if (slotAvailable) {
+                            slotLength[writeIndex] = packet.getLength();
+                            slotAddress[writeIndex] = packet.getAddress();
+                            slotPort[writeIndex] = packet.getPort();
+                            writeIndex = (writeIndex + 1) % slotData.length;
+                            filledSlots.release();
+                        } else {
+                            droppedPackets.incrementAndGet();
+                            logger.trace("Processing queue is full, dropped {} bytes from {}:{}", packet.getLength(),
+                                    packet.getAddress().getHostAddress(), packet.getPort());
+                        }
+                    }
+                } catch (IOException e) {
+                    receiverListener.reportConnectionState(false, e.getMessage());
+                }
+            }
+        } finally {
+            processingThread.interrupt();
+        }
+    }
+
+    private void process() {
+        // consecutive datagrams are usually from the same sender, re-use the sender string in that case
+        InetAddress lastAddress = null;
+        int lastPort = -1;
+        String sender = "";
+        try {
+            while (true) {
+                filledSlots.acquire();
+                // process all datagrams that are available in one batch
+                int batchSize = 1 + filledSlots.drainPermits();
+                for (int i = 0; i < batchSize; i++) {
+                    InetAddress address = slotAddress[readIndex];
+                    if (address != null && (slotPort[readIndex] != lastPort || !address.equals(lastAddress))) {
+                        lastAddress = address;
+                        lastPort = slotPort[readIndex];
+                        sender = address.getHostAddress() + ":" + lastPort;
+                    }
+                    byte[] data = Arrays.copyOf(slotData[readIndex], slotLength[readIndex]);
+                    slotAddress[readIndex] = null;
+                    readIndex = (readIndex + 1) % slotData.length;
+                    freeSlots.release();
+
+                    logger.trace("Received {} bytes from {}: {}", data.length, sender, data);
+                    try {
+                        receiverListener.onReceive(sender, data);
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to process datagram from {}: {}", sender, e.getMessage());
+                    }
                 }
-            } catch (IOException e) {
-                receiverListener.reportConnectionState(false, e.getMessage());
             }
+        } catch (InterruptedException e) {
+            // receiver was stopped
         }
     }
 
@@ -82,5 +214,9 @@ public class UdpReceiver implements Receiver {
         if (socket != null) {
             socket.close();
         }
+        Thread processingThread = this.processingThread;
+        if (processingThread != null) {
+            processingThread.interrupt();
+        }
     }
 }
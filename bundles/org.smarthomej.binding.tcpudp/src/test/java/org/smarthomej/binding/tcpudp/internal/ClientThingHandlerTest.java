@@ -19,6 +19,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.smarthomej.binding.tcpudp.internal.TcpUdpBindingConstants.BINDING_ID;
 import static org.smarthomej.binding.tcpudp.internal.TcpUdpBindingConstants.THING_TYPE_UID_CLIENT;
@@ -46,7 +47,9 @@ import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.thing.binding.builder.ThingBuilder;
 import org.openhab.core.thing.binding.generic.ChannelMode;
 import org.openhab.core.thing.type.ChannelTypeUID;
+import org.openhab.core.types.RefreshType;
 import org.smarthomej.binding.tcpudp.internal.config.ClientConfiguration;
+import org.smarthomej.binding.tcpudp.internal.config.FramingConfiguration;
 import org.smarthomej.binding.tcpudp.internal.config.TcpUdpChannelConfig;
 import org.smarthomej.binding.tcpudp.internal.test.EchoServer;
 import org.smarthomej.binding.tcpudp.internal.test.TestUtil;
@@ -65,6 +68,8 @@ public class ClientThingHandlerTest extends JavaTest {
     private static final ThingUID TEST_THING_UID = new ThingUID(THING_TYPE_UID_CLIENT, "testThing");
     private static final ChannelTypeUID CHANNEL_TYPE_UID = new ChannelTypeUID(BINDING_ID, "string");
     private static final ChannelUID TEST_CHANNEL_UID = new ChannelUID(TEST_THING_UID, "testChannel");
+    private static final String SECOND_STATE_CONTENT = "secondStateContent";
+    private static final ChannelUID SECOND_CHANNEL_UID = new ChannelUID(TEST_THING_UID, "secondChannel");
 
     @Mock
     private @NonNullByDefault({}) ThingHandlerCallback thingHandlerCallback;
@@ -77,6 +82,136 @@ public class ClientThingHandlerTest extends JavaTest {
         requestTest(ClientConfiguration.Protocol.TCP);
     }
 
+    @Test
+    public void tcpPersistentRequestTest() {
+        EchoServer echoServer = new EchoServer(ClientConfiguration.Protocol.TCP);
+        waitForAssert(() -> assertNotEquals(0, echoServer.getPort(), "Could not start EchoServer"));
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        clientConfiguration.host = "127.0.0.1";
+        clientConfiguration.port = echoServer.getPort();
+        clientConfiguration.refresh = 60;
+        clientConfiguration.protocol = ClientConfiguration.Protocol.TCP;
+        clientConfiguration.keepAlive = true;
+        // the echo server replies to commands
+        clientConfiguration.commandReply = true;
+
+        TcpUdpChannelConfig tcpUdpChannelConfig = new TcpUdpChannelConfig();
+        tcpUdpChannelConfig.stateContent = TEST_STATE_CONTENT;
+
+        ClientThingHandler clientThingHandler = getClientThingHandler(clientConfiguration, tcpUdpChannelConfig);
+
+        // initial refresh, a command and a refresh command use the same connection
+        waitForAssert(() -> assertEquals(1, echoServer.getReceivedValues().size()));
+        clientThingHandler.handleCommand(TEST_CHANNEL_UID, new StringType(TEST_STATE_CONTENT));
+        waitForAssert(() -> assertEquals(2, echoServer.getReceivedValues().size()));
+        clientThingHandler.handleCommand(TEST_CHANNEL_UID, RefreshType.REFRESH);
+        waitForAssert(() -> assertEquals(3, echoServer.getReceivedValues().size()));
+        verify(thingHandlerCallback, timeout(500).times(2)).stateUpdated(eq(TEST_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+        assertEquals(1, echoServer.getConnectionCount());
+
+        clientThingHandler.dispose();
+        echoServer.stop();
+    }
+
+    @Test
+    public void tcpDelimiterRequestTest() {
+        EchoServer echoServer = new EchoServer(ClientConfiguration.Protocol.TCP);
+        waitForAssert(() -> assertNotEquals(0, echoServer.getPort(), "Could not start EchoServer"));
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        clientConfiguration.host = "127.0.0.1";
+        clientConfiguration.port = echoServer.getPort();
+        clientConfiguration.refresh = 60;
+        clientConfiguration.protocol = ClientConfiguration.Protocol.TCP;
+        clientConfiguration.framing = FramingConfiguration.Framing.DELIMITER;
+        clientConfiguration.delimiter = "\\r\\n";
+
+        TcpUdpChannelConfig tcpUdpChannelConfig = new TcpUdpChannelConfig();
+        tcpUdpChannelConfig.stateContent = TEST_STATE_CONTENT + "\r\n";
+
+        ClientThingHandler clientThingHandler = getClientThingHandler(clientConfiguration, tcpUdpChannelConfig);
+
+        // the delimiter is removed from the response
+        verify(thingHandlerCallback, timeout(1000)).stateUpdated(eq(TEST_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+
+        clientThingHandler.dispose();
+        echoServer.stop();
+    }
+
+    @Test
+    public void tcpPipelinedRequestTest() {
+        EchoServer echoServer = new EchoServer(ClientConfiguration.Protocol.TCP);
+        waitForAssert(() -> assertNotEquals(0, echoServer.getPort(), "Could not start EchoServer"));
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        clientConfiguration.host = "127.0.0.1";
+        clientConfiguration.port = echoServer.getPort();
+        clientConfiguration.refresh = 60;
+        clientConfiguration.protocol = ClientConfiguration.Protocol.TCP;
+        clientConfiguration.keepAlive = true;
+        clientConfiguration.maxPipelinedRequests = 2;
+        clientConfiguration.framing = FramingConfiguration.Framing.DELIMITER;
+        clientConfiguration.delimiter = "\\n";
+
+        TcpUdpChannelConfig tcpUdpChannelConfig = new TcpUdpChannelConfig();
+        tcpUdpChannelConfig.stateContent = TEST_STATE_CONTENT + "\n";
+        TcpUdpChannelConfig secondChannelConfig = new TcpUdpChannelConfig();
+        secondChannelConfig.stateContent = SECOND_STATE_CONTENT + "\n";
+
+        ClientThingHandler clientThingHandler = getClientThingHandler(clientConfiguration,
+                List.of(getChannel(TEST_CHANNEL_UID, tcpUdpChannelConfig),
+                        getChannel(SECOND_CHANNEL_UID, secondChannelConfig)));
+
+        // both responses are read from the same connection and assigned to the right channel
+        verify(thingHandlerCallback, timeout(1000)).stateUpdated(eq(TEST_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+        verify(thingHandlerCallback, timeout(1000)).stateUpdated(eq(SECOND_CHANNEL_UID),
+                eq(new StringType(SECOND_STATE_CONTENT)));
+        assertEquals(1, echoServer.getConnectionCount());
+
+        clientThingHandler.dispose();
+        echoServer.stop();
+    }
+
+    @Test
+    public void sharedStateContentTest() {
+        EchoServer echoServer = new EchoServer(ClientConfiguration.Protocol.TCP);
+        waitForAssert(() -> assertNotEquals(0, echoServer.getPort(), "Could not start EchoServer"));
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        clientConfiguration.host = "127.0.0.1";
+        clientConfiguration.port = echoServer.getPort();
+        clientConfiguration.refresh = 60;
+        clientConfiguration.protocol = ClientConfiguration.Protocol.TCP;
+        clientConfiguration.responseCacheTime = 60000;
+
+        TcpUdpChannelConfig tcpUdpChannelConfig = new TcpUdpChannelConfig();
+        tcpUdpChannelConfig.stateContent = TEST_STATE_CONTENT;
+
+        ClientThingHandler clientThingHandler = getClientThingHandler(clientConfiguration,
+                List.of(getChannel(TEST_CHANNEL_UID, tcpUdpChannelConfig),
+                        getChannel(SECOND_CHANNEL_UID, tcpUdpChannelConfig)));
+
+        // the request is sent once and the response is reported to both channels
+        verify(thingHandlerCallback, timeout(1000)).stateUpdated(eq(TEST_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+        verify(thingHandlerCallback, timeout(1000)).stateUpdated(eq(SECOND_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+        assertEquals(1, echoServer.getReceivedValues().size());
+
+        // a refresh is answered from the cache
+        clientThingHandler.handleCommand(SECOND_CHANNEL_UID, RefreshType.REFRESH);
+        verify(thingHandlerCallback, times(2)).stateUpdated(eq(SECOND_CHANNEL_UID),
+                eq(new StringType(TEST_STATE_CONTENT)));
+        assertEquals(1, echoServer.getReceivedValues().size());
+
+        clientThingHandler.dispose();
+        echoServer.stop();
+    }
+
     @Test
     public void udpRequestTest() {
         requestTest(ClientConfiguration.Protocol.UDP);
@@ -163,11 +298,19 @@ public class ClientThingHandlerTest extends JavaTest {
      */
     private ClientThingHandler getClientThingHandler(ClientConfiguration clientConfiguration,
             TcpUdpChannelConfig tcpUdpChannelConfig) {
-        Channel channel = ChannelBuilder.create(TEST_CHANNEL_UID).withAcceptedItemType("String")
-                .withType(CHANNEL_TYPE_UID)
-                .withConfiguration(TestUtil.getConfigurationFromInstance(tcpUdpChannelConfig)).build();
+        return getClientThingHandler(clientConfiguration, List.of(getChannel(TEST_CHANNEL_UID, tcpUdpChannelConfig)));
+    }
+
+    /**
+     * create a ClientThingHandler with several channels and initialize it
+     *
+     * @param clientConfiguration the thing configuration
+     * @param channels the channels
+     * @return the initialized ClientThingHandler
+     */
+    private ClientThingHandler getClientThingHandler(ClientConfiguration clientConfiguration, List<Channel> channels) {
         Thing thing = ThingBuilder.create(THING_TYPE_UID_CLIENT, TEST_THING_UID)
-                .withConfiguration(TestUtil.getConfigurationFromInstance(clientConfiguration)).withChannel(channel)
+                .withConfiguration(TestUtil.getConfigurationFromInstance(clientConfiguration)).withChannels(channels)
                 .build();
 
         ClientThingHandler testClientThingHandler = new ClientThingHandler(thing,
@@ -179,4 +322,9 @@ public class ClientThingHandlerTest extends JavaTest {
 
         return testClientThingHandler;
     }
+
+    private Channel getChannel(ChannelUID channelUID, TcpUdpChannelConfig tcpUdpChannelConfig) {
+        return ChannelBuilder.create(channelUID).withAcceptedItemType("String").withType(CHANNEL_TYPE_UID)
+                .withConfiguration(TestUtil.getConfigurationFromInstance(tcpUdpChannelConfig)).build();
+    }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.framing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.smarthomej.binding.tcpudp.internal.config.FramingConfiguration;
+
+/**
+ * The {@link FrameDecoderTest} is a test class for {@link FrameDecoder}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class FrameDecoderTest {
+
+    @Test
+    public void delimiterIsParsed() {
+        assertArrayEquals(new byte[] { '\r', '\n' }, FrameDecoder.parseDelimiter("\\r\\n"));
+        assertArrayEquals(new byte[] { '>', 0, (byte) 0xfe, '\\' }, FrameDecoder.parseDelimiter(">\\0\\xFE\\\\"));
+        assertThrows(IllegalArgumentException.class, () -> FrameDecoder.parseDelimiter("\\"));
+        assertThrows(IllegalArgumentException.class, () -> FrameDecoder.parseDelimiter("\\xZ1"));
+        assertThrows(IllegalArgumentException.class, () -> FrameDecoder.parseDelimiter("\\q"));
+    }
+
+    @Test
+    public void delimiterFraming() {
+        FramingConfiguration config = new FramingConfiguration();
+        config.framing = FramingConfiguration.Framing.DELIMITER;
+        FrameDecoder frameDecoder = new FrameDecoder(config);
+
+        byte[] data = "xxOK 1\r\nOK 2\r".getBytes(StandardCharsets.UTF_8);
+        assertEquals(6, frameDecoder.findFrame(data, 2, data.length - 2));
+        assertEquals(-1, frameDecoder.findFrame(data, 8, data.length - 8));
+        assertEquals(2, frameDecoder.getTrailerLength());
+    }
+
+    @Test
+    public void fixedLengthFraming() {
+        FramingConfiguration config = new FramingConfiguration();
+        config.framing = FramingConfiguration.Framing.FIXED_LENGTH;
+        config.frameLength = 4;
+        FrameDecoder frameDecoder = new FrameDecoder(config);
+
+        assertEquals(-1, frameDecoder.findFrame(new byte[3], 0, 3));
+        assertEquals(4, frameDecoder.findFrame(new byte[6], 0, 6));
+        assertEquals(0, frameDecoder.getTrailerLength());
+    }
+
+    @Test
+    public void lengthFieldFraming() {
+        FramingConfiguration config = new FramingConfiguration();
+        config.framing = FramingConfiguration.Framing.LENGTH_FIELD;
+        config.lengthFieldOffset = 1;
+        config.lengthFieldSize = 2;
+        config.lengthAdjustment = 1; // e.g. a checksum after the content
+        FrameDecoder frameDecoder = new FrameDecoder(config);
+
+        byte[] data = new byte[] { 0x02, 0x00, 0x03, 'a', 'b', 'c', 0x7f, 0x02 };
+        assertEquals(-1, frameDecoder.findFrame(data, 0, 2));
+        assertEquals(-1, frameDecoder.findFrame(data, 0, 6));
+        assertEquals(7, frameDecoder.findFrame(data, 0, data.length));
+    }
+
+    @Test
+    public void invalidConfigurationIsRejected() {
+        FramingConfiguration config = new FramingConfiguration();
+        config.framing = FramingConfiguration.Framing.FIXED_LENGTH;
+        assertThrows(IllegalArgumentException.class, () -> new FrameDecoder(config));
+
+        config.framing = FramingConfiguration.Framing.LENGTH_FIELD;
+        config.lengthFieldSize = 3;
+        assertThrows(IllegalArgumentException.class, () -> new FrameDecoder(config));
+
+        config.framing = FramingConfiguration.Framing.IDLE_GAP;
+        config.idleGap = 0;
+        assertThrows(IllegalArgumentException.class, () -> new FrameDecoder(config));
+    }
+}
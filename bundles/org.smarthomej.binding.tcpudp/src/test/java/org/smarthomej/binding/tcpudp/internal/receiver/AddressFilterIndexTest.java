@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.receiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link AddressFilterIndexTest} is a test class for {@link AddressFilterIndex}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class AddressFilterIndexTest {
+
+    @Test
+    public void filtersAreMatched() {
+        AddressFilterIndex<String> index = new AddressFilterIndex<>();
+        index.add("*", "all");
+        index.add("192.168.0.1:5000", "exact");
+        index.add("192.168.0.1:*", "host");
+        index.add("192.168.0.*", "subnet");
+        index.add("*:5000", "port");
+        index.add("192.168.*.1:*", "infix");
+
+        assertEquals(List.of("all", "exact", "host", "subnet", "port", "infix"), index.get("192.168.0.1:5000"));
+        assertEquals(List.of("all", "host", "subnet", "infix"), index.get("192.168.0.1:5001"));
+        assertEquals(List.of("all", "subnet"), index.get("192.168.0.12:5001"));
+        assertEquals(List.of("all", "port", "infix"), index.get("192.168.1.1:5000"));
+        assertEquals(List.of("all"), index.get("10.0.0.1:80"));
+    }
+
+    @Test
+    public void cacheIsInvalidated() {
+        AddressFilterIndex<String> index = new AddressFilterIndex<>();
+        assertTrue(index.get("192.168.0.1:5000").isEmpty());
+
+        index.add("192.168.0.1:5000", "exact");
+        assertEquals(List.of("exact"), index.get("192.168.0.1:5000"));
+
+        index.add("192.168.0.*", "subnet");
+        assertEquals(List.of("exact", "subnet"), index.get("192.168.0.1:5000"));
+
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertTrue(index.get("192.168.0.1:5000").isEmpty());
+    }
+}
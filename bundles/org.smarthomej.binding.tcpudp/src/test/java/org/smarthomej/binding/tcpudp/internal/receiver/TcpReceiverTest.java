@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.receiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.smarthomej.binding.tcpudp.internal.config.FramingConfiguration;
+import org.smarthomej.binding.tcpudp.internal.framing.FrameDecoder;
+
+/**
+ * The {@link TcpReceiverTest} is a test class for {@link TcpReceiver}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TcpReceiverTest {
+    private static final long TIMEOUT = 2000; // in ms
+    // large enough that data sent in quick succession is never split, even on a slow machine
+    private static final int IDLE_GAP = 500000; // in µs
+
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Boolean> connectionStates = new LinkedBlockingQueue<>();
+    private final List<Socket> clients = new ArrayList<>();
+    private @Nullable TcpReceiver receiver;
+    private @Nullable Thread thread;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (Socket client : clients) {
+            client.close();
+        }
+        TcpReceiver receiver = this.receiver;
+        if (receiver != null) {
+            receiver.stop();
+        }
+        Thread thread = this.thread;
+        if (thread != null) {
+            thread.join(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void concurrentConnectionsAreServed() throws Exception {
+        int port = startReceiver(FramingConfiguration.Framing.DELIMITER, 16);
+
+        Socket client1 = connect(port);
+        Socket client2 = connect(port);
+        send(client1, "a1\r\na2\r\n");
+        send(client2, "b1\r\nb2");
+
+        assertEquals(List.of("a1", "a2", "b1"), receive(3).stream().sorted().toList());
+
+        // the remaining data is reported when the connection is closed
+        client2.close();
+        assertEquals(List.of("b2"), receive(1));
+
+        // the connection is still open
+        send(client1, "a3\r\n");
+        assertEquals(List.of("a3"), receive(1));
+    }
+
+    @Test
+    public void idleGapSeparatesMessages() throws Exception {
+        int port = startReceiver(FramingConfiguration.Framing.IDLE_GAP, 16);
+
+        Socket client = connect(port);
+        send(client, "part1,");
+        send(client, "part2");
+        assertEquals(List.of("part1,part2"), receive(1));
+
+        // the previous message was reported, so the idle gap has passed
+        send(client, "next");
+        assertEquals(List.of("next"), receive(1));
+    }
+
+    @Test
+    public void connectionsAreLimited() throws Exception {
+        int port = startReceiver(FramingConfiguration.Framing.DELIMITER, 1);
+
+        Socket client1 = connect(port);
+        send(client1, "a1\r\n");
+        assertEquals(List.of("a1"), receive(1));
+
+        // the second client is not served until the first connection is closed
+        Socket client2 = connect(port);
+        send(client2, "b1\r\n");
+        assertNull(messages.poll(200, TimeUnit.MILLISECONDS));
+
+        client1.close();
+        assertEquals(List.of("b1"), receive(1));
+    }
+
+    private int startReceiver(FramingConfiguration.Framing framing, int maxConnections) throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+
+        FramingConfiguration framingConfiguration = new FramingConfiguration();
+        framingConfiguration.framing = framing;
+        framingConfiguration.idleGap = IDLE_GAP;
+
+        TcpReceiver receiver = new TcpReceiver(new Receiver.ReceiverListener() {
+            @Override
+            public void reportConnectionState(boolean state, @Nullable String message) {
+                connectionStates.add(state);
+            }
+
+            @Override
+            public void onReceive(String sender, byte[] content) {
+                messages.add(new String(content, StandardCharsets.UTF_8));
+            }
+        }, "127.0.0.1", port, 64, new FrameDecoder(framingConfiguration), maxConnections);
+        Thread thread = new Thread(receiver);
+        thread.start();
+        this.receiver = receiver;
+        this.thread = thread;
+
+        assertEquals(true, connectionStates.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        return port;
+    }
+
+    private Socket connect(int port) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        clients.add(socket);
+        return socket;
+    }
+
+    private void send(Socket socket, String data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private List<String> receive(int count) throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String message = messages.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                throw new AssertionError("Did not receive message within timeout");
+            }
+            received.add(message);
+        }
+        return received;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tcpudp.internal.receiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.test.java.JavaTest;
+
+/**
+ * The {@link UdpReceiverTest} is a test class for {@link UdpReceiver}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class UdpReceiverTest extends JavaTest {
+    private static final long TIMEOUT = 2000; // in ms
+
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Boolean> connectionStates = new LinkedBlockingQueue<>();
+    // the first datagram blocks the processing until released
+    private final CountDownLatch processingStarted = new CountDownLatch(1);
+    private final CountDownLatch processingReleased = new CountDownLatch(1);
+    private @Nullable DatagramSocket client;
+    private @Nullable UdpReceiver receiver;
+    private @Nullable Thread thread;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        processingReleased.countDown();
+        DatagramSocket client = this.client;
+        if (client != null) {
+            client.close();
+        }
+        UdpReceiver receiver = this.receiver;
+        if (receiver != null) {
+            receiver.stop();
+        }
+        Thread thread = this.thread;
+        if (thread != null) {
+            thread.join(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void datagramsAreProcessedInOrder() throws Exception {
+        UdpReceiver receiver = startReceiver(16);
+
+        for (int i = 0; i < 10; i++) {
+            send(String.valueOf(i));
+        }
+        processingReleased.countDown();
+
+        assertEquals(List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), receive(10));
+        assertEquals(10, receiver.getReceivedPackets());
+        assertEquals(0, receiver.getDroppedPackets());
+    }
+
+    @Test
+    public void datagramsAreDroppedIfQueueIsFull() throws Exception {
+        UdpReceiver receiver = startReceiver(2);
+
+        // the first datagram is taken from the queue and blocks the processing
+        send("0");
+        assertTrue(processingStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // two datagrams fit in the queue, the others are dropped
+        for (int i = 1; i < 5; i++) {
+            send(String.valueOf(i));
+        }
+        waitForAssert(() -> assertEquals(5, receiver.getReceivedPackets()));
+        assertEquals(2, receiver.getDroppedPackets());
+
+        processingReleased.countDown();
+        assertEquals(List.of("0", "1", "2"), receive(3));
+
+        // the queue is available again
+        send("5");
+        assertEquals(List.of("5"), receive(1));
+        assertEquals(2, receiver.getDroppedPackets());
+    }
+
+    private UdpReceiver startReceiver(int queueSize) throws Exception {
+        int port;
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        UdpReceiver receiver = new UdpReceiver(new Receiver.ReceiverListener() {
+            @Override
+            public void reportConnectionState(boolean state, @Nullable String message) {
+                connectionStates.add(state);
+            }
+
+            @Override
+            public void onReceive(String sender, byte[] content) {
+                processingStarted.countDown();
+                try {
+                    processingReleased.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                messages.add(new String(content, StandardCharsets.UTF_8));
+            }
+        }, "127.0.0.1", port, 64, queueSize, 0);
+        Thread thread = new Thread(receiver);
+        thread.start();
+        this.receiver = receiver;
+        this.thread = thread;
+
+        assertEquals(true, connectionStates.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        DatagramSocket client = new DatagramSocket();
+        client.connect(InetAddress.getByName("127.0.0.1"), port);
+        this.client = client;
+
+        return receiver;
+    }
+
+    private void send(String data) throws IOException {
+        DatagramSocket client = this.client;
+        if (client == null) {
+            throw new IllegalStateException("Receiver not started");
+        }
+        byte[] buffer = data.getBytes(StandardCharsets.UTF_8);
+        client.send(new DatagramPacket(buffer, buffer.length));
+    }
+
+    private List<String> receive(int count) throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String message = messages.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                throw new AssertionError("Did not receive message within timeout");
+            }
+            received.add(message);
+        }
+        return received;
+    }
+}
@@ -47,6 +47,7 @@ public class EchoServer {
     private @Nullable DatagramSocket udpSocket;
 
     private int port = 0;
+    private int connectionCount = 0;
     private byte[] buf = new byte[2048];
 
     public EchoServer(ClientConfiguration.Protocol protocol) {
@@ -67,6 +68,15 @@ public class EchoServer {
         return port;
     }
 
+    /**
+     * get the number of accepted TCP connections
+     *
+     * @return the number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
     public List<String> getReceivedValues() {
         return receivedValues;
     }
@@ -98,14 +108,18 @@ public class EchoServer {
                 try (Socket clientSocket = serverSocket.accept();
                         InputStream in = clientSocket.getInputStream();
                         OutputStream out = clientSocket.getOutputStream()) {
+                    connectionCount++;
+                    // echo until the client closes the connection, so that persistent connections can be tested
                     int byteCount = in.read(buf);
                     if (byteCount == -1) {
                         logger.warn("Did not receive data");
-                    } else {
+                    }
+                    while (byteCount != -1) {
                         byte[] data = Arrays.copyOfRange(buf, 0, byteCount);
                         receivedValues.add(new String(data));
                         out.write(data);
                         out.flush();
+                        byteCount = in.read(buf);
                     }
                 }
             }
@@ -43,13 +43,22 @@ public class TuyaBindingConstants {
     // List of all Thing Type UIDs
     public static final ThingTypeUID THING_TYPE_PROJECT = new ThingTypeUID(BINDING_ID, "project");
     public static final ThingTypeUID THING_TYPE_TUYA_DEVICE = new ThingTypeUID(BINDING_ID, "tuyaDevice");
+    public static final ThingTypeUID THING_TYPE_GATEWAY = new ThingTypeUID(BINDING_ID, "gateway");
 
     public static final String PROPERTY_CATEGORY = "category";
     public static final String PROPERTY_MAC = "mac";
+    public static final String PROPERTY_COALESCED_FRAMES = "coalescedFrames";
+    public static final String PROPERTY_PUBLISHED_STATES = "publishedStates";
+    public static final String PROPERTY_SUPPRESSED_STATES = "suppressedStates";
+
+    public static final String CHANNEL_QUEUED_REQUESTS = "queuedRequests";
+    public static final String CHANNEL_REQUEST_LATENCY = "requestLatency";
+    public static final String CHANNEL_THROTTLED_REQUESTS = "throttledRequests";
 
     public static final String CONFIG_LOCAL_KEY = "localKey";
     public static final String CONFIG_DEVICE_ID = "deviceId";
     public static final String CONFIG_PRODUCT_ID = "productId";
+    public static final String CONFIG_NODE_ID = "nodeId";
 
     public static final ChannelTypeUID CHANNEL_TYPE_UID_COLOR = new ChannelTypeUID(BINDING_ID, "color");
     public static final ChannelTypeUID CHANNEL_TYPE_UID_DIMMER = new ChannelTypeUID(BINDING_ID, "dimmer");
@@ -58,9 +67,24 @@ public class TuyaBindingConstants {
     public static final ChannelTypeUID CHANNEL_TYPE_UID_SWITCH = new ChannelTypeUID(BINDING_ID, "switch");
     public static final ChannelTypeUID CHANNEL_TYPE_UID_IR_CODE = new ChannelTypeUID(BINDING_ID, "ir-code");
 
+    public static final int TCP_PORT = 6668;
     public static final int TCP_CONNECTION_HEARTBEAT_INTERVAL = 10; // in s
     public static final int TCP_CONNECTION_TIMEOUT = 60; // in s;
     public static final int TCP_CONNECTION_MAXIMUM_MISSED_HEARTBEATS = 3;
+    public static final int TCP_REQUEST_TIMEOUT = 5000; // in ms
+    public static final int TCP_MAXIMUM_REQUESTS_IN_FLIGHT = 4;
+    public static final int TCP_MAXIMUM_QUEUED_REQUESTS = 64;
+    public static final long RECONNECT_INITIAL_DELAY = 2000; // in ms
+    public static final long RECONNECT_MAXIMUM_DELAY = 300000; // in ms
+    public static final long RECONNECT_HANDSHAKE_TIMEOUT = 10000; // in ms
+    public static final int RECONNECT_MAXIMUM_CONCURRENT_HANDSHAKES = 8;
+    public static final double CLOUD_REQUEST_RATE = 10.0; // in requests/s
+    public static final int CLOUD_REQUEST_BURST = 20;
+    public static final int CLOUD_MAXIMUM_REQUESTS_IN_FLIGHT = 4;
+    public static final int CLOUD_MAXIMUM_QUEUED_REQUESTS = 1000;
+    public static final long CLOUD_REQUEST_RETRY_DELAY = 1000; // in ms
+    public static final int CLOUD_REQUEST_MAXIMUM_RETRIES = 3;
+    public static final int CLOUD_METRICS_INTERVAL = 60; // in s
 
     public static final Map<String, Map<String, SchemaDp>> SCHEMAS = getSchemas();
 
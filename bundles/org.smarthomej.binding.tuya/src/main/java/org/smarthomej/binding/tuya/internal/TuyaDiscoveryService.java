@@ -14,18 +14,21 @@ package org.smarthomej.binding.tuya.internal;
 
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CONFIG_DEVICE_ID;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CONFIG_LOCAL_KEY;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CONFIG_NODE_ID;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CONFIG_PRODUCT_ID;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.PROPERTY_CATEGORY;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.PROPERTY_MAC;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.THING_TYPE_TUYA_DEVICE;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -59,12 +62,21 @@ import com.google.gson.Gson;
 public class TuyaDiscoveryService extends AbstractThingHandlerDiscoveryService<ProjectHandler> {
     public static final Set<ThingTypeUID> SUPPORTED_THING_TYPES = Set.of(THING_TYPE_TUYA_DEVICE);
     private static final int SEARCH_TIME = 5;
+    // the factory information endpoint accepts at most 20 device ids per request
+    private static final int FACTORY_INFORMATION_BATCH_SIZE = 20;
+    private static final int SCHEMA_REQUESTS_IN_PARALLEL = 4;
+    private static final String SCHEMA_UPDATE_TIME_SUFFIX = ".updateTime";
 
     private final Logger logger = LoggerFactory.getLogger(TuyaDiscoveryService.class);
     private final Gson gson = new Gson();
     private @NonNullByDefault({}) Storage<String> storage;
     private @Nullable ScheduledFuture<?> discoveryJob;
 
+    // devices that were discovered in the last scan, only new or changed devices are requested again
+    private final Map<String, KnownDevice> knownDevices = new ConcurrentHashMap<>();
+    private final Queue<DeviceListInfo> schemaQueue = new ArrayDeque<>();
+    private int schemaRequests = 0;
+
     public TuyaDiscoveryService() {
         super(ProjectHandler.class, SUPPORTED_THING_TYPES, SEARCH_TIME);
     }
@@ -78,43 +90,111 @@ public class TuyaDiscoveryService extends AbstractThingHandlerDiscoveryService<P
             return;
         }
 
-        processDeviceResponse(List.of(), api, 0);
+        processDeviceResponse(List.of(), api, 0, ConcurrentHashMap.newKeySet());
     }
 
-    private void processDeviceResponse(List<DeviceListInfo> deviceList, TuyaOpenAPI api, int page) {
-        deviceList.forEach(device -> processDevice(device, api));
+    private void processDeviceResponse(List<DeviceListInfo> deviceList, TuyaOpenAPI api, int page,
+            Set<String> seenDevices) {
+        List<DeviceListInfo> newDevices = new ArrayList<>();
+        for (DeviceListInfo device : deviceList) {
+            seenDevices.add(device.id);
+            KnownDevice knownDevice = knownDevices.get(device.id);
+            if (knownDevice != null && knownDevice.isUnchanged(device)) {
+                // refresh the result, otherwise it is removed at the end of the scan
+                thingDiscovered(knownDevice.discoveryResult);
+            } else {
+                newDevices.add(device);
+            }
+        }
+        processNewDevices(newDevices, api);
+
         if (page == 0 || deviceList.size() == 100) {
             int nextPage = page + 1;
-            thingHandler.getAllDevices(nextPage)
-                    .thenAccept(nextDeviceList -> processDeviceResponse(nextDeviceList, api, nextPage));
+            thingHandler.getAllDevices(nextPage).thenAccept(
+                    nextDeviceList -> processDeviceResponse(nextDeviceList, api, nextPage, seenDevices));
+        } else {
+            // last page, forget devices that have been removed from the account
+            knownDevices.keySet().retainAll(seenDevices);
+        }
+    }
+
+    private void processNewDevices(List<DeviceListInfo> devices, TuyaOpenAPI api) {
+        for (int i = 0; i < devices.size(); i += FACTORY_INFORMATION_BATCH_SIZE) {
+            List<DeviceListInfo> batch = devices.subList(i,
+                    Math.min(devices.size(), i + FACTORY_INFORMATION_BATCH_SIZE));
+            List<String> deviceIds = batch.stream().map(device -> device.id).toList();
+            api.getFactoryInformation(deviceIds).thenAccept(fiList -> {
+                Map<String, String> deviceMacs = new HashMap<>();
+                fiList.forEach(fi -> deviceMacs.putIfAbsent(fi.id, fi.mac));
+                batch.forEach(device -> processDevice(device, deviceMacs.getOrDefault(device.id, "")));
+                fetchSchemas(api);
+            }).exceptionally(e -> {
+                logger.debug("Failed to get factory information for {}: {}", deviceIds, e.getMessage());
+                return null;
+            });
         }
     }
 
-    private void processDevice(DeviceListInfo device, TuyaOpenAPI api) {
-        api.getFactoryInformation(List.of(device.id)).thenAccept(fiList -> {
-            ThingUID thingUid = new ThingUID(THING_TYPE_TUYA_DEVICE, device.id);
-            String deviceMac = fiList.stream().filter(fi -> fi.id.equals(device.id)).findAny().map(fi -> fi.mac)
-                    .orElse("");
+    private void processDevice(DeviceListInfo device, String deviceMac) {
+        ThingUID thingUid = new ThingUID(THING_TYPE_TUYA_DEVICE, device.id);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(PROPERTY_CATEGORY, device.category);
+        properties.put(PROPERTY_MAC, deviceMac.replaceAll("(..)(?!$)", "$1:"));
+        properties.put(CONFIG_LOCAL_KEY, device.localKey);
+        properties.put(CONFIG_DEVICE_ID, device.id);
+        properties.put(CONFIG_PRODUCT_ID, device.productId);
+        if (device.subDevice && !device.nodeId.isEmpty()) {
+            // needed if the device is added as sub-device of a gateway
+            properties.put(CONFIG_NODE_ID, device.nodeId);
+        }
+
+        DiscoveryResult discoveryResult = DiscoveryResultBuilder.create(thingUid).withLabel(device.name)
+                .withRepresentationProperty(CONFIG_DEVICE_ID).withProperties(properties).build();
+
+        if (!isSchemaUpToDate(device)) {
+            synchronized (schemaQueue) {
+                schemaQueue.add(device);
+            }
+        }
 
-            Map<String, Object> properties = new HashMap<>();
-            properties.put(PROPERTY_CATEGORY, device.category);
-            properties.put(PROPERTY_MAC, Objects.requireNonNull(deviceMac).replaceAll("(..)(?!$)", "$1:"));
-            properties.put(CONFIG_LOCAL_KEY, device.localKey);
-            properties.put(CONFIG_DEVICE_ID, device.id);
-            properties.put(CONFIG_PRODUCT_ID, device.productId);
+        thingDiscovered(discoveryResult);
+        knownDevices.put(device.id, new KnownDevice(device, discoveryResult));
+    }
 
-            DiscoveryResult discoveryResult = DiscoveryResultBuilder.create(thingUid).withLabel(device.name)
-                    .withRepresentationProperty(CONFIG_DEVICE_ID).withProperties(properties).build();
+    private boolean isSchemaUpToDate(DeviceListInfo device) {
+        return storage.containsKey(device.id)
+                && String.valueOf(device.updateTime).equals(storage.get(device.id + SCHEMA_UPDATE_TIME_SUFFIX));
+    }
 
-            api.getDeviceSchema(device.id).thenAccept(schema -> {
+    /**
+     * Start schema requests from the queue until the maximum number of parallel requests is reached
+     */
+    private void fetchSchemas(TuyaOpenAPI api) {
+        List<DeviceListInfo> devices = new ArrayList<>();
+        synchronized (schemaQueue) {
+            while (schemaRequests < SCHEMA_REQUESTS_IN_PARALLEL && !schemaQueue.isEmpty()) {
+                devices.add(schemaQueue.remove());
+                schemaRequests++;
+            }
+        }
+        devices.forEach(device -> api.getDeviceSchema(device.id).whenComplete((schema, e) -> {
+            if (schema != null) {
                 List<SchemaDp> schemaDps = new ArrayList<>();
                 schema.functions.forEach(description -> addUniqueSchemaDp(description, schemaDps));
                 schema.status.forEach(description -> addUniqueSchemaDp(description, schemaDps));
                 storage.put(device.id, gson.toJson(schemaDps));
-            });
-
-            thingDiscovered(discoveryResult);
-        });
+                storage.put(device.id + SCHEMA_UPDATE_TIME_SUFFIX, String.valueOf(device.updateTime));
+            } else {
+                logger.debug("Failed to get schema for '{}': {}", device.id, e != null ? e.getMessage() : "");
+                // retry in the next scan
+                knownDevices.remove(device.id);
+            }
+            synchronized (schemaQueue) {
+                schemaRequests--;
+            }
+            fetchSchemas(api);
+        }));
     }
 
     private void addUniqueSchemaDp(DeviceSchema.Description description, List<SchemaDp> schemaDps) {
@@ -148,6 +228,10 @@ public class TuyaDiscoveryService extends AbstractThingHandlerDiscoveryService<P
     @Override
     public void dispose() {
         super.dispose();
+        knownDevices.clear();
+        synchronized (schemaQueue) {
+            schemaQueue.clear();
+        }
         removeOlderResults(new Date().getTime());
     }
 
@@ -172,4 +256,22 @@ public class TuyaDiscoveryService extends AbstractThingHandlerDiscoveryService<P
             this.discoveryJob = null;
         }
     }
+
+    private static class KnownDevice {
+        private final long updateTime;
+        private final String localKey;
+        private final String name;
+        private final DiscoveryResult discoveryResult;
+
+        public KnownDevice(DeviceListInfo device, DiscoveryResult discoveryResult) {
+            this.updateTime = device.updateTime;
+            this.localKey = device.localKey;
+            this.name = device.name;
+            this.discoveryResult = discoveryResult;
+        }
+
+        public boolean isUnchanged(DeviceListInfo device) {
+            return updateTime == device.updateTime && localKey.equals(device.localKey) && name.equals(device.name);
+        }
+    }
 }
@@ -12,19 +12,23 @@
  */
 package org.smarthomej.binding.tuya.internal;
 
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.THING_TYPE_GATEWAY;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.THING_TYPE_PROJECT;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.THING_TYPE_TUYA_DEVICE;
 
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.client.HttpClient;
+import org.openhab.core.config.core.Configuration;
 import org.openhab.core.io.net.http.HttpClientFactory;
 import org.openhab.core.storage.Storage;
 import org.openhab.core.storage.StorageService;
+import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingTypeUID;
 import org.openhab.core.thing.binding.BaseThingHandlerFactory;
@@ -34,8 +38,12 @@ import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.smarthomej.binding.tuya.internal.config.BindingConfiguration;
 import org.smarthomej.binding.tuya.internal.handler.ProjectHandler;
 import org.smarthomej.binding.tuya.internal.handler.TuyaDeviceHandler;
+import org.smarthomej.binding.tuya.internal.handler.TuyaGatewayHandler;
+import org.smarthomej.binding.tuya.internal.local.NettyTransport;
+import org.smarthomej.binding.tuya.internal.local.ReconnectCoordinator;
 import org.smarthomej.binding.tuya.internal.local.UdpDiscoveryListener;
 import org.smarthomej.binding.tuya.internal.util.SchemaDp;
 import org.smarthomej.commons.SimpleDynamicCommandDescriptionProvider;
@@ -43,9 +51,6 @@ import org.smarthomej.commons.SimpleDynamicCommandDescriptionProvider;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-
 /**
  * The {@link TuyaHandlerFactory} is responsible for creating things and thing
  * handlers.
@@ -57,31 +62,36 @@ import io.netty.channel.nio.NioEventLoopGroup;
 @SuppressWarnings("unused")
 public class TuyaHandlerFactory extends BaseThingHandlerFactory {
     private static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Set.of(THING_TYPE_PROJECT,
-            THING_TYPE_TUYA_DEVICE);
+            THING_TYPE_TUYA_DEVICE, THING_TYPE_GATEWAY);
     private static final Type STORAGE_TYPE = TypeToken.getParameterized(List.class, SchemaDp.class).getType();
 
     private final SimpleDynamicCommandDescriptionProvider dynamicCommandDescriptionProvider;
     private final HttpClient httpClient;
     private final Gson gson = new Gson();
     private final UdpDiscoveryListener udpDiscoveryListener;
-    private final EventLoopGroup eventLoopGroup;
+    private final NettyTransport transport;
+    private final ReconnectCoordinator reconnectCoordinator;
     private final Storage<String> storage;
 
     @Activate
     public TuyaHandlerFactory(@Reference HttpClientFactory httpClientFactory,
             @Reference SimpleDynamicCommandDescriptionProvider dynamicCommandDescriptionProvider,
-            @Reference StorageService storageService) {
+            @Reference StorageService storageService, Map<String, Object> properties) {
         this.httpClient = httpClientFactory.getCommonHttpClient();
         this.dynamicCommandDescriptionProvider = dynamicCommandDescriptionProvider;
-        this.eventLoopGroup = new NioEventLoopGroup();
-        this.udpDiscoveryListener = new UdpDiscoveryListener(eventLoopGroup);
+        BindingConfiguration configuration = new Configuration(properties).as(BindingConfiguration.class);
+        this.transport = NettyTransport.create(configuration.nativeTransport, configuration.eventLoopThreads,
+                configuration.threadName);
+        this.reconnectCoordinator = new ReconnectCoordinator(transport.getEventLoopGroup());
+        this.udpDiscoveryListener = new UdpDiscoveryListener(transport, reconnectCoordinator);
         this.storage = storageService.getStorage("org.smarthomej.binding.tuya.Schema");
     }
 
     @Deactivate
     public void deactivate() {
         udpDiscoveryListener.deactivate();
-        eventLoopGroup.shutdownGracefully();
+        reconnectCoordinator.dispose();
+        transport.shutdown();
     }
 
     @Override
@@ -97,7 +107,10 @@ public class TuyaHandlerFactory extends BaseThingHandlerFactory {
             return new ProjectHandler(thing, httpClient, storage, gson);
         } else if (THING_TYPE_TUYA_DEVICE.equals(thingTypeUID)) {
             return new TuyaDeviceHandler(thing, gson.fromJson(storage.get(thing.getUID().getId()), STORAGE_TYPE), gson,
-                    dynamicCommandDescriptionProvider, eventLoopGroup, udpDiscoveryListener);
+                    dynamicCommandDescriptionProvider, transport, udpDiscoveryListener, reconnectCoordinator);
+        } else if (THING_TYPE_GATEWAY.equals(thingTypeUID)) {
+            return new TuyaGatewayHandler((Bridge) thing, gson, transport, udpDiscoveryListener,
+                    reconnectCoordinator);
         }
 
         return null;
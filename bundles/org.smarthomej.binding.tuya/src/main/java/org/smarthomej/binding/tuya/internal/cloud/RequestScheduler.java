@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.cloud;
+
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_MAXIMUM_QUEUED_REQUESTS;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_MAXIMUM_REQUESTS_IN_FLIGHT;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_REQUEST_BURST;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_REQUEST_MAXIMUM_RETRIES;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_REQUEST_RATE;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_REQUEST_RETRY_DELAY;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RequestScheduler} limits the requests to the cloud of a project
+ * <p>
+ * Requests are started if a token is available (token bucket with a sustained rate and a maximum burst) and the
+ * number of requests waiting for a response is below the limit. All other requests are queued. Requests that are
+ * rejected with a {@link ThrottlingException} are retried with exponential backoff, the bucket is emptied in that
+ * case so that the other requests also slow down.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class RequestScheduler {
+    private final Logger logger = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final double rate; // in tokens/ms
+    private final int burst;
+    private final int maximumInFlight;
+    private final long retryDelay;
+
+    private final Deque<Task<?>> queue = new ArrayDeque<>();
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private int inFlight = 0;
+    private @Nullable ScheduledFuture<?> dispatchFuture;
+
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong completedRequests = new AtomicLong();
+    private final AtomicLong completedRequestsLatency = new AtomicLong();
+
+    public RequestScheduler(ScheduledExecutorService scheduler) {
+        this(scheduler, CLOUD_REQUEST_RATE, CLOUD_REQUEST_BURST, CLOUD_MAXIMUM_REQUESTS_IN_FLIGHT,
+                CLOUD_REQUEST_RETRY_DELAY);
+    }
+
+    // package private to allow tests
+    RequestScheduler(ScheduledExecutorService scheduler, double rate, int burst, int maximumInFlight,
+            long retryDelay) {
+        this.scheduler = scheduler;
+        this.rate = rate / 1000;
+        this.burst = burst;
+        this.maximumInFlight = maximumInFlight;
+        this.retryDelay = retryDelay;
+        this.tokens = burst;
+    }
+
+    /**
+     * Submit a request
+     *
+     * @param request creates and sends the request, called for each attempt (so the request can be signed with the
+     *            current time)
+     * @return a future that is completed with the result of the (last) attempt
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        Task<T> task = new Task<>(request);
+        synchronized (this) {
+            if (queue.size() >= CLOUD_MAXIMUM_QUEUED_REQUESTS) {
+                logger.warn("Request queue is full, discarding request");
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Request queue is full"));
+            }
+            queue.add(task);
+        }
+        dispatch();
+        return task.future;
+    }
+
+    /**
+     * Cancel all queued requests
+     * <p>
+     * Requests that are already sent are not cancelled, the scheduler can be used again afterwards.
+     */
+    public void cancelAll() {
+        List<Task<?>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(queue);
+            queue.clear();
+            ScheduledFuture<?> dispatchFuture = this.dispatchFuture;
+            if (dispatchFuture != null) {
+                dispatchFuture.cancel(false);
+                this.dispatchFuture = null;
+            }
+        }
+        tasks.forEach(task -> task.future.completeExceptionally(new CancellationException("Request cancelled")));
+    }
+
+    /**
+     * Get the number of requests that are waiting to be sent
+     *
+     * @return the number of queued requests
+     */
+    public synchronized int getQueuedRequests() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of requests that were rejected by the cloud because of too many requests
+     *
+     * @return the number of throttled requests
+     */
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    /**
+     * Get the average latency (including the time in the queue and all retries) of the requests that completed since
+     * the last call and reset the average
+     *
+     * @return the average latency in ms or -1 if no request completed
+     */
+    public double getAndResetAverageLatency() {
+        long count = completedRequests.getAndSet(0);
+        long latency = completedRequestsLatency.getAndSet(0);
+        return count == 0 ? -1 : latency / 1e6 / count;
+    }
+
+    private void dispatch() {
+        List<Task<?>> tasks = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e6 * rate);
+            lastRefill = now;
+
+            while (!queue.isEmpty() && inFlight < maximumInFlight && tokens >= 1) {
+                tokens--;
+                inFlight++;
+                tasks.add(queue.remove());
+            }
+
+            if (!queue.isEmpty() && inFlight < maximumInFlight && dispatchFuture == null) {
+                // wait for the next token
+                long delay = (long) Math.ceil((1 - tokens) / rate);
+                dispatchFuture = scheduler.schedule(() -> {
+                    synchronized (this) {
+                        dispatchFuture = null;
+                    }
+                    dispatch();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        tasks.forEach(this::execute);
+    }
+
+    private <T> void execute(Task<T> task) {
+        CompletableFuture<T> result;
+        try {
+            result = task.request.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete((value, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            boolean retry = cause instanceof ThrottlingException && task.attempt < CLOUD_REQUEST_MAXIMUM_RETRIES;
+            synchronized (this) {
+                inFlight--;
+                if (cause instanceof ThrottlingException) {
+                    tokens = 0;
+                }
+            }
+
+            if (cause instanceof ThrottlingException) {
+                throttledRequests.incrementAndGet();
+            }
+            if (retry) {
+                long delay = retryDelay << task.attempt++;
+                logger.debug("Request was throttled, retrying in {} ms (attempt {})", delay, task.attempt);
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        queue.addFirst(task);
+                    }
+                    dispatch();
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                completedRequests.incrementAndGet();
+                completedRequestsLatency.addAndGet(System.nanoTime() - task.submitTime);
+                if (cause != null) {
+                    task.future.completeExceptionally(cause);
+                } else {
+                    task.future.complete(value);
+                }
+            }
+            dispatch();
+        });
+    }
+
+    private static class Task<T> {
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submitTime = System.nanoTime();
+        private int attempt = 0;
+
+        public Task(Supplier<CompletableFuture<T>> request) {
+            this.request = request;
+        }
+    }
+}
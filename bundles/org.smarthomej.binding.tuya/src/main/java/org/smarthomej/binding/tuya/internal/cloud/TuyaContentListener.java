@@ -68,6 +68,10 @@ public class TuyaContentListener extends BufferingResponseListener {
                         future.completeExceptionally(new ConnectionException("Content is null."));
                     }
                     break;
+                case HttpStatus.TOO_MANY_REQUESTS_429:
+                    logger.debug("Requesting '{}' (method='{}') was throttled", request.getURI(), request.getMethod());
+                    future.completeExceptionally(new ThrottlingException("Too many requests"));
+                    break;
                 default:
                     logger.debug("Requesting '{}' (method='{}', content='{}') failed: {} {}", request.getURI(),
                             request.getMethod(), request.getContent(), response.getStatus(), response.getReason());
@@ -15,6 +15,9 @@ package org.smarthomej.binding.tuya.internal.cloud;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -22,9 +25,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.client.HttpClient;
@@ -33,6 +40,7 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpMethod;
+import org.openhab.core.util.HexUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tuya.internal.cloud.dto.CommandRequest;
@@ -51,11 +59,15 @@ import com.google.gson.reflect.TypeToken;
 
 /**
  * The {@link TuyaOpenAPI} is an implementation of the Tuya OpenApi specification
+ * <p>
+ * All requests are sent through a {@link RequestScheduler}, which limits the request rate of the project.
  *
  * @author Jan N. Klug - Initial contribution
  */
 @NonNullByDefault
 public class TuyaOpenAPI {
+    private static final String EMPTY_BODY_HASH = CryptoUtil.sha256("");
+
     private final Logger logger = LoggerFactory.getLogger(TuyaOpenAPI.class);
     private final ScheduledExecutorService scheduler;
     private ProjectConfiguration config = new ProjectConfiguration();
@@ -67,12 +79,27 @@ public class TuyaOpenAPI {
     private Token token = new Token();
     private @Nullable ScheduledFuture<?> refreshTokenJob;
 
+    private final RequestScheduler requestScheduler;
+    // only used in synchronized methods
+    private @Nullable Mac mac;
+    private String macSecret = "";
+    private final @Nullable MessageDigest sha256;
+
     public TuyaOpenAPI(ApiStatusCallback callback, ScheduledExecutorService scheduler, Gson gson,
             HttpClient httpClient) {
         this.callback = callback;
         this.gson = gson;
         this.httpClient = httpClient;
         this.scheduler = scheduler;
+        this.requestScheduler = new RequestScheduler(scheduler);
+
+        MessageDigest sha256 = null;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("Algorithm SHA-256 not found. This should never happen. Check your Java setup.");
+        }
+        this.sha256 = sha256;
     }
 
     public void setConfiguration(ProjectConfiguration configuration) {
@@ -104,9 +131,14 @@ public class TuyaOpenAPI {
 
     public void disconnect() {
         stopRefreshTokenJob();
+        requestScheduler.cancelAll();
         token = new Token();
     }
 
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
     private void stopRefreshTokenJob() {
         ScheduledFuture<?> refreshTokenJob = this.refreshTokenJob;
         if (refreshTokenJob != null) {
@@ -145,7 +177,7 @@ public class TuyaOpenAPI {
 
     public CompletableFuture<List<FactoryInformation>> getFactoryInformation(List<String> deviceIds) {
         Map<String, String> params = Map.of("device_ids", String.join(",", deviceIds));
-        return request(HttpMethod.GET, "/v1.0/iot-03/devices/factory-infos", params, null).thenCompose(
+        return request(HttpMethod.GET, "/v1.0/iot-03/devices/factory-infos", params, null,
                 s -> processResponse(s, TypeToken.getParameterized(List.class, FactoryInformation.class).getType()));
     }
 
@@ -154,18 +186,18 @@ public class TuyaOpenAPI {
                 "from", "", //
                 "page_no", String.valueOf(page), //
                 "page_size", "100");
-        return request(HttpMethod.GET, "/v1.0/users/" + token.uid + "/devices", params, null).thenCompose(
+        return request(HttpMethod.GET, "/v1.0/users/" + token.uid + "/devices", params, null,
                 s -> processResponse(s, TypeToken.getParameterized(List.class, DeviceListInfo.class).getType()));
     }
 
     public CompletableFuture<DeviceSchema> getDeviceSchema(String deviceId) {
-        return request(HttpMethod.GET, "/v1.1/devices/" + deviceId + "/specifications", Map.of(), null)
-                .thenCompose(s -> processResponse(s, DeviceSchema.class));
+        return request(HttpMethod.GET, "/v1.1/devices/" + deviceId + "/specifications", Map.of(), null,
+                s -> processResponse(s, DeviceSchema.class));
     }
 
     public CompletableFuture<Boolean> sendCommand(String deviceId, CommandRequest command) {
-        return request(HttpMethod.POST, "/v1.0/iot-03/devices/" + deviceId + "/commands", Map.of(), command)
-                .thenCompose(s -> processResponse(s, Boolean.class));
+        return request(HttpMethod.POST, "/v1.0/iot-03/devices/" + deviceId + "/commands", Map.of(), command,
+                s -> processResponse(s, Boolean.class));
     }
 
     private <T> CompletableFuture<T> processResponse(String contentString, Type type) {
@@ -178,6 +210,9 @@ public class TuyaOpenAPI {
                 logger.warn("Server reported invalid token. This should never happen. Trying to re-login.");
                 callback.tuyaOpenApiStatus(false);
                 return CompletableFuture.failedFuture(new ConnectionException(resultResponse.msg));
+            } else if (resultResponse.code == 1110 || resultResponse.code == 1111) {
+                // concurrent request over limit / system is busy
+                return CompletableFuture.failedFuture(new ThrottlingException(resultResponse.msg));
             }
             return CompletableFuture.failedFuture(new IllegalStateException(resultResponse.msg));
         }
@@ -185,11 +220,37 @@ public class TuyaOpenAPI {
 
     private CompletableFuture<String> request(HttpMethod method, String path, Map<String, String> params,
             @Nullable Object body) {
+        return request(method, path, params, body, CompletableFuture::completedFuture);
+    }
+
+    /**
+     * Send a request through the {@link RequestScheduler}
+     *
+     * @param method the HTTP method
+     * @param path the path of the request
+     * @param params the query parameters
+     * @param body the body (serialized to JSON) or null
+     * @param responseProcessor processes the response content, this is part of the scheduled request, so
+     *            {@link ThrottlingException}s returned by the processor are retried
+     * @return the result of the response processor
+     */
+    private <T> CompletableFuture<T> request(HttpMethod method, String path, Map<String, String> params,
+            @Nullable Object body, Function<String, CompletableFuture<T>> responseProcessor) {
+        // url, body and body hash are the same for all attempts, only the signature needs to be re-calculated
+        String url = signUrl(path, params);
+        String bodyString = body != null ? gson.toJson(body) : null;
+        String bodyHash = bodyString != null ? sha256(bodyString) : EMPTY_BODY_HASH;
+        return requestScheduler
+                .submit(() -> send(method, path, url, bodyString, bodyHash).thenCompose(responseProcessor));
+    }
+
+    private CompletableFuture<String> send(HttpMethod method, String path, String url, @Nullable String bodyString,
+            String bodyHash) {
         CompletableFuture<String> future = new CompletableFuture<>();
         long now = System.currentTimeMillis();
 
-        String sign = signRequest(method, path, Map.of("client_id", config.accessId), List.of("client_id"), params,
-                body, null, now);
+        String sign = signRequest(method, path, Map.of("client_id", config.accessId), List.of("client_id"), url,
+                bodyHash, null, now);
         Map<String, String> headers = Map.of( //
                 "client_id", config.accessId, //
                 "t", Long.toString(now), //
@@ -198,12 +259,12 @@ public class TuyaOpenAPI {
                 "sign_method", "HMAC-SHA256", //
                 "access_token", this.token.accessToken);
 
-        String fullUrl = config.dataCenter + signUrl(path, params);
+        String fullUrl = config.dataCenter + url;
         Request request = httpClient.newRequest(URI.create(fullUrl));
         request.method(method);
         headers.forEach(request::header);
-        if (body != null) {
-            request.content(new StringContentProvider(gson.toJson(body)));
+        if (bodyString != null) {
+            request.content(new StringContentProvider(bodyString));
             request.header("Content-Type", "application/json");
         }
 
@@ -223,21 +284,56 @@ public class TuyaOpenAPI {
     // package private to allow tests
     String signRequest(HttpMethod method, String path, Map<String, String> headers, List<String> signHeaders,
             Map<String, String> params, @Nullable Object body, @Nullable String nonce, long now) {
-        String stringToSign = stringToSign(method, path, headers, signHeaders, params, body);
-        String tokenToUse = path.startsWith("/v1.0/token") ? "" : this.token.accessToken;
-        String fullStringToSign = this.config.accessId + tokenToUse + now + (nonce == null ? "" : nonce) + stringToSign;
-
-        return CryptoUtil.hmacSha256(fullStringToSign, config.accessSecret);
+        String bodyHash = body != null ? sha256(gson.toJson(body)) : EMPTY_BODY_HASH;
+        return signRequest(method, path, headers, signHeaders, signUrl(path, params), bodyHash, nonce, now);
     }
 
-    private String stringToSign(HttpMethod method, String path, Map<String, String> headers, List<String> signHeaders,
-            Map<String, String> params, @Nullable Object body) {
-        String bodyString = CryptoUtil.sha256(body != null ? gson.toJson(body) : "");
+    private String signRequest(HttpMethod method, String path, Map<String, String> headers, List<String> signHeaders,
+            String url, String bodyHash, @Nullable String nonce, long now) {
         String headerString = headers.entrySet().stream().filter(e -> signHeaders.contains(e.getKey()))
                 .sorted(Map.Entry.comparingByKey()).collect(JoiningMapCollector.joining(":", "\n"));
-        String urlString = signUrl(path, params);
         // add extra \n after header string -> TUYAs documentation is wrong
-        return method.asString() + "\n" + bodyString + "\n" + headerString + "\n\n" + urlString;
+        String stringToSign = method.asString() + "\n" + bodyHash + "\n" + headerString + "\n\n" + url;
+        String tokenToUse = path.startsWith("/v1.0/token") ? "" : this.token.accessToken;
+        String fullStringToSign = this.config.accessId + tokenToUse + now + (nonce == null ? "" : nonce) + stringToSign;
+
+        return hmacSha256(fullStringToSign);
+    }
+
+    /**
+     * Calculate the HMAC-SHA256 with the access secret, the {@link Mac} is re-used as long as the secret is unchanged
+     *
+     * @param data the data
+     * @return the HMAC as (upper case) hexadecimal String
+     */
+    private synchronized String hmacSha256(String data) {
+        try {
+            Mac mac = this.mac;
+            if (mac == null || !config.accessSecret.equals(macSecret)) {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(config.accessSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                this.mac = mac;
+                this.macSecret = config.accessSecret;
+            }
+            return HexUtils.bytesToHex(mac.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            logger.warn("Failed to sign request: {}", e.getMessage());
+        }
+        return "";
+    }
+
+    /**
+     * Calculate the SHA-256 hash, the {@link MessageDigest} is re-used
+     *
+     * @param data the data
+     * @return the hash as (lower case) hexadecimal String
+     */
+    private synchronized String sha256(String data) {
+        MessageDigest sha256 = this.sha256;
+        if (sha256 == null) {
+            return CryptoUtil.sha256(data);
+        }
+        return HexUtils.bytesToHex(sha256.digest(data.getBytes(StandardCharsets.UTF_8))).toLowerCase();
     }
 
     private String signUrl(String path, Map<String, String> params) {
@@ -24,9 +24,13 @@ public class DeviceConfiguration {
     public String productId = "";
     public String deviceId = "";
     public String localKey = "";
+    public String nodeId = "";
 
     public String ip = "";
     public String protocol = "";
 
     public int pollingInterval = 0;
+    public int commandCoalescingWindow = 0;
+    public boolean suppressUnchangedStates = false;
+    public int maximumSilence = 0;
 }
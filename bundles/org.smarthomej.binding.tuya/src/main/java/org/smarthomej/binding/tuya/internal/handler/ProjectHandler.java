@@ -12,6 +12,11 @@
  */
 package org.smarthomej.binding.tuya.internal.handler;
 
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_QUEUED_REQUESTS;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_REQUEST_LATENCY;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_THROTTLED_REQUESTS;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CLOUD_METRICS_INTERVAL;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -22,6 +27,10 @@ import java.util.concurrent.TimeUnit;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.client.HttpClient;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.MetricPrefix;
+import org.openhab.core.library.unit.Units;
 import org.openhab.core.storage.Storage;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
@@ -30,8 +39,11 @@ import org.openhab.core.thing.ThingStatusDetail;
 import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerService;
 import org.openhab.core.types.Command;
+import org.openhab.core.types.RefreshType;
+import org.openhab.core.types.State;
 import org.smarthomej.binding.tuya.internal.TuyaDiscoveryService;
 import org.smarthomej.binding.tuya.internal.cloud.ApiStatusCallback;
+import org.smarthomej.binding.tuya.internal.cloud.RequestScheduler;
 import org.smarthomej.binding.tuya.internal.cloud.TuyaOpenAPI;
 import org.smarthomej.binding.tuya.internal.cloud.dto.DeviceListInfo;
 import org.smarthomej.binding.tuya.internal.cloud.dto.DeviceSchema;
@@ -50,6 +62,9 @@ public class ProjectHandler extends BaseThingHandler implements ApiStatusCallbac
     private final Storage<String> storage;
 
     private @Nullable ScheduledFuture<?> apiConnectFuture;
+    private @Nullable ScheduledFuture<?> metricsFuture;
+    // the average latency of the last completed metrics interval
+    private volatile @Nullable State requestLatency;
 
     public ProjectHandler(Thing thing, HttpClient httpClient, Storage<String> storage, Gson gson) {
         super(thing);
@@ -59,6 +74,10 @@ public class ProjectHandler extends BaseThingHandler implements ApiStatusCallbac
 
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
+        if (command instanceof RefreshType) {
+            // don't reset the latency average, it would shorten the current metrics interval
+            publishMetrics();
+        }
     }
 
     @Override
@@ -75,6 +94,29 @@ public class ProjectHandler extends BaseThingHandler implements ApiStatusCallbac
 
         stopApiConnectFuture();
         apiConnectFuture = scheduler.schedule(api::login, 0, TimeUnit.SECONDS);
+
+        requestLatency = null;
+        stopMetricsFuture();
+        metricsFuture = scheduler.scheduleWithFixedDelay(this::updateMetrics, CLOUD_METRICS_INTERVAL,
+                CLOUD_METRICS_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private void updateMetrics() {
+        double latency = api.getRequestScheduler().getAndResetAverageLatency();
+        if (latency >= 0) {
+            requestLatency = new QuantityType<>(latency, MetricPrefix.MILLI(Units.SECOND));
+        }
+        publishMetrics();
+    }
+
+    private void publishMetrics() {
+        RequestScheduler requestScheduler = api.getRequestScheduler();
+        updateState(CHANNEL_QUEUED_REQUESTS, new DecimalType(requestScheduler.getQueuedRequests()));
+        updateState(CHANNEL_THROTTLED_REQUESTS, new DecimalType(requestScheduler.getThrottledRequests()));
+        State requestLatency = this.requestLatency;
+        if (requestLatency != null) {
+            updateState(CHANNEL_REQUEST_LATENCY, requestLatency);
+        }
     }
 
     @Override
@@ -119,9 +161,18 @@ public class ProjectHandler extends BaseThingHandler implements ApiStatusCallbac
         }
     }
 
+    private void stopMetricsFuture() {
+        ScheduledFuture<?> metricsFuture = this.metricsFuture;
+        if (metricsFuture != null) {
+            metricsFuture.cancel(true);
+            this.metricsFuture = null;
+        }
+    }
+
     @Override
     public void dispose() {
         stopApiConnectFuture();
+        stopMetricsFuture();
         api.disconnect();
     }
 
@@ -18,7 +18,11 @@ import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_NUMBER;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_STRING;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_SWITCH;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.PROPERTY_COALESCED_FRAMES;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.PROPERTY_PUBLISHED_STATES;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.PROPERTY_SUPPRESSED_STATES;
 import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.SCHEMAS;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.TCP_PORT;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -28,8 +32,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -42,11 +50,13 @@ import org.openhab.core.library.types.HSBType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Channel;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
 import org.openhab.core.thing.ThingUID;
 import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerCallback;
@@ -63,6 +73,9 @@ import org.smarthomej.binding.tuya.internal.config.ChannelConfiguration;
 import org.smarthomej.binding.tuya.internal.config.DeviceConfiguration;
 import org.smarthomej.binding.tuya.internal.local.DeviceInfoSubscriber;
 import org.smarthomej.binding.tuya.internal.local.DeviceStatusListener;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
+import org.smarthomej.binding.tuya.internal.local.NettyTransport;
+import org.smarthomej.binding.tuya.internal.local.ReconnectCoordinator;
 import org.smarthomej.binding.tuya.internal.local.TuyaDevice;
 import org.smarthomej.binding.tuya.internal.local.UdpDiscoveryListener;
 import org.smarthomej.binding.tuya.internal.local.dto.DeviceInfo;
@@ -75,8 +88,6 @@ import org.smarthomej.commons.SimpleDynamicCommandDescriptionProvider;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
-import io.netty.channel.EventLoopGroup;
-
 /**
  * The {@link TuyaDeviceHandler} handles commands and state updates
  *
@@ -87,20 +98,27 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
     private static final List<String> COLOUR_CHANNEL_CODES = List.of("colour_data");
     private static final List<String> DIMMER_CHANNEL_CODES = List.of("bright_value", "bright_value_1", "bright_value_2",
             "temp_value");
+    private static final int STATISTICS_INTERVAL = 60; // in s
 
     private final Logger logger = LoggerFactory.getLogger(TuyaDeviceHandler.class);
 
     private final Gson gson;
     private final UdpDiscoveryListener udpDiscoveryListener;
+    private final ReconnectCoordinator reconnectCoordinator;
     private final SimpleDynamicCommandDescriptionProvider dynamicCommandDescriptionProvider;
-    private final EventLoopGroup eventLoopGroup;
+    private final NettyTransport transport;
     private DeviceConfiguration configuration = new DeviceConfiguration();
     private @Nullable TuyaDevice tuyaDevice;
+    // set if this is a sub-device of a gateway, the gateway's connection is used instead of an own connection
+    private @Nullable TuyaGatewayHandler gateway;
     private final List<SchemaDp> schemaDps;
     private boolean oldColorMode = false;
 
-    private @Nullable ScheduledFuture<?> reconnectFuture;
+    private String deviceAddress = "";
+    // set when a connection is started, cleared when the first status message on that connection was received
+    private final AtomicBoolean connectPending = new AtomicBoolean(false);
     private @Nullable ScheduledFuture<?> pollingJob;
+    private @Nullable ScheduledFuture<?> statisticsJob;
     private @Nullable ScheduledFuture<?> irLearnJob;
     private boolean disposing = false;
 
@@ -108,18 +126,75 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
     private final Map<Integer, List<String>> dp2ToChannelId = new HashMap<>();
     private final Map<String, ChannelTypeUID> channelIdToChannelTypeUID = new HashMap<>();
     private final Map<String, ChannelConfiguration> channelIdToConfiguration = new HashMap<>();
+    // compiled from the maps above in initialize(), indexed by DP
+    private volatile DpHandler[] dpHandlers = new DpHandler[0];
+
+    // updates the cache before the values of a status are dispatched, see processDeviceStatus(DpStatus)
+    private final DpStatus.DpConsumer statusCacheUpdater = new DpStatus.DpConsumer() {
+        @Override
+        public void booleanValue(int dp, boolean value) {
+            addSingleExpiringCache(dp, value);
+        }
 
+        @Override
+        public void numberValue(int dp, double value) {
+        }
+
+        @Override
+        public void objectValue(int dp, Object value) {
+        }
+
+        @Override
+        public void nullValue(int dp) {
+        }
+    };
+    // dispatches the values of a status into the DP handler table, booleans and numbers are not boxed
+    private final DpStatus.DpConsumer dpDispatcher = new DpStatus.DpConsumer() {
+        @Override
+        public void booleanValue(int dp, boolean value) {
+            DpHandler dpHandler = getDpHandler(dp);
+            if (dpHandler != null) {
+                dpHandler.processBoolean(value);
+            }
+        }
+
+        @Override
+        public void numberValue(int dp, double value) {
+            DpHandler dpHandler = getDpHandler(dp);
+            if (dpHandler != null) {
+                dpHandler.processNumber(value);
+            }
+        }
+
+        @Override
+        public void objectValue(int dp, Object value) {
+            processChannelStatus(dp, value);
+        }
+
+        @Override
+        public void nullValue(int dp) {
+            // a DP without value carries no state, the channel keeps its last state
+            logger.trace("Ignoring dp '{}' without value in thing '{}'", dp, thing.getUID());
+        }
+    };
     private final ExpiringCacheMap<Integer, @Nullable Object> deviceStatusCache = new ExpiringCacheMap<>(
             Duration.ofSeconds(10));
-    private final Map<String, State> channelStateCache = new HashMap<>();
+    // updated from the Netty event loop, read when handling commands
+    private final Map<String, State> channelStateCache = new ConcurrentHashMap<>();
+    private final Map<String, Long> channelPublishTimes = new ConcurrentHashMap<>();
+    // channels that received a command, the next state is published even if it is unchanged
+    private final Set<String> channelsToPublish = ConcurrentHashMap.newKeySet();
+    private final AtomicLong publishedStates = new AtomicLong();
+    private final AtomicLong suppressedStates = new AtomicLong();
 
     public TuyaDeviceHandler(Thing thing, @Nullable List<SchemaDp> schemaDps, Gson gson,
-            SimpleDynamicCommandDescriptionProvider dynamicCommandDescriptionProvider, EventLoopGroup eventLoopGroup,
-            UdpDiscoveryListener udpDiscoveryListener) {
+            SimpleDynamicCommandDescriptionProvider dynamicCommandDescriptionProvider, NettyTransport transport,
+            UdpDiscoveryListener udpDiscoveryListener, ReconnectCoordinator reconnectCoordinator) {
         super(thing);
         this.gson = gson;
         this.udpDiscoveryListener = udpDiscoveryListener;
-        this.eventLoopGroup = eventLoopGroup;
+        this.reconnectCoordinator = reconnectCoordinator;
+        this.transport = transport;
         this.dynamicCommandDescriptionProvider = dynamicCommandDescriptionProvider;
         this.schemaDps = Objects.requireNonNullElse(schemaDps, List.of());
     }
@@ -127,93 +202,214 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
     @Override
     public void processDeviceStatus(Map<Integer, Object> deviceStatus) {
         logger.trace("'{}' received status message '{}'", thing.getUID(), deviceStatus);
+        if (statusReceived(deviceStatus.isEmpty())) {
+            deviceStatus.forEach(this::addSingleExpiringCache);
+            deviceStatus.forEach(this::processChannelStatus);
+        }
+    }
+
+    @Override
+    public void processDeviceStatus(DpStatus deviceStatus) {
+        logger.trace("'{}' received status message '{}'", thing.getUID(), deviceStatus);
+        if (statusReceived(deviceStatus.isEmpty())) {
+            // the cache is only used for the state of dp2 switches, so only booleans are needed
+            deviceStatus.forEach(statusCacheUpdater);
+            deviceStatus.forEach(dpDispatcher);
+        }
+    }
+
+    /**
+     * Complete a pending connection and request the status if the device sent an empty status
+     *
+     * @param empty if the received status is empty
+     * @return <code>true</code> if the values of the status need to be processed
+     */
+    private boolean statusReceived(boolean empty) {
+        if (gateway == null && connectPending.compareAndSet(true, false)) {
+            // the device answered, so the connection (including a session key negotiation) is complete
+            reconnectCoordinator.connectFinished(configuration.deviceId, true);
+        }
 
-        if (deviceStatus.isEmpty()) {
+        if (empty) {
             // if status is empty -> need to use control method to request device status
             Map<Integer, @Nullable Object> commandRequest = new HashMap<>();
             dpToChannelId.keySet().forEach(dp -> commandRequest.put(dp, null));
             dp2ToChannelId.keySet().forEach(dp -> commandRequest.put(dp, null));
 
-            TuyaDevice tuyaDevice = this.tuyaDevice;
-            if (tuyaDevice != null) {
-                tuyaDevice.set(commandRequest);
-            }
-            return;
+            sendCommand(commandRequest);
+            return false;
+        }
+        return true;
+    }
+
+    private void processChannelStatus(int dp, Object value) {
+        DpHandler dpHandler = getDpHandler(dp);
+        if (dpHandler != null) {
+            dpHandler.process(value);
         }
+    }
 
-        deviceStatus.forEach(this::addSingleExpiringCache);
-        deviceStatus.forEach(this::processChannelStatus);
+    private @Nullable DpHandler getDpHandler(int dp) {
+        DpHandler[] dpHandlers = this.dpHandlers;
+        DpHandler dpHandler = (dp >= 0 && dp < dpHandlers.length) ? dpHandlers[dp] : null;
+        if (dpHandler == null) {
+            logger.debug("Could not find channel for dp '{}' in thing '{}'", dp, thing.getUID());
+        }
+        return dpHandler;
     }
 
-    private void processChannelStatus(Integer dp, Object value) {
-        String channelId = dpToChannelId.get(dp);
-        if (channelId != null) {
+    /**
+     * Compile the channel configuration into a table of handlers indexed by DP
+     */
+    private void buildDpHandlers() {
+        int maxDp = Math.max(dpToChannelId.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1),
+                dp2ToChannelId.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1));
+        DpHandler[] dpHandlers = new DpHandler[maxDp + 1];
+
+        dpToChannelId.forEach((dp, channelId) -> {
             ChannelConfiguration channelConfiguration = channelIdToConfiguration.get(channelId);
             ChannelTypeUID channelTypeUID = channelIdToChannelTypeUID.get(channelId);
-
-            if (channelConfiguration == null || channelTypeUID == null) {
+            if (dp < 0) {
+                logger.warn("Invalid dp '{}' for channel '{}' in thing '{}'", dp, channelId, thing.getUID());
+            } else if (channelConfiguration == null || channelTypeUID == null) {
                 logger.warn("Could not find configuration or type for channel '{}' in thing '{}'", channelId,
                         thing.getUID());
-                return;
+            } else {
+                dpHandlers[dp] = createDpHandler(channelId, channelConfiguration, channelTypeUID);
             }
-
-            if (Boolean.FALSE.equals(deviceStatusCache.get(channelConfiguration.dp2))) {
-                // skip update if the channel is off!
-                return;
+        });
+
+        // additional channelDps, only OnOffType, used if there is no channel for the DP
+        dp2ToChannelId.forEach((dp, channelIds) -> {
+            if (dp >= 0 && dpHandlers[dp] == null) {
+                dpHandlers[dp] = value -> {
+                    if (value instanceof Boolean b) {
+                        OnOffType state = OnOffType.from(b);
+                        channelIds.forEach(ch -> updateState(ch, state));
+                    } else {
+                        logger.warn("Could not update channel '{}' of thing '{}' with value {}. Datatype incompatible.",
+                                channelIds, getThing().getUID(), value);
+                    }
+                };
             }
+        });
 
-            try {
-                if (value instanceof String && CHANNEL_TYPE_UID_COLOR.equals(channelTypeUID)) {
-                    oldColorMode = ((String) value).length() == 14;
-                    updateState(channelId, ConversionUtil.hexColorDecode((String) value));
-                    return;
-                } else if (value instanceof String && CHANNEL_TYPE_UID_STRING.equals(channelTypeUID)) {
-                    updateState(channelId, new StringType((String) value));
-                    return;
-                } else if (Double.class.isAssignableFrom(value.getClass())
-                        && CHANNEL_TYPE_UID_DIMMER.equals(channelTypeUID)) {
-                    updateState(channelId,
-                            ConversionUtil.brightnessDecode((double) value, 0, channelConfiguration.max));
-                    return;
-                } else if (Double.class.isAssignableFrom(value.getClass())
-                        && CHANNEL_TYPE_UID_NUMBER.equals(channelTypeUID)) {
-                    updateState(channelId, new DecimalType((double) value));
-                    return;
-                } else if (value instanceof String string && CHANNEL_TYPE_UID_NUMBER.equals(channelTypeUID)) {
-                    updateState(channelId, new DecimalType(string));
-                } else if (Boolean.class.isAssignableFrom(value.getClass())
-                        && CHANNEL_TYPE_UID_SWITCH.equals(channelTypeUID)) {
-                    updateState(channelId, OnOffType.from((boolean) value));
-                    return;
-                } else if (value instanceof String && CHANNEL_TYPE_UID_IR_CODE.equals(channelTypeUID)) {
-                    if (channelConfiguration.dp == 2) {
-                        String decoded = convertBase64Code(channelConfiguration, (String) value);
-                        logger.info("thing {} received ir code: {}", thing.getUID(), decoded);
-                        updateState(channelId, new StringType(decoded));
-                        irStartLearning(channelConfiguration.activeListen);
+        this.dpHandlers = dpHandlers;
+    }
+
+    private DpHandler createDpHandler(String channelId, ChannelConfiguration channelConfiguration,
+            ChannelTypeUID channelTypeUID) {
+        if (CHANNEL_TYPE_UID_IR_CODE.equals(channelTypeUID)) {
+            return value -> {
+                if (!(value instanceof String string)) {
+                    setIncompatible(channelId, value);
+                } else if (channelConfiguration.dp == 2) {
+                    String decoded = convertBase64Code(channelConfiguration, string);
+                    logger.info("thing {} received ir code: {}", thing.getUID(), decoded);
+                    updateState(channelId, new StringType(decoded));
+                    irStartLearning(channelConfiguration.activeListen);
+                }
+            };
+        }
+
+        StateDecoder decoder;
+        if (CHANNEL_TYPE_UID_COLOR.equals(channelTypeUID)) {
+            decoder = value -> {
+                if (value instanceof String string) {
+                    oldColorMode = string.length() == 14;
+                    return ConversionUtil.hexColorDecode(string);
+                }
+                return null;
+            };
+        } else if (CHANNEL_TYPE_UID_STRING.equals(channelTypeUID)) {
+            decoder = value -> value instanceof String string ? new StringType(string) : null;
+        } else if (CHANNEL_TYPE_UID_DIMMER.equals(channelTypeUID)) {
+            decoder = new StateDecoder() {
+                @Override
+                public @Nullable State decode(Object value) {
+                    return value instanceof Double d ? decodeNumber(d) : null;
+                }
+
+                @Override
+                public State decodeNumber(double value) {
+                    return ConversionUtil.brightnessDecode(value, 0, channelConfiguration.max);
+                }
+            };
+        } else if (CHANNEL_TYPE_UID_NUMBER.equals(channelTypeUID)) {
+            decoder = new StateDecoder() {
+                @Override
+                public @Nullable State decode(Object value) {
+                    if (value instanceof Double d) {
+                        return decodeNumber(d);
+                    } else if (value instanceof String string) {
+                        return new DecimalType(string);
                     }
+                    return null;
+                }
+
+                @Override
+                public State decodeNumber(double value) {
+                    return new DecimalType(value);
+                }
+            };
+        } else if (CHANNEL_TYPE_UID_SWITCH.equals(channelTypeUID)) {
+            decoder = value -> value instanceof Boolean b ? OnOffType.from(b) : null;
+        } else {
+            decoder = value -> null;
+        }
+
+        int dp2 = channelConfiguration.dp2;
+        return new DpHandler() {
+            @Override
+            public void process(Object value) {
+                if (isSwitchedOff(dp2)) {
                     return;
                 }
-            } catch (IllegalArgumentException ignored) {
+                State state = null;
+                try {
+                    state = decoder.decode(value);
+                } catch (IllegalArgumentException ignored) {
+                }
+                if (state != null) {
+                    updateState(channelId, state);
+                } else {
+                    setIncompatible(channelId, value);
+                }
             }
-            logger.warn("Could not update channel '{}' of thing '{}' with value '{}'. Datatype incompatible.",
-                    channelId, getThing().getUID(), value);
-            updateState(channelId, UnDefType.UNDEF);
-        } else {
-            // try additional channelDps, only OnOffType
-            List<String> channelIds = dp2ToChannelId.get(dp);
-            if (channelIds == null) {
-                logger.debug("Could not find channel for dp '{}' in thing '{}'", dp, thing.getUID());
-            } else {
-                if (Boolean.class.isAssignableFrom(value.getClass())) {
-                    OnOffType state = OnOffType.from((boolean) value);
-                    channelIds.forEach(ch -> updateState(ch, state));
+
+            @Override
+            public void processNumber(double value) {
+                if (isSwitchedOff(dp2)) {
                     return;
                 }
-                logger.warn("Could not update channel '{}' of thing '{}' with value {}. Datatype incompatible.",
-                        channelIds, getThing().getUID(), value);
+                State state = null;
+                try {
+                    state = decoder.decodeNumber(value);
+                } catch (IllegalArgumentException ignored) {
+                }
+                if (state != null) {
+                    updateState(channelId, state);
+                } else {
+                    setIncompatible(channelId, value);
+                }
             }
-        }
+        };
+    }
+
+    /**
+     * Check if the switch DP of a channel (e.g. for brightness or color) reported off
+     *
+     * @param dp2 the switch DP, 0 if the channel has none
+     * @return <code>true</code> if updates of the channel need to be skipped
+     */
+    private boolean isSwitchedOff(int dp2) {
+        return dp2 != 0 && Boolean.FALSE.equals(deviceStatusCache.get(dp2));
+    }
+
+    private void setIncompatible(String channelId, Object value) {
+        logger.warn("Could not update channel '{}' of thing '{}' with value '{}'. Datatype incompatible.", channelId,
+                getThing().getUID(), value);
+        updateState(channelId, UnDefType.UNDEF);
     }
 
     @Override
@@ -221,10 +417,16 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
         if (status) {
             updateStatus(ThingStatus.ONLINE);
             int pollingInterval = configuration.pollingInterval;
-            TuyaDevice tuyaDevice = this.tuyaDevice;
-            if (tuyaDevice != null && pollingInterval > 0) {
-                pollingJob = scheduler.scheduleWithFixedDelay(tuyaDevice::refreshStatus, pollingInterval,
-                        pollingInterval, TimeUnit.SECONDS);
+            TuyaGatewayHandler gateway = this.gateway;
+            // directly connected devices are polled on the event loop of their connection (see TuyaDevice)
+            if (gateway != null) {
+                // the gateway does not report the status of its sub-devices on connect
+                gateway.requestStatus(configuration.nodeId);
+                if (pollingInterval > 0) {
+                    pollingJob = scheduler.scheduleWithFixedDelay(
+                            () -> gateway.requestStatus(configuration.nodeId), pollingInterval, pollingInterval,
+                            TimeUnit.SECONDS);
+                }
             }
 
             // start learning code if thing is online and presents 'ir-code' channel
@@ -232,18 +434,24 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
                     .map(Map.Entry::getKey).findAny().map(channelIdToConfiguration::get)
                     .ifPresent(irCodeChannelConfig -> irStartLearning(irCodeChannelConfig.activeListen));
         } else {
-            updateStatus(ThingStatus.OFFLINE);
             ScheduledFuture<?> pollingJob = this.pollingJob;
             if (pollingJob != null) {
                 pollingJob.cancel(true);
                 this.pollingJob = null;
             }
-            TuyaDevice tuyaDevice = this.tuyaDevice;
-            ScheduledFuture<?> reconnectFuture = this.reconnectFuture;
-            // only re-connect if a device is present, we are not disposing the thing and either the reconnectFuture is
-            // empty or already done
-            if (tuyaDevice != null && !disposing && (reconnectFuture == null || reconnectFuture.isDone())) {
-                this.reconnectFuture = scheduler.schedule(this::connectDevice, 5000, TimeUnit.MILLISECONDS);
+            if (gateway != null) {
+                // the gateway takes care of re-connecting
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+            } else {
+                updateStatus(ThingStatus.OFFLINE);
+                TuyaDevice tuyaDevice = this.tuyaDevice;
+                connectPending.set(false);
+                reconnectCoordinator.connectFinished(configuration.deviceId, false);
+                // only re-connect if a device is present and we are not disposing the thing
+                if (tuyaDevice != null && !disposing) {
+                    reconnectCoordinator.scheduleReconnect(configuration.deviceId, deviceAddress,
+                            this::connectDevice);
+                }
             }
             if (channelIdToChannelTypeUID.containsValue(CHANNEL_TYPE_UID_IR_CODE)) {
                 irStopLearning();
@@ -251,6 +459,13 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
         }
     }
 
+    @Override
+    public void bridgeStatusChanged(ThingStatusInfo bridgeStatusInfo) {
+        if (gateway != null) {
+            connectionStatus(bridgeStatusInfo.getStatus() == ThingStatus.ONLINE);
+        }
+    }
+
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
         if (getThing().getStatus() != ThingStatus.ONLINE) {
@@ -368,9 +583,10 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
             }
         }
 
-        TuyaDevice tuyaDevice = this.tuyaDevice;
-        if (!commandRequest.isEmpty() && tuyaDevice != null) {
-            tuyaDevice.set(commandRequest);
+        if (!commandRequest.isEmpty()) {
+            // the item may have been auto-updated, so the device's answer must be published even if it is unchanged
+            channelsToPublish.add(channelUID.getId());
+            sendCommand(commandRequest);
         }
 
         if (CHANNEL_TYPE_UID_IR_CODE.equals(channelTypeUID)) {
@@ -383,18 +599,20 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
     @Override
     public void dispose() {
         disposing = true;
-        ScheduledFuture<?> future = reconnectFuture;
-        if (future != null) {
-            future.cancel(true);
-        }
-        future = this.pollingJob;
+        reconnectCoordinator.cancel(configuration.deviceId);
+        ScheduledFuture<?> future = this.pollingJob;
         if (future != null) {
             future.cancel(true);
         }
-        if (configuration.ip.isEmpty()) {
+        TuyaGatewayHandler gateway = this.gateway;
+        if (gateway != null) {
+            gateway.unregisterSubDevice(configuration.nodeId, this);
+            this.gateway = null;
+        } else if (configuration.ip.isEmpty()) {
             // unregister listener only if IP is not fixed
             udpDiscoveryListener.unregisterListener(this);
         }
+        stopStatisticsJob();
         TuyaDevice tuyaDevice = this.tuyaDevice;
         if (tuyaDevice != null) {
             tuyaDevice.dispose();
@@ -410,6 +628,12 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
         dp2ToChannelId.clear();
         channelIdToChannelTypeUID.clear();
         channelIdToConfiguration.clear();
+        dpHandlers = new DpHandler[0];
+        channelStateCache.clear();
+        channelPublishTimes.clear();
+        channelsToPublish.clear();
+        publishedStates.set(0);
+        suppressedStates.set(0);
 
         configuration = getConfigAs(DeviceConfiguration.class);
 
@@ -432,6 +656,33 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
         }
 
         thing.getChannels().forEach(this::configureChannel);
+        buildDpHandlers();
+
+        stopStatisticsJob();
+        if (configuration.commandCoalescingWindow > 0 || configuration.suppressUnchangedStates) {
+            statisticsJob = scheduler.scheduleWithFixedDelay(this::updateStatistics, STATISTICS_INTERVAL,
+                    STATISTICS_INTERVAL, TimeUnit.SECONDS);
+        }
+
+        disposing = false;
+
+        Bridge bridge = getBridge();
+        if (bridge != null) {
+            // sub-device of a gateway, use the connection of the gateway
+            if (!(bridge.getHandler() instanceof TuyaGatewayHandler gateway)) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_UNINITIALIZED);
+                return;
+            }
+            if (configuration.nodeId.isBlank()) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                        "Node ID is required for sub-devices of a gateway.");
+                return;
+            }
+            this.gateway = gateway;
+            gateway.registerSubDevice(configuration.nodeId, this);
+            connectionStatus(bridge.getStatus() == ThingStatus.ONLINE);
+            return;
+        }
 
         if (!configuration.ip.isBlank()) {
             deviceInfoChanged(new DeviceInfo(configuration.ip, configuration.protocol));
@@ -439,8 +690,28 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING, "Waiting for IP address");
             udpDiscoveryListener.registerListener(configuration.deviceId, this);
         }
+    }
 
-        disposing = false;
+    /**
+     * Publish the statistics of the device as thing properties
+     */
+    private void updateStatistics() {
+        if (configuration.suppressUnchangedStates) {
+            updateProperty(PROPERTY_PUBLISHED_STATES, String.valueOf(publishedStates.get()));
+            updateProperty(PROPERTY_SUPPRESSED_STATES, String.valueOf(suppressedStates.get()));
+        }
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (configuration.commandCoalescingWindow > 0 && tuyaDevice != null) {
+            updateProperty(PROPERTY_COALESCED_FRAMES, String.valueOf(tuyaDevice.getCoalescedFrames()));
+        }
+    }
+
+    private void stopStatisticsJob() {
+        ScheduledFuture<?> statisticsJob = this.statisticsJob;
+        if (statisticsJob != null) {
+            statisticsJob.cancel(true);
+            this.statisticsJob = null;
+        }
     }
 
     @Override
@@ -452,9 +723,14 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
             tuyaDevice.dispose();
         }
         updateStatus(ThingStatus.UNKNOWN);
-
-        this.tuyaDevice = new TuyaDevice(gson, this, eventLoopGroup, configuration.deviceId,
-                configuration.localKey.getBytes(StandardCharsets.UTF_8), deviceInfo.ip, deviceInfo.protocolVersion);
+        // the new device connects immediately, so a pending re-connect is no longer needed
+        reconnectCoordinator.cancel(configuration.deviceId);
+        deviceAddress = deviceInfo.ip;
+
+        connectPending.set(true);
+        this.tuyaDevice = new TuyaDevice(gson, this, transport, configuration.deviceId,
+                configuration.localKey.getBytes(StandardCharsets.UTF_8), deviceInfo.ip, deviceInfo.protocolVersion,
+                configuration.commandCoalescingWindow, configuration.pollingInterval, TCP_PORT);
     }
 
     private void addChannels(Map<String, SchemaDp> schema) {
@@ -566,14 +842,23 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
         }
     }
 
+    private void sendCommand(Map<Integer, @Nullable Object> command) {
+        TuyaGatewayHandler gateway = this.gateway;
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (gateway != null) {
+            gateway.set(configuration.nodeId, command);
+        } else if (tuyaDevice != null) {
+            tuyaDevice.set(command);
+        }
+    }
+
     private void connectDevice() {
         TuyaDevice tuyaDevice = this.tuyaDevice;
         if (tuyaDevice == null) {
             logger.warn("Cannot connect {} because the device is not set.", thing.getUID());
             return;
         }
-        // clear the future here because timing issues can prevent the next attempt if we fail again
-        reconnectFuture = null;
+        connectPending.set(true);
         tuyaDevice.connect();
     }
 
@@ -589,7 +874,20 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
 
     @Override
     protected void updateState(String channelId, State state) {
-        channelStateCache.put(channelId, state);
+        long now = System.nanoTime();
+        State oldState = channelStateCache.put(channelId, state);
+        boolean forcePublish = channelsToPublish.remove(channelId);
+        if (configuration.suppressUnchangedStates && !forcePublish && state.equals(oldState)) {
+            Long lastPublished = channelPublishTimes.get(channelId);
+            int maximumSilence = configuration.maximumSilence;
+            if (maximumSilence <= 0 || (lastPublished != null
+                    && now - lastPublished < TimeUnit.SECONDS.toNanos(maximumSilence))) {
+                suppressedStates.incrementAndGet();
+                return;
+            }
+        }
+        channelPublishTimes.put(channelId, now);
+        publishedStates.incrementAndGet();
         super.updateState(channelId, state);
     }
 
@@ -633,10 +931,7 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
     private void repeatStudyCode() {
         Map<Integer, @Nullable Object> commandRequest = new HashMap<>();
         commandRequest.put(1, "study");
-        TuyaDevice tuyaDevice = this.tuyaDevice;
-        if (tuyaDevice != null) {
-            tuyaDevice.set(commandRequest);
-        }
+        sendCommand(commandRequest);
     }
 
     private void irStopLearning() {
@@ -655,4 +950,27 @@ public class TuyaDeviceHandler extends BaseThingHandler implements DeviceInfoSub
             irLearnJob = scheduler.scheduleWithFixedDelay(this::repeatStudyCode, 200, 29000, TimeUnit.MILLISECONDS);
         }
     }
+
+    @FunctionalInterface
+    private interface DpHandler {
+        void process(Object value);
+
+        default void processBoolean(boolean value) {
+            process(value);
+        }
+
+        default void processNumber(double value) {
+            process(value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StateDecoder {
+        @Nullable
+        State decode(Object value);
+
+        default @Nullable State decodeNumber(double value) {
+            return decode(value);
+        }
+    }
 }
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.handler;
+
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.TCP_PORT;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.binding.BaseBridgeHandler;
+import org.openhab.core.types.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tuya.internal.config.GatewayConfiguration;
+import org.smarthomej.binding.tuya.internal.local.DeviceInfoSubscriber;
+import org.smarthomej.binding.tuya.internal.local.DeviceStatusListener;
+import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
+import org.smarthomej.binding.tuya.internal.local.NettyTransport;
+import org.smarthomej.binding.tuya.internal.local.ReconnectCoordinator;
+import org.smarthomej.binding.tuya.internal.local.TuyaDevice;
+import org.smarthomej.binding.tuya.internal.local.UdpDiscoveryListener;
+import org.smarthomej.binding.tuya.internal.local.dto.DeviceInfo;
+
+import com.google.gson.Gson;
+
+/**
+ * The {@link TuyaGatewayHandler} handles the connection to a gateway
+ * <p>
+ * All sub-devices (e.g. Zigbee devices) share a single connection (and heartbeat) to the gateway. Status messages are
+ * routed to the sub-device handlers by their node id (cid), commands of the sub-devices carry their node id.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TuyaGatewayHandler extends BaseBridgeHandler implements DeviceInfoSubscriber, DeviceStatusListener {
+    private final Logger logger = LoggerFactory.getLogger(TuyaGatewayHandler.class);
+
+    private final Gson gson;
+    private final NettyTransport transport;
+    private final UdpDiscoveryListener udpDiscoveryListener;
+    private final ReconnectCoordinator reconnectCoordinator;
+    private GatewayConfiguration configuration = new GatewayConfiguration();
+    private @Nullable TuyaDevice tuyaDevice;
+
+    private String deviceAddress = "";
+    // set when a connection is started, cleared when the first status message on that connection was received
+    private final AtomicBoolean connectPending = new AtomicBoolean(false);
+    private boolean disposing = false;
+
+    // registered from the handler threads, read on the Netty event loop
+    private final Map<String, TuyaDeviceHandler> subDevices = new ConcurrentHashMap<>();
+
+    public TuyaGatewayHandler(Bridge bridge, Gson gson, NettyTransport transport,
+            UdpDiscoveryListener udpDiscoveryListener, ReconnectCoordinator reconnectCoordinator) {
+        super(bridge);
+        this.gson = gson;
+        this.transport = transport;
+        this.udpDiscoveryListener = udpDiscoveryListener;
+        this.reconnectCoordinator = reconnectCoordinator;
+    }
+
+    @Override
+    public void initialize() {
+        configuration = getConfigAs(GatewayConfiguration.class);
+
+        if (!configuration.ip.isBlank()) {
+            deviceInfoChanged(new DeviceInfo(configuration.ip, configuration.protocol));
+        } else {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING, "Waiting for IP address");
+            udpDiscoveryListener.registerListener(configuration.deviceId, this);
+        }
+
+        disposing = false;
+    }
+
+    @Override
+    public void dispose() {
+        disposing = true;
+        reconnectCoordinator.cancel(configuration.deviceId);
+        if (configuration.ip.isEmpty()) {
+            // unregister listener only if IP is not fixed
+            udpDiscoveryListener.unregisterListener(this);
+        }
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (tuyaDevice != null) {
+            tuyaDevice.dispose();
+            this.tuyaDevice = null;
+        }
+    }
+
+    @Override
+    public void handleCommand(ChannelUID channelUID, Command command) {
+        // the gateway has no channels
+    }
+
+    @Override
+    public void deviceInfoChanged(DeviceInfo deviceInfo) {
+        logger.info("Configuring IP address '{}' for thing '{}'.", deviceInfo, thing.getUID());
+
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (tuyaDevice != null) {
+            tuyaDevice.dispose();
+        }
+        updateStatus(ThingStatus.UNKNOWN);
+        // the new device connects immediately, so a pending re-connect is no longer needed
+        reconnectCoordinator.cancel(configuration.deviceId);
+        deviceAddress = deviceInfo.ip;
+
+        connectPending.set(true);
+        this.tuyaDevice = new TuyaDevice(gson, this, transport, configuration.deviceId,
+                configuration.localKey.getBytes(StandardCharsets.UTF_8), deviceInfo.ip, deviceInfo.protocolVersion, 0,
+                0, TCP_PORT);
+    }
+
+    @Override
+    public void processDeviceStatus(Map<Integer, Object> deviceStatus) {
+        connectFinished();
+        logger.trace("'{}' received status message '{}' of the gateway", thing.getUID(), deviceStatus);
+    }
+
+    @Override
+    public void processDeviceStatus(String cid, Map<Integer, Object> deviceStatus) {
+        connectFinished();
+        TuyaDeviceHandler subDevice = subDevices.get(cid);
+        if (subDevice != null) {
+            subDevice.processDeviceStatus(deviceStatus);
+        } else {
+            logger.debug("'{}' received status message '{}' for unknown sub-device '{}'", thing.getUID(),
+                    deviceStatus, cid);
+        }
+    }
+
+    private void connectFinished() {
+        if (connectPending.compareAndSet(true, false)) {
+            // the gateway answered, so the connection (including a session key negotiation) is complete
+            reconnectCoordinator.connectFinished(configuration.deviceId, true);
+        }
+    }
+
+    @Override
+    public void connectionStatus(boolean status) {
+        // the sub-devices follow the status of the gateway (see TuyaDeviceHandler#bridgeStatusChanged)
+        if (status) {
+            updateStatus(ThingStatus.ONLINE);
+        } else {
+            updateStatus(ThingStatus.OFFLINE);
+            TuyaDevice tuyaDevice = this.tuyaDevice;
+            connectPending.set(false);
+            reconnectCoordinator.connectFinished(configuration.deviceId, false);
+            // only re-connect if a device is present and we are not disposing the thing
+            if (tuyaDevice != null && !disposing) {
+                reconnectCoordinator.scheduleReconnect(configuration.deviceId, deviceAddress, this::connectDevice);
+            }
+        }
+    }
+
+    /**
+     * Register a sub-device, status messages with the given node id are routed to that handler
+     *
+     * @param cid the node id of the sub-device
+     * @param subDevice the handler of the sub-device
+     */
+    public void registerSubDevice(String cid, TuyaDeviceHandler subDevice) {
+        if (subDevices.put(cid, subDevice) != null) {
+            logger.warn("Registered a second sub-device with node id '{}' for '{}'.", cid, thing.getUID());
+        }
+    }
+
+    /**
+     * Unregister a sub-device
+     *
+     * @param cid the node id of the sub-device
+     * @param subDevice the handler of the sub-device
+     */
+    public void unregisterSubDevice(String cid, TuyaDeviceHandler subDevice) {
+        subDevices.remove(cid, subDevice);
+    }
+
+    /**
+     * Set DPs on a sub-device
+     *
+     * @param cid the node id of the sub-device
+     * @param command a map of DP ids and values
+     * @return a future that completes with the reply of the gateway
+     */
+    public CompletableFuture<MessageWrapper<?>> set(String cid, Map<Integer, @Nullable Object> command) {
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (tuyaDevice == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Gateway is not connected"));
+        }
+        return tuyaDevice.set(cid, command);
+    }
+
+    /**
+     * Request the status of a sub-device, the status is reported to the sub-device handler
+     *
+     * @param cid the node id of the sub-device
+     * @return a future that completes with the reply of the gateway
+     */
+    public CompletableFuture<MessageWrapper<?>> requestStatus(String cid) {
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (tuyaDevice == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Gateway is not connected"));
+        }
+        return tuyaDevice.requestStatus(cid);
+    }
+
+    private void connectDevice() {
+        TuyaDevice tuyaDevice = this.tuyaDevice;
+        if (tuyaDevice == null) {
+            logger.warn("Cannot connect {} because the device is not set.", thing.getUID());
+            return;
+        }
+        connectPending.set(true);
+        tuyaDevice.connect();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.CRYPTO_CONTEXT_ATTR;
+import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.SESSION_KEY_ATTR;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+
+/**
+ * The {@link CryptoContext} holds initialized AES-ECB ciphers and a HMAC-SHA256 instance for a session key.
+ * <p>
+ * A context is attached to a channel and only used from the channel's event loop, so it is not thread-safe. It is
+ * re-created if the session key of the channel changes (i.e. after session key negotiation in protocol 3.4).
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class CryptoContext {
+    public static final int HMAC_LENGTH = 32;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CryptoContext.class);
+
+    private final byte[] key;
+    private final Cipher encryptCipher;
+    private final Cipher encryptPaddingCipher;
+    private final Cipher decryptCipher;
+    private final Mac mac;
+
+    public CryptoContext(byte[] key) throws GeneralSecurityException {
+        this.key = key;
+
+        SecretKey secretKey = new SecretKeySpec(key, "AES");
+        encryptCipher = Cipher.getInstance("AES/ECB/NoPadding");
+        encryptCipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        encryptPaddingCipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        encryptPaddingCipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        decryptCipher = Cipher.getInstance("AES/ECB/NoPadding");
+        decryptCipher.init(Cipher.DECRYPT_MODE, secretKey);
+
+        mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+    }
+
+    /**
+     * Get the context for the current session key of a channel. The context is created if the channel has no
+     * context yet or the session key changed.
+     *
+     * @param channel the channel
+     * @return the context or null if no session key is set or the context could not be created
+     */
+    public static @Nullable CryptoContext fromChannel(Channel channel) {
+        byte[] sessionKey = channel.attr(SESSION_KEY_ATTR).get();
+        if (sessionKey == null) {
+            return null;
+        }
+        Attribute<CryptoContext> attribute = channel.attr(CRYPTO_CONTEXT_ATTR);
+        CryptoContext context = attribute.get();
+        if (context == null || !context.isForKey(sessionKey)) {
+            try {
+                context = new CryptoContext(sessionKey);
+                attribute.set(context);
+            } catch (GeneralSecurityException e) {
+                LOGGER.warn("{}: Failed to initialize crypto context: {}",
+                        Objects.requireNonNullElse(channel.remoteAddress(), ""), e.getMessage());
+                return null;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Check if this context was created for the given key
+     * <p>
+     * Session keys are never modified, only replaced, so an identity check is sufficient.
+     *
+     * @param key the key to check
+     * @return true if the context uses this key
+     */
+    public boolean isForKey(byte[] key) {
+        return this.key == key;
+    }
+
+    /**
+     * Get the size of the encrypted data
+     *
+     * @param length the length of the plain data
+     * @param padding if PKCS5 padding is added
+     * @return the length of the encrypted data
+     */
+    public int getEncryptedSize(int length, boolean padding) {
+        return padding ? (length / 16 + 1) * 16 : length;
+    }
+
+    /**
+     * Continue a multi-part AES-ECB encryption, complete blocks are written to the output
+     * <p>
+     * The encryption needs to be finished with {@link #encrypt(ByteBuffer, ByteBuffer, boolean)} with the same
+     * padding setting.
+     *
+     * @param input the data (between position and limit), the position is advanced to the limit
+     * @param output the output buffer
+     * @param padding if PKCS5 padding shall be added when finishing the encryption
+     * @return the number of bytes written to output
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public int encryptUpdate(ByteBuffer input, ByteBuffer output, boolean padding) throws GeneralSecurityException {
+        return (padding ? encryptPaddingCipher : encryptCipher).update(input, output);
+    }
+
+    /**
+     * Encrypt data with AES-ECB (or finish a multi-part encryption)
+     *
+     * @param input the data (between position and limit), the position is advanced to the limit
+     * @param output the output buffer, needs to have at least {@link #getEncryptedSize(int, boolean)} bytes remaining
+     * @param padding if PKCS5 padding shall be added (the input must be a multiple of 16 bytes otherwise)
+     * @return the number of bytes written to output
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output, boolean padding) throws GeneralSecurityException {
+        return (padding ? encryptPaddingCipher : encryptCipher).doFinal(input, output);
+    }
+
+    /**
+     * Encrypt data with AES-ECB
+     *
+     * @param input the data
+     * @param padding if PKCS5 padding shall be added (the input must be a multiple of 16 bytes otherwise)
+     * @return the encrypted data
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public byte[] encrypt(byte[] input, boolean padding) throws GeneralSecurityException {
+        return (padding ? encryptPaddingCipher : encryptCipher).doFinal(input);
+    }
+
+    /**
+     * Decrypt AES-ECB encrypted data, the padding is not removed
+     *
+     * @param input the data (between position and limit), the position is advanced to the limit
+     * @param output the output buffer, needs to have at least as many bytes remaining as the input
+     * @return the number of bytes written to output
+     * @throws GeneralSecurityException if the decryption fails
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return decryptCipher.doFinal(input, output);
+    }
+
+    /**
+     * Calculate the HMAC-SHA256 of the data
+     *
+     * @param input the data (between position and limit), the position is advanced to the limit
+     * @param output the array to store the result in
+     * @param offset the offset in the array, at least {@link #HMAC_LENGTH} bytes are needed
+     * @throws GeneralSecurityException if the calculation fails
+     */
+    public void hmac(ByteBuffer input, byte[] output, int offset) throws GeneralSecurityException {
+        mac.update(input);
+        mac.doFinal(output, offset);
+    }
+
+    /**
+     * Calculate the HMAC-SHA256 of the data
+     *
+     * @param input the data
+     * @return the HMAC
+     */
+    public byte[] hmac(byte[] input) {
+        return mac.doFinal(input);
+    }
+}
@@ -25,5 +25,29 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 public interface DeviceStatusListener {
     void processDeviceStatus(Map<Integer, Object> deviceStatus);
 
+    /**
+     * Process the status of the device
+     * <p>
+     * The default implementation creates a map of the values, listeners on the hot path should handle the primitive
+     * values directly.
+     *
+     * @param deviceStatus the DP values
+     */
+    default void processDeviceStatus(DpStatus deviceStatus) {
+        processDeviceStatus(deviceStatus.toMap());
+    }
+
+    /**
+     * Process the status of a sub-device (e.g. a Zigbee device connected to a gateway)
+     * <p>
+     * The default implementation ignores the sub-device id.
+     *
+     * @param cid the id of the sub-device
+     * @param deviceStatus a map of DP ids and values
+     */
+    default void processDeviceStatus(String cid, Map<Integer, Object> deviceStatus) {
+        processDeviceStatus(deviceStatus);
+    }
+
     void connectionStatus(boolean status);
 }
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link DpStatus} holds the DP values of a status message
+ * <p>
+ * Booleans and numbers are stored as primitives, so they can be handed to a {@link DpConsumer} without boxing.
+ * {@link #toMap()} creates a map with the same value types Gson would use (<code>Boolean</code>,
+ * <code>Double</code>, <code>String</code> and maps or lists for other values). DPs reported with a <code>null</code>
+ * value are passed to {@link DpConsumer#nullValue(int)}, but are not contained in the map.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class DpStatus {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final byte TYPE_BOOLEAN = 0;
+    private static final byte TYPE_NUMBER = 1;
+    private static final byte TYPE_OBJECT = 2;
+    private static final byte TYPE_NULL = 3;
+
+    private int size = 0;
+    private int[] dps = new int[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private double[] numbers = new double[INITIAL_CAPACITY];
+    private @Nullable Object[] objects = new Object[INITIAL_CAPACITY];
+
+    public void addBoolean(int dp, boolean value) {
+        add(dp, TYPE_BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void addNumber(int dp, double value) {
+        add(dp, TYPE_NUMBER, value, null);
+    }
+
+    /**
+     * Add a value that is neither a boolean nor a number
+     *
+     * @param dp the DP id
+     * @param value the value (a <code>String</code>, or a map or list for JSON objects and arrays)
+     */
+    public void addObject(int dp, Object value) {
+        add(dp, TYPE_OBJECT, 0, value);
+    }
+
+    public void addNull(int dp) {
+        add(dp, TYPE_NULL, 0, null);
+    }
+
+    private void add(int dp, byte type, double number, @Nullable Object object) {
+        if (size == dps.length) {
+            int capacity = 2 * size;
+            dps = Arrays.copyOf(dps, capacity);
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        dps[size] = dp;
+        types[size] = type;
+        numbers[size] = number;
+        objects[size] = object;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Pass all values to a consumer, in the order they were added
+     *
+     * @param consumer the consumer
+     */
+    public void forEach(DpConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case TYPE_BOOLEAN -> consumer.booleanValue(dps[i], numbers[i] != 0);
+                case TYPE_NUMBER -> consumer.numberValue(dps[i], numbers[i]);
+                case TYPE_NULL -> consumer.nullValue(dps[i]);
+                default -> consumer.objectValue(dps[i], Objects.requireNonNull(objects[i]));
+            }
+        }
+    }
+
+    /**
+     * Create a map of DP ids and (boxed) values, e.g. for passing the status to a sub-device
+     *
+     * @return a new map
+     */
+    public Map<Integer, Object> toMap() {
+        Map<Integer, Object> map = new HashMap<>();
+        forEach(new DpConsumer() {
+            @Override
+            public void booleanValue(int dp, boolean value) {
+                map.put(dp, value);
+            }
+
+            @Override
+            public void numberValue(int dp, double value) {
+                map.put(dp, value);
+            }
+
+            @Override
+            public void objectValue(int dp, Object value) {
+                map.put(dp, value);
+            }
+
+            @Override
+            public void nullValue(int dp) {
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * The {@link DpConsumer} receives the DP values of a {@link DpStatus}
+     */
+    public interface DpConsumer {
+        void booleanValue(int dp, boolean value);
+
+        void numberValue(int dp, double value);
+
+        void objectValue(int dp, Object value);
+
+        void nullValue(int dp);
+    }
+}
@@ -23,6 +23,8 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 public class MessageWrapper<T> {
     public CommandType commandType;
     public T content;
+    // set by the encoder when the message is sent and by the decoder when it is received, 0 if unknown
+    public int sequenceNo = 0;
 
     public MessageWrapper(CommandType commandType, T content) {
         this.commandType = commandType;
@@ -31,6 +33,7 @@ public class MessageWrapper<T> {
 
     @Override
     public String toString() {
-        return "MessageWrapper{commandType=" + commandType + ", content='" + content + "'}";
+        return "MessageWrapper{commandType=" + commandType + ", sequenceNo=" + sequenceNo + ", content='" + content
+                + "'}";
     }
 }
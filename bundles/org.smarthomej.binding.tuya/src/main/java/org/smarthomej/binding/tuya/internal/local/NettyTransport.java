@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The {@link NettyTransport} holds the event loop group and the matching channel types
+ * <p>
+ * On Linux the native epoll transport is used if it is available, otherwise NIO is used. The native classes are only
+ * loaded if epoll is requested, so the binding also works if they are not installed.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class NettyTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NettyTransport.class);
+
+    private final EventLoopGroup eventLoopGroup;
+    private final Class<? extends SocketChannel> socketChannelClass;
+    private final Class<? extends DatagramChannel> datagramChannelClass;
+    private final boolean isNative;
+
+    private NettyTransport(EventLoopGroup eventLoopGroup, Class<? extends SocketChannel> socketChannelClass,
+            Class<? extends DatagramChannel> datagramChannelClass, boolean isNative) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.socketChannelClass = socketChannelClass;
+        this.datagramChannelClass = datagramChannelClass;
+        this.isNative = isNative;
+    }
+
+    /**
+     * Create a new transport
+     *
+     * @param preferNative use the native transport if available
+     * @param threads the number of event loop threads (0 = Netty default)
+     * @param threadName the prefix for the thread names
+     * @return the transport
+     */
+    public static NettyTransport create(boolean preferNative, int threads, String threadName) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(threadName, true);
+        int nThreads = Math.max(0, threads);
+        if (preferNative) {
+            try {
+                NettyTransport transport = EpollTransport.create(nThreads, threadFactory);
+                if (transport != null) {
+                    LOGGER.debug("Using native epoll transport");
+                    return transport;
+                }
+            } catch (LinkageError e) {
+                LOGGER.debug("Native epoll transport not available: {}", e.getMessage());
+            }
+        }
+        LOGGER.debug("Using NIO transport");
+        return new NettyTransport(new NioEventLoopGroup(nThreads, threadFactory), NioSocketChannel.class,
+                NioDatagramChannel.class, false);
+    }
+
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    public boolean isNative() {
+        return isNative;
+    }
+
+    /**
+     * Create a bootstrap for TCP connections
+     *
+     * @return the bootstrap with group and channel set
+     */
+    public Bootstrap socketBootstrap() {
+        return new Bootstrap().group(eventLoopGroup).channel(socketChannelClass);
+    }
+
+    /**
+     * Create a bootstrap for UDP sockets
+     * <p>
+     * With the native transport SO_REUSEPORT is enabled, so the discovery ports can be shared with other
+     * applications.
+     *
+     * @return the bootstrap with group and channel set
+     */
+    public Bootstrap datagramBootstrap() {
+        Bootstrap bootstrap = new Bootstrap().group(eventLoopGroup).channel(datagramChannelClass);
+        if (isNative) {
+            EpollTransport.configureDatagram(bootstrap);
+        }
+        return bootstrap;
+    }
+
+    public void shutdown() {
+        eventLoopGroup.shutdownGracefully();
+    }
+
+    /**
+     * The {@link EpollTransport} contains all references to the native classes
+     */
+    private static class EpollTransport {
+        private static @Nullable NettyTransport create(int threads, ThreadFactory threadFactory) {
+            if (!Epoll.isAvailable()) {
+                LOGGER.debug("Native epoll transport not available: {}", Epoll.unavailabilityCause().getMessage());
+                return null;
+            }
+            return new NettyTransport(new EpollEventLoopGroup(threads, threadFactory), EpollSocketChannel.class,
+                    EpollDatagramChannel.class, true);
+        }
+
+        private static void configureDatagram(Bootstrap bootstrap) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_HANDSHAKE_TIMEOUT;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_INITIAL_DELAY;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_MAXIMUM_CONCURRENT_HANDSHAKES;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_MAXIMUM_DELAY;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ReconnectCoordinator} schedules re-connects for all devices
+ * <p>
+ * Each device is re-connected with an exponential backoff with jitter, so devices that lost their connection at the
+ * same time (e.g. after an access point restart) don't re-connect in lockstep. The number of connections that are
+ * established (including the 3.4 session key negotiation) at the same time is limited, further re-connects wait
+ * until a slot is free. A pending re-connect is started immediately if a broadcast from the device is received.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class ReconnectCoordinator {
+    private final Logger logger = LoggerFactory.getLogger(ReconnectCoordinator.class);
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Reconnect> reconnects = new HashMap<>();
+    private final Map<String, ScheduledFuture<?>> activeHandshakes = new HashMap<>();
+    private final Queue<Reconnect> waitingReconnects = new ArrayDeque<>();
+    // checked for every received broadcast, so it can be read without locking
+    private final Map<String, String> addressToDeviceId = new ConcurrentHashMap<>();
+
+    public ReconnectCoordinator(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Schedule a re-connect of a device
+     * <p>
+     * If a re-connect for this device is already pending, nothing is done.
+     *
+     * @param deviceId the id of the device
+     * @param address the address of the device
+     * @param connect the action that starts the connection
+     */
+    public synchronized void scheduleReconnect(String deviceId, String address, Runnable connect) {
+        Reconnect reconnect = reconnects.computeIfAbsent(deviceId, Reconnect::new);
+        reconnect.connect = connect;
+        if (!reconnect.address.equals(address)) {
+            addressToDeviceId.remove(reconnect.address, deviceId);
+            reconnect.address = address;
+        }
+        if (reconnect.future != null || waitingReconnects.contains(reconnect)
+                || activeHandshakes.containsKey(deviceId)) {
+            return;
+        }
+
+        long delay = getDelay(reconnect.attempt++, ThreadLocalRandom.current().nextDouble());
+        logger.debug("{}: Re-connecting in {} ms (attempt {})", deviceId, delay, reconnect.attempt);
+        reconnect.future = scheduler.schedule(() -> start(deviceId), delay, TimeUnit.MILLISECONDS);
+        if (!address.isEmpty()) {
+            addressToDeviceId.put(address, deviceId);
+        }
+    }
+
+    /**
+     * Notify the coordinator that a connection attempt finished
+     *
+     * @param deviceId the id of the device
+     * @param success true if the device is connected, the backoff is reset in that case
+     */
+    public void connectFinished(String deviceId, boolean success) {
+        List<Runnable> connects;
+        synchronized (this) {
+            ScheduledFuture<?> timeout = activeHandshakes.remove(deviceId);
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (success) {
+                remove(deviceId);
+            }
+            connects = startWaiting();
+        }
+        connects.forEach(Runnable::run);
+    }
+
+    /**
+     * Notify the coordinator that a broadcast was received
+     * <p>
+     * If a re-connect of the device is pending, it is started immediately.
+     *
+     * @param address the sender of the broadcast
+     */
+    public void deviceSeen(InetAddress address) {
+        String deviceId = addressToDeviceId.get(address.getHostAddress());
+        if (deviceId == null) {
+            return;
+        }
+        synchronized (this) {
+            Reconnect reconnect = reconnects.get(deviceId);
+            ScheduledFuture<?> future = reconnect != null ? reconnect.future : null;
+            if (future == null || !future.cancel(false)) {
+                return;
+            }
+            logger.debug("{}: Received broadcast, re-connecting immediately", deviceId);
+        }
+        start(deviceId);
+    }
+
+    /**
+     * Cancel all pending re-connects for a device
+     *
+     * @param deviceId the id of the device
+     */
+    public void cancel(String deviceId) {
+        connectFinished(deviceId, true);
+    }
+
+    /**
+     * Cancel all pending re-connects
+     */
+    public synchronized void dispose() {
+        List.copyOf(reconnects.keySet()).forEach(this::remove);
+        activeHandshakes.values().forEach(future -> future.cancel(false));
+        activeHandshakes.clear();
+    }
+
+    /**
+     * Calculate the delay for a re-connect attempt
+     *
+     * @param attempt the number of the attempt (starting with 0)
+     * @param random a random number between 0 and 1
+     * @return the delay in ms (between half and the full exponential backoff)
+     */
+    static long getDelay(int attempt, double random) {
+        long delay = RECONNECT_MAXIMUM_DELAY;
+        if (attempt < 31 && (RECONNECT_INITIAL_DELAY << attempt) < RECONNECT_MAXIMUM_DELAY) {
+            delay = RECONNECT_INITIAL_DELAY << attempt;
+        }
+        return delay / 2 + (long) (random * (delay / 2));
+    }
+
+    private void start(String deviceId) {
+        Runnable connect;
+        synchronized (this) {
+            Reconnect reconnect = reconnects.get(deviceId);
+            if (reconnect == null) {
+                return;
+            }
+            reconnect.future = null;
+            if (activeHandshakes.size() >= RECONNECT_MAXIMUM_CONCURRENT_HANDSHAKES) {
+                logger.trace("{}: Too many connections in progress, waiting", deviceId);
+                waitingReconnects.add(reconnect);
+                return;
+            }
+            connect = startHandshake(reconnect);
+        }
+        connect.run();
+    }
+
+    private List<Runnable> startWaiting() {
+        List<Runnable> connects = new ArrayList<>();
+        while (activeHandshakes.size() < RECONNECT_MAXIMUM_CONCURRENT_HANDSHAKES && !waitingReconnects.isEmpty()) {
+            connects.add(startHandshake(waitingReconnects.remove()));
+        }
+        return connects;
+    }
+
+    private Runnable startHandshake(Reconnect reconnect) {
+        // release the slot if the device neither connects nor fails within the timeout
+        activeHandshakes.put(reconnect.deviceId, scheduler.schedule(() -> connectFinished(reconnect.deviceId, false),
+                RECONNECT_HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS));
+        return reconnect.connect;
+    }
+
+    private void remove(String deviceId) {
+        Reconnect reconnect = reconnects.remove(deviceId);
+        if (reconnect != null) {
+            ScheduledFuture<?> future = reconnect.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            waitingReconnects.remove(reconnect);
+            addressToDeviceId.remove(reconnect.address, deviceId);
+        }
+    }
+
+    private static class Reconnect {
+        private final String deviceId;
+        private String address = "";
+        private Runnable connect = () -> {
+        };
+        private int attempt = 0;
+        private @Nullable ScheduledFuture<?> future;
+
+        public Reconnect(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+}
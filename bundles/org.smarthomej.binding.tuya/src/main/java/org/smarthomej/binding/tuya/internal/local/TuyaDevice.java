@@ -21,15 +21,21 @@ import static org.smarthomej.binding.tuya.internal.local.CommandType.DP_REFRESH;
 import static org.smarthomej.binding.tuya.internal.local.CommandType.SESS_KEY_NEG_START;
 import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_4;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tuya.internal.local.handlers.HeartbeatHandler;
+import org.smarthomej.binding.tuya.internal.local.handlers.PollingHandler;
+import org.smarthomej.binding.tuya.internal.local.handlers.RequestPipelineHandler;
 import org.smarthomej.binding.tuya.internal.local.handlers.TuyaDecoder;
 import org.smarthomej.binding.tuya.internal.local.handlers.TuyaEncoder;
 import org.smarthomej.binding.tuya.internal.local.handlers.TuyaMessageHandler;
@@ -47,12 +53,24 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
 
 /**
  * The {@link TuyaDevice} handles the device connection
+ * <p>
+ * If a polling interval is set, the device is requested to refresh its data DPs if it did not report for that time
+ * (see {@link PollingHandler}).
+ * <p>
+ * If a command coalescing window is set, all DPs that are set within the window are merged (last write wins) and
+ * sent as a single CONTROL message when the window ends.
+ * <p>
+ * All requests return a future that is completed with the device's reply (correlated by sequence number). The
+ * number of requests waiting for a reply is limited, see {@link RequestPipelineHandler}.
+ * <p>
+ * A gateway uses a single connection for all its sub-devices. Requests for a sub-device carry its id (cid), the
+ * status of a sub-device is reported with its id, see {@link DeviceStatusListener#processDeviceStatus(String, Map)}.
  *
  * @author Jan N. Klug - Initial contribution
  */
@@ -62,26 +80,56 @@ public class TuyaDevice implements ChannelFutureListener {
     public static final AttributeKey<ProtocolVersion> PROTOCOL_ATTR = AttributeKey.valueOf("protocol");
     public static final AttributeKey<byte[]> SESSION_RANDOM_ATTR = AttributeKey.valueOf("sessionRandom");
     public static final AttributeKey<byte[]> SESSION_KEY_ATTR = AttributeKey.valueOf("sessionKey");
+    public static final AttributeKey<CryptoContext> CRYPTO_CONTEXT_ATTR = AttributeKey.valueOf("cryptoContext");
+
+    // the data DPs (e.g. power and energy) the device is asked to refresh
+    public static final List<Integer> REFRESH_DPS = List.of(4, 5, 6, 18, 19, 20);
 
     private final Logger logger = LoggerFactory.getLogger(TuyaDevice.class);
 
-    private final Bootstrap bootstrap = new Bootstrap();
+    private final Bootstrap bootstrap;
     private final DeviceStatusListener deviceStatusListener;
     private final String deviceId;
     private final byte[] deviceKey;
 
     private final String address;
+    private final int port;
     private final ProtocolVersion protocolVersion;
     private @Nullable Channel channel;
 
-    public TuyaDevice(Gson gson, DeviceStatusListener deviceStatusListener, EventLoopGroup eventLoopGroup,
-            String deviceId, byte[] deviceKey, String address, String protocolVersion) {
+    private final EventLoopGroup eventLoopGroup;
+    private final int commandCoalescingWindow;
+    private final Map<Integer, @Nullable Object> pendingCommand = new HashMap<>();
+    private @Nullable ScheduledFuture<?> pendingCommandFuture;
+    private CompletableFuture<MessageWrapper<?>> pendingCommandResult = new CompletableFuture<>();
+    private final AtomicLong coalescedFrames = new AtomicLong();
+
+    /**
+     * Create a new device and connect to it
+     *
+     * @param gson the Gson instance used for (de-)serializing the messages
+     * @param deviceStatusListener the listener for status updates
+     * @param transport the shared Netty transport
+     * @param deviceId the device id
+     * @param deviceKey the local key of the device
+     * @param address the IP address of the device
+     * @param protocolVersion the protocol version (e.g. "3.3")
+     * @param commandCoalescingWindow the time (in ms) commands are collected before they are sent, 0 = disabled
+     * @param pollingInterval the interval (in s) for polling the status, 0 = disabled
+     * @param port the TCP port of the device (usually 6668)
+     */
+    public TuyaDevice(Gson gson, DeviceStatusListener deviceStatusListener, NettyTransport transport, String deviceId,
+            byte[] deviceKey, String address, String protocolVersion, int commandCoalescingWindow,
+            int pollingInterval, int port) {
         this.address = address;
+        this.port = port;
         this.deviceId = deviceId;
         this.deviceKey = deviceKey;
         this.deviceStatusListener = deviceStatusListener;
         this.protocolVersion = ProtocolVersion.fromString(protocolVersion);
-        bootstrap.group(eventLoopGroup).channel(NioSocketChannel.class);
+        this.eventLoopGroup = transport.getEventLoopGroup();
+        this.commandCoalescingWindow = Math.max(0, commandCoalescingWindow);
+        bootstrap = transport.socketBootstrap();
         bootstrap.option(ChannelOption.TCP_NODELAY, true).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 2000);
         bootstrap.handler(new ChannelInitializer<SocketChannel>() {
             @Override
@@ -92,6 +140,10 @@ public class TuyaDevice implements ChannelFutureListener {
                 pipeline.addLast("messageEncoder", new TuyaEncoder(gson));
                 pipeline.addLast("messageDecoder", new TuyaDecoder(gson));
                 pipeline.addLast("heartbeatHandler", new HeartbeatHandler());
+                if (pollingInterval > 0) {
+                    pipeline.addLast("pollingHandler", new PollingHandler(pollingInterval));
+                }
+                pipeline.addLast("requestPipelineHandler", new RequestPipelineHandler());
                 pipeline.addLast("deviceHandler", new TuyaMessageHandler(deviceStatusListener));
                 pipeline.addLast("userEventHandler", new UserEventHandler());
             }
@@ -100,7 +152,7 @@ public class TuyaDevice implements ChannelFutureListener {
     }
 
     public void connect() {
-        bootstrap.connect(address, 6668).addListener(this);
+        bootstrap.connect(address, port).addListener(this);
     }
 
     private void disconnect() {
@@ -111,38 +163,141 @@ public class TuyaDevice implements ChannelFutureListener {
         }
     }
 
-    public void set(Map<Integer, @Nullable Object> command) {
+    /**
+     * Set DPs on the device
+     * <p>
+     * If a coalescing window is configured, the DPs are merged with other DPs set within the window and sent when
+     * the window ends. Otherwise they are sent immediately.
+     *
+     * @param command a map of DP ids and values
+     * @return a future that completes with the reply of the device (shared by all commands merged into one frame)
+     */
+    public CompletableFuture<MessageWrapper<?>> set(Map<Integer, @Nullable Object> command) {
+        if (commandCoalescingWindow == 0) {
+            return sendCommand(command);
+        }
+
+        synchronized (pendingCommand) {
+            if (pendingCommandFuture != null) {
+                // a frame is already pending, merge the DPs into that frame
+                coalescedFrames.incrementAndGet();
+            } else {
+                pendingCommandResult = new CompletableFuture<>();
+                pendingCommandFuture = eventLoopGroup.schedule(this::sendPendingCommand, commandCoalescingWindow,
+                        TimeUnit.MILLISECONDS);
+            }
+            pendingCommand.putAll(command);
+            return pendingCommandResult;
+        }
+    }
+
+    /**
+     * Get the number of frames that were saved by merging commands within the coalescing window
+     *
+     * @return the number of saved frames
+     */
+    public long getCoalescedFrames() {
+        return coalescedFrames.get();
+    }
+
+    private void sendPendingCommand() {
+        Map<Integer, @Nullable Object> command;
+        CompletableFuture<MessageWrapper<?>> result;
+        synchronized (pendingCommand) {
+            pendingCommandFuture = null;
+            result = pendingCommandResult;
+            if (pendingCommand.isEmpty()) {
+                result.cancel(false);
+                return;
+            }
+            command = new HashMap<>(pendingCommand);
+            pendingCommand.clear();
+        }
+        logger.trace("{}: Sending coalesced command {}, {} frames saved so far", deviceId, command,
+                coalescedFrames.get());
+        sendCommand(command).whenComplete((reply, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(reply);
+            }
+        });
+    }
+
+    private CompletableFuture<MessageWrapper<?>> sendCommand(Map<Integer, @Nullable Object> command) {
         CommandType commandType = (protocolVersion == V3_4) ? CONTROL_NEW : CONTROL;
         MessageWrapper<?> m = new MessageWrapper<>(commandType, Map.of("dps", command));
-        Channel channel = this.channel;
-        if (channel != null) {
-            channel.writeAndFlush(m);
-        } else {
-            logger.warn("{}: Setting {} failed. Device is not connected.", deviceId, command);
-        }
+        return request(m, "Setting " + command);
     }
 
-    public void requestStatus() {
+    /**
+     * Set DPs on a sub-device (e.g. a Zigbee device connected to a gateway)
+     * <p>
+     * Commands for sub-devices are not coalesced, they are sent immediately.
+     *
+     * @param cid the id of the sub-device
+     * @param command a map of DP ids and values
+     * @return a future that completes with the reply of the device
+     */
+    public CompletableFuture<MessageWrapper<?>> set(String cid, Map<Integer, @Nullable Object> command) {
+        CommandType commandType = (protocolVersion == V3_4) ? CONTROL_NEW : CONTROL;
+        MessageWrapper<?> m = new MessageWrapper<>(commandType, Map.of("cid", cid, "dps", command));
+        return request(m, "Setting " + command + " on " + cid);
+    }
+
+    /**
+     * Request the status of all DPs, the status is reported to the {@link DeviceStatusListener}
+     *
+     * @return a future that completes with the reply of the device
+     */
+    public CompletableFuture<MessageWrapper<?>> requestStatus() {
         MessageWrapper<?> m = new MessageWrapper<>(DP_QUERY, Map.of("dps", Map.of()));
-        Channel channel = this.channel;
-        if (channel != null) {
-            channel.writeAndFlush(m);
-        } else {
-            logger.warn("{}: Querying status failed. Device is not connected.", deviceId);
-        }
+        return request(m, "Querying status");
+    }
+
+    /**
+     * Request the status of all DPs of a sub-device, the status is reported to the {@link DeviceStatusListener}
+     *
+     * @param cid the id of the sub-device
+     * @return a future that completes with the reply of the device
+     */
+    public CompletableFuture<MessageWrapper<?>> requestStatus(String cid) {
+        MessageWrapper<?> m = new MessageWrapper<>(DP_QUERY, Map.of("cid", cid, "dps", Map.of()));
+        return request(m, "Querying status of " + cid);
     }
 
-    public void refreshStatus() {
-        MessageWrapper<?> m = new MessageWrapper<>(DP_REFRESH, Map.of("dpId", List.of(4, 5, 6, 18, 19, 20)));
+    /**
+     * Request the device to refresh its data DPs
+     *
+     * @return a future that completes with the reply of the device
+     */
+    public CompletableFuture<MessageWrapper<?>> refreshStatus() {
+        MessageWrapper<?> m = new MessageWrapper<>(DP_REFRESH, Map.of("dpId", REFRESH_DPS));
+        return request(m, "Refreshing status");
+    }
+
+    private CompletableFuture<MessageWrapper<?>> request(MessageWrapper<?> m, String action) {
         Channel channel = this.channel;
         if (channel != null) {
-            channel.writeAndFlush(m);
+            RequestPipelineHandler.Request request = new RequestPipelineHandler.Request(m);
+            channel.writeAndFlush(request);
+            return request.getFuture();
         } else {
-            logger.warn("{}: Refreshing status failed. Device is not connected.", deviceId);
+            logger.warn("{}: {} failed. Device is not connected.", deviceId, action);
+            return CompletableFuture.failedFuture(new IllegalStateException("Device is not connected"));
         }
     }
 
     public void dispose() {
+        synchronized (pendingCommand) {
+            ScheduledFuture<?> pendingCommandFuture = this.pendingCommandFuture;
+            if (pendingCommandFuture != null) {
+                pendingCommandFuture.cancel(false);
+                this.pendingCommandFuture = null;
+            }
+            pendingCommand.clear();
+            pendingCommandResult.cancel(false);
+        }
         disconnect();
     }
 
@@ -12,8 +12,8 @@
  */
 package org.smarthomej.binding.tuya.internal.local;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.openhab.core.util.HexUtils;
@@ -35,9 +35,7 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.DatagramChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 
 /**
  * The {@link UdpDiscoveryListener} handles UDP device discovery message
@@ -52,28 +50,32 @@ public class UdpDiscoveryListener implements ChannelFutureListener {
 
     private final Gson gson = new Gson();
 
-    private final Map<String, DeviceInfo> deviceInfos = new HashMap<>();
-    private final Map<String, DeviceInfoSubscriber> deviceListeners = new HashMap<>();
+    // modified from the Netty event loop and thing handler threads
+    private final Map<String, DeviceInfo> deviceInfos = new ConcurrentHashMap<>();
+    private final Map<String, DeviceInfoSubscriber> deviceListeners = new ConcurrentHashMap<>();
 
     private @NonNullByDefault({}) Channel encryptedChannel;
     private @NonNullByDefault({}) Channel rawChannel;
-    private final EventLoopGroup group;
+    private final NettyTransport transport;
+    private final ReconnectCoordinator reconnectCoordinator;
     private boolean deactivate = false;
 
-    public UdpDiscoveryListener(EventLoopGroup group) {
-        this.group = group;
+    public UdpDiscoveryListener(NettyTransport transport, ReconnectCoordinator reconnectCoordinator) {
+        this.transport = transport;
+        this.reconnectCoordinator = reconnectCoordinator;
         activate();
     }
 
     private void activate() {
         try {
-            Bootstrap b = new Bootstrap();
-            b.group(group).channel(NioDatagramChannel.class).option(ChannelOption.SO_BROADCAST, true)
+            Bootstrap b = transport.datagramBootstrap();
+            b.option(ChannelOption.SO_BROADCAST, true)
                     .handler(new ChannelInitializer<DatagramChannel>() {
                         @Override
                         protected void initChannel(DatagramChannel ch) throws Exception {
                             ChannelPipeline pipeline = ch.pipeline();
-                            pipeline.addLast("udpDecoder", new DatagramToByteBufDecoder());
+                            pipeline.addLast("udpDecoder",
+                                    new DatagramToByteBufDecoder(reconnectCoordinator::deviceSeen));
                             pipeline.addLast("messageDecoder", new TuyaDecoder(gson));
                             pipeline.addLast("discoveryHandler",
                                     new DiscoveryMessageHandler(deviceInfos, deviceListeners));
@@ -12,9 +12,8 @@
  */
 package org.smarthomej.binding.tuya.internal.local.dto;
 
-import java.util.Map;
-
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
 
 /**
  * The {@link TcpStatusPayload} encapsulates the payload of a TCP status message
@@ -27,22 +26,25 @@ public class TcpStatusPayload {
     public String devId = "";
     public String gwId = "";
     public String uid = "";
+    // id of the sub-device (e.g. a Zigbee device connected to a gateway), empty for the device itself
+    public String cid = "";
     public long t = 0;
-    public Map<Integer, Object> dps = Map.of();
+    public DpStatus dps = new DpStatus();
     public Data data = new Data();
 
     @Override
     public String toString() {
         return "TcpStatusPayload{protocol=" + protocol + ", devId='" + devId + "', gwId='" + gwId + "', uid='" + uid
-                + "', t=" + t + ", dps=" + dps + ", data=" + data + "}";
+                + "', cid='" + cid + "', t=" + t + ", dps=" + dps + ", data=" + data + "}";
     }
 
     public static class Data {
-        public Map<Integer, Object> dps = Map.of();
+        public String cid = "";
+        public DpStatus dps = new DpStatus();
 
         @Override
         public String toString() {
-            return "Data{dps=" + dps + "}";
+            return "Data{cid='" + cid + "', dps=" + dps + "}";
         }
     }
 }
@@ -12,26 +12,63 @@
  */
 package org.smarthomej.binding.tuya.internal.local.handlers;
 
+import java.net.InetAddress;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
 
 /**
  * The {@link DatagramToByteBufDecoder} is a Netty Decoder for UDP messages
+ * <p>
+ * Devices repeat their broadcast every few seconds. If a datagram is identical to the last datagram from the same
+ * sender, it is discarded before decryption and parsing. The sender of every datagram is reported to the listener
+ * (if set), even if the datagram is discarded.
  *
  * @author Jan N. Klug - Initial contribution
  */
 @NonNullByDefault
 public class DatagramToByteBufDecoder extends MessageToMessageDecoder<DatagramPacket> {
+    // only accessed from the channel's event loop
+    private final Map<InetAddress, Long> lastDatagramHashes = new HashMap<>();
+
+    private final @Nullable Consumer<InetAddress> datagramListener;
+
+    public DatagramToByteBufDecoder() {
+        this(null);
+    }
+
+    public DatagramToByteBufDecoder(@Nullable Consumer<InetAddress> datagramListener) {
+        this.datagramListener = datagramListener;
+    }
 
     @Override
     protected void decode(@Nullable ChannelHandlerContext ctx, DatagramPacket msg,
             @NonNullByDefault({}) List<Object> out) throws Exception {
-        out.add(msg.content().copy());
+        InetAddress sender = msg.sender().getAddress();
+        Consumer<InetAddress> datagramListener = this.datagramListener;
+        if (datagramListener != null) {
+            datagramListener.accept(sender);
+        }
+
+        ByteBuf content = msg.content();
+        long hash = ((long) content.readableBytes() << 32)
+                | (CryptoUtil.calculateChecksum(content.nioBuffer()) & 0xffffffffL);
+        Long lastHash = lastDatagramHashes.put(sender, hash);
+        if (lastHash != null && lastHash == hash) {
+            return;
+        }
+
+        // retain the content instead of copying it, the datagram itself is released after decoding
+        out.add(content.retain());
     }
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import static org.smarthomej.binding.tuya.internal.local.CommandType.DP_REFRESH;
+import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.REFRESH_DPS;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
+import org.smarthomej.binding.tuya.internal.local.TuyaDevice;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * The {@link PollingHandler} requests the device to refresh its data DPs if no message was received for the polling
+ * interval
+ * <p>
+ * The timer runs on the event loop of the channel. It is re-scheduled relative to the last received message, so no
+ * refresh is requested while the device reports on its own. The first refresh is delayed by a random fraction of the
+ * interval, so that the polling of devices that connect at the same time is spread over the interval.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class PollingHandler extends ChannelDuplexHandler {
+    private final Logger logger = LoggerFactory.getLogger(PollingHandler.class);
+
+    private final long pollingInterval; // in ns
+    private final LongSupplier ticker;
+    private long lastRead;
+    private @Nullable ScheduledFuture<?> pollingFuture;
+
+    /**
+     * Create a new handler
+     *
+     * @param pollingInterval the polling interval in s
+     */
+    public PollingHandler(int pollingInterval) {
+        this(pollingInterval, System::nanoTime);
+    }
+
+    /**
+     * Create a new handler with a custom time source (e.g. the clock of a test)
+     *
+     * @param pollingInterval the polling interval in s
+     * @param ticker the time source in ns
+     */
+    PollingHandler(int pollingInterval, LongSupplier ticker) {
+        this.pollingInterval = TimeUnit.SECONDS.toNanos(pollingInterval);
+        this.ticker = ticker;
+    }
+
+    @Override
+    public void channelActive(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        lastRead = ticker.getAsLong();
+        long delay = pollingInterval + ThreadLocalRandom.current().nextLong(pollingInterval);
+        pollingFuture = ctx.executor().schedule(() -> poll(ctx), delay, TimeUnit.NANOSECONDS);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        ScheduledFuture<?> pollingFuture = this.pollingFuture;
+        if (pollingFuture != null) {
+            pollingFuture.cancel(false);
+            this.pollingFuture = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(@NonNullByDefault({}) ChannelHandlerContext ctx, @NonNullByDefault({}) Object msg)
+            throws Exception {
+        // heartbeats are consumed by the HeartbeatHandler, so only messages with data arrive here
+        lastRead = ticker.getAsLong();
+        ctx.fireChannelRead(msg);
+    }
+
+    private void poll(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isActive()) {
+            return;
+        }
+
+        long sinceLastRead = ticker.getAsLong() - lastRead;
+        long delay;
+        if (sinceLastRead >= pollingInterval) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}{}: Requesting refresh", ctx.channel().attr(TuyaDevice.DEVICE_ID_ATTR).get(),
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
+            }
+            MessageWrapper<?> m = new MessageWrapper<>(DP_REFRESH, Map.of("dpId", REFRESH_DPS));
+            // write to the channel (not the context), so the request passes the RequestPipelineHandler
+            ctx.channel().writeAndFlush(new RequestPipelineHandler.Request(m));
+            delay = pollingInterval;
+        } else {
+            // the device reported in the meantime, wait until the interval since the last message has passed
+            delay = pollingInterval - sinceLastRead;
+        }
+        pollingFuture = ctx.executor().schedule(() -> poll(ctx), delay, TimeUnit.NANOSECONDS);
+    }
+}
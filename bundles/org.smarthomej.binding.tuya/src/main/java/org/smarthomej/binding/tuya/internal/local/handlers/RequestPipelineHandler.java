@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.TCP_MAXIMUM_QUEUED_REQUESTS;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.TCP_MAXIMUM_REQUESTS_IN_FLIGHT;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.TCP_REQUEST_TIMEOUT;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
+import org.smarthomej.binding.tuya.internal.local.TuyaDevice;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * The {@link RequestPipelineHandler} correlates requests and replies by their sequence number
+ * <p>
+ * Only {@link Request}s are tracked, all other messages are passed through. At most
+ * {@link org.smarthomej.binding.tuya.internal.TuyaBindingConstants#TCP_MAXIMUM_REQUESTS_IN_FLIGHT} requests are sent
+ * without a reply. Further requests (and all requests while the channel is not writable) are queued and sent when a
+ * reply is received, a request times out or the channel becomes writable again.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class RequestPipelineHandler extends ChannelDuplexHandler {
+    private final Logger logger = LoggerFactory.getLogger(RequestPipelineHandler.class);
+
+    private final Map<Integer, Request> inFlight = new HashMap<>();
+    private final Queue<Request> queue = new ArrayDeque<>();
+
+    @Override
+    public void write(@NonNullByDefault({}) ChannelHandlerContext ctx, @NonNullByDefault({}) Object msg,
+            @NonNullByDefault({}) ChannelPromise promise) throws Exception {
+        if (!(msg instanceof Request request)) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        request.promise = promise;
+        if (queue.isEmpty() && canSend(ctx)) {
+            send(ctx, request);
+        } else if (queue.size() < TCP_MAXIMUM_QUEUED_REQUESTS) {
+            logger.trace("{}{}: Queueing {}", deviceId(ctx),
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), request.message);
+            queue.add(request);
+        } else {
+            logger.warn("{}{}: Request queue is full, discarding {}", deviceId(ctx),
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), request.message);
+            RejectedExecutionException e = new RejectedExecutionException("Request queue is full");
+            promise.setFailure(e);
+            request.fail(e);
+        }
+    }
+
+    @Override
+    public void channelRead(@NonNullByDefault({}) ChannelHandlerContext ctx, @NonNullByDefault({}) Object msg)
+            throws Exception {
+        if (msg instanceof MessageWrapper<?> m && m.sequenceNo != 0) {
+            Request request = inFlight.remove(m.sequenceNo);
+            if (request != null) {
+                request.cancelTimeout();
+                logger.debug("{}{}: Reply to {} received after {} ms", deviceId(ctx),
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), request.message,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.sendTime));
+                request.future.complete(m);
+                sendQueued(ctx);
+            }
+        }
+        // forward to next handler
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelWritabilityChanged(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        sendQueued(ctx);
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        failAll();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        failAll();
+    }
+
+    private boolean canSend(ChannelHandlerContext ctx) {
+        return inFlight.size() < TCP_MAXIMUM_REQUESTS_IN_FLIGHT && ctx.channel().isWritable();
+    }
+
+    private void sendQueued(ChannelHandlerContext ctx) {
+        boolean sent = false;
+        while (!queue.isEmpty() && canSend(ctx)) {
+            send(ctx, queue.remove());
+            sent = true;
+        }
+        if (sent) {
+            ctx.flush();
+        }
+    }
+
+    private void send(ChannelHandlerContext ctx, Request request) {
+        ChannelPromise promise = Objects.requireNonNullElseGet(request.promise, ctx::newPromise);
+        promise.addListener(f -> {
+            if (!f.isSuccess()) {
+                inFlight.remove(request.message.sequenceNo, request);
+                request.fail(f.cause());
+            }
+        });
+
+        // the encoder is called synchronously and sets the sequence number
+        ctx.write(request.message, promise);
+        int sequenceNo = request.message.sequenceNo;
+        if (sequenceNo == 0) {
+            // the encoder discarded the message
+            request.fail(new IllegalStateException("Failed to encode message"));
+            return;
+        }
+        if (request.future.isDone()) {
+            // write already failed
+            return;
+        }
+
+        request.sendTime = System.nanoTime();
+        request.timeoutFuture = ctx.executor().schedule(() -> {
+            if (inFlight.remove(sequenceNo, request)) {
+                logger.debug("{}{}: No reply to {} within {} ms", deviceId(ctx),
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), request.message,
+                        TCP_REQUEST_TIMEOUT);
+                request.fail(new TimeoutException("No reply received within " + TCP_REQUEST_TIMEOUT + " ms"));
+                sendQueued(ctx);
+            }
+        }, TCP_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        inFlight.put(sequenceNo, request);
+    }
+
+    private void failAll() {
+        ClosedChannelException e = new ClosedChannelException();
+        inFlight.values().forEach(request -> request.fail(e));
+        inFlight.clear();
+        queue.forEach(request -> {
+            // queued requests were never written
+            ChannelPromise promise = request.promise;
+            if (promise != null) {
+                promise.tryFailure(e);
+            }
+            request.fail(e);
+        });
+        queue.clear();
+    }
+
+    private String deviceId(ChannelHandlerContext ctx) {
+        return Objects.requireNonNullElse(ctx.channel().attr(TuyaDevice.DEVICE_ID_ATTR).get(), "");
+    }
+
+    /**
+     * The {@link Request} wraps a message that expects a reply from the device
+     */
+    public static class Request {
+        private final MessageWrapper<?> message;
+        private final CompletableFuture<MessageWrapper<?>> future = new CompletableFuture<>();
+        private @Nullable ChannelPromise promise;
+        private @Nullable ScheduledFuture<?> timeoutFuture;
+        private long sendTime;
+
+        public Request(MessageWrapper<?> message) {
+            this.message = message;
+        }
+
+        /**
+         * Get the message of this request
+         *
+         * @return the message
+         */
+        public MessageWrapper<?> getMessage() {
+            return message;
+        }
+
+        /**
+         * Get the future for the reply to this request
+         *
+         * @return a future that is completed with the reply or completed exceptionally if the request failed or
+         *         timed out
+         */
+        public CompletableFuture<MessageWrapper<?>> getFuture() {
+            return future;
+        }
+
+        private void cancelTimeout() {
+            ScheduledFuture<?> timeoutFuture = this.timeoutFuture;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+        }
+
+        private void fail(Throwable cause) {
+            cancelTimeout();
+            future.completeExceptionally(cause);
+        }
+    }
+}
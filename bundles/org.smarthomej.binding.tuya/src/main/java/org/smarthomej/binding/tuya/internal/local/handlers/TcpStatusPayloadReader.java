@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
+import org.smarthomej.binding.tuya.internal.local.dto.TcpStatusPayload;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The {@link TcpStatusPayloadReader} reads a {@link TcpStatusPayload} from the UTF-8 encoded JSON in a byte array
+ * <p>
+ * The bytes are decoded into a re-used buffer and streamed to a {@link JsonReader}, without creating an intermediate
+ * {@link String} and without reflection. Boolean and number DP values are stored as primitives in a {@link DpStatus},
+ * other values (objects and arrays) are read with Gson.
+ * <p>
+ * Instances are not thread-safe, they are intended to be used from the event loop of a single channel.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+class TcpStatusPayloadReader {
+    private final Gson gson;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
+    public TcpStatusPayloadReader(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Read a status payload
+     *
+     * @param bytes the array containing the JSON
+     * @param start the index of the first byte of the JSON
+     * @param end the index after the last byte of the JSON
+     * @return the payload
+     * @throws JsonSyntaxException if the JSON is invalid or not a status payload
+     */
+    public TcpStatusPayload read(byte[] bytes, int start, int end) {
+        JsonReader jsonReader = new JsonReader(decode(bytes, start, end));
+        jsonReader.setLenient(true);
+        try {
+            TcpStatusPayload payload = new TcpStatusPayload();
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    // keep the default value
+                    jsonReader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "protocol" -> payload.protocol = jsonReader.nextInt();
+                    case "devId" -> payload.devId = jsonReader.nextString();
+                    case "gwId" -> payload.gwId = jsonReader.nextString();
+                    case "uid" -> payload.uid = jsonReader.nextString();
+                    case "cid" -> payload.cid = jsonReader.nextString();
+                    case "t" -> payload.t = jsonReader.nextLong();
+                    case "dps" -> payload.dps = readDps(jsonReader);
+                    case "data" -> readData(jsonReader, payload.data);
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+            return payload;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private CharArrayReader decode(byte[] bytes, int start, int end) {
+        ByteBuffer in = ByteBuffer.wrap(bytes, start, end - start);
+        // UTF-8 never decodes to more chars than bytes
+        if (chars.capacity() < in.remaining()) {
+            chars = CharBuffer.allocate(in.remaining());
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(in, chars, true);
+        decoder.flush(chars);
+        return new CharArrayReader(chars.array(), 0, chars.position());
+    }
+
+    private void readData(JsonReader jsonReader, TcpStatusPayload.Data data) throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+            } else if ("cid".equals(name)) {
+                data.cid = jsonReader.nextString();
+            } else if ("dps".equals(name)) {
+                data.dps = readDps(jsonReader);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    private DpStatus readDps(JsonReader jsonReader) throws IOException {
+        DpStatus dps = new DpStatus();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            int dp = Integer.parseInt(jsonReader.nextName());
+            switch (jsonReader.peek()) {
+                case BOOLEAN -> dps.addBoolean(dp, jsonReader.nextBoolean());
+                case NUMBER -> dps.addNumber(dp, jsonReader.nextDouble());
+                case STRING -> dps.addObject(dp, jsonReader.nextString());
+                case NULL -> {
+                    jsonReader.nextNull();
+                    dps.addNull(dp);
+                }
+                default -> {
+                    Object value = gson.fromJson(jsonReader, Object.class);
+                    if (value != null) {
+                        dps.addObject(dp, value);
+                    }
+                }
+            }
+        }
+        jsonReader.endObject();
+        return dps;
+    }
+}
@@ -23,6 +23,8 @@ import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_4;
 import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.*;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
@@ -30,20 +32,22 @@ import java.util.Map;
 import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.util.HexUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.CryptoContext;
 import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
 import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
 import org.smarthomej.binding.tuya.internal.local.dto.DiscoveryMessage;
-import org.smarthomej.binding.tuya.internal.local.dto.TcpStatusPayload;
 import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 
@@ -56,12 +60,21 @@ import io.netty.handler.codec.ByteToMessageDecoder;
  */
 @NonNullByDefault
 public class TuyaDecoder extends ByteToMessageDecoder {
+    private static final byte[] DP_QUERY_NOT_SUPPORTED_RESPONSE = "json obj data unvalid"
+            .getBytes(StandardCharsets.UTF_8);
+
     private final Logger logger = LoggerFactory.getLogger(TuyaDecoder.class);
 
     private final Gson gson;
+    private final TcpStatusPayloadReader statusPayloadReader;
+
+    // buffers are re-used for each message, the decoder is only called from the channel's event loop
+    private final byte[] hmacBuffer = new byte[CryptoContext.HMAC_LENGTH];
+    private ByteBuffer decryptBuffer = ByteBuffer.allocate(1024);
 
     public TuyaDecoder(Gson gson) {
         this.gson = gson;
+        this.statusPayloadReader = new TcpStatusPayloadReader(gson);
     }
 
     @Override
@@ -80,140 +93,227 @@ public class TuyaDecoder extends ByteToMessageDecoder {
             return;
         }
         String deviceId = ctx.channel().attr(DEVICE_ID_ATTR).get();
-        ProtocolVersion protocol = ctx.channel().attr(PROTOCOL_ATTR).get();
-        byte[] sessionKey = ctx.channel().attr(SESSION_KEY_ATTR).get();
-
-        // we need to take a copy first so the buffer stays intact if we exit early
-        ByteBuf inCopy = in.copy();
-        byte[] bytes = new byte[inCopy.readableBytes()];
-        inCopy.readBytes(bytes);
-        inCopy.release();
-
-        if (logger.isTraceEnabled()) {
-            logger.trace("{}{}: Received encoded '{}'", deviceId,
-                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), HexUtils.bytesToHex(bytes));
-        }
 
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        int prefix = buffer.getInt();
-        int sequenceNumber = buffer.getInt();
-        CommandType commandType = CommandType.fromCode(buffer.getInt());
-        int payloadLength = buffer.getInt();
-
-        //
-        if (buffer.limit() < payloadLength + 16) {
+        // the length field is at offset 12 and counts all bytes following the 16 bytes header
+        int frameLength = in.getInt(in.readerIndex() + 12) + 16;
+        if (frameLength < 24) {
+            logger.warn("{}{}: Decoding failed: Invalid frame length {}.", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), frameLength);
+            // skip all data, we can't recover from this
+            in.skipBytes(in.readableBytes());
+            return;
+        } else if (in.readableBytes() < frameLength) {
             // there are less bytes than needed, exit early
             logger.trace("Did not receive enough bytes from '{}', exiting early", deviceId);
             return;
-        } else {
-            // we have enough bytes, skip them from the input buffer and proceed processing
-            in.skipBytes(payloadLength + 16);
         }
 
-        int returnCode = buffer.getInt();
+        // we have enough bytes, take a slice of the frame and skip them from the input buffer
+        ByteBuf frame = in.retainedSlice(in.readerIndex(), frameLength);
+        in.skipBytes(frameLength);
+        try {
+            MessageWrapper<?> m = decodeFrame(ctx, frame, deviceId);
+            if (m != null) {
+                m.sequenceNo = frame.getInt(4);
+                logger.debug("{}{}: Received {}", deviceId,
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), m);
+                out.add(m);
+            }
+        } finally {
+            frame.release();
+        }
+    }
 
-        byte[] payload;
-        if ((returnCode & 0xffffff00) != 0) {
-            // rewind if no return code is present
-            buffer.position(buffer.position() - 4);
-            payload = protocol == V3_4 ? new byte[payloadLength - 32] : new byte[payloadLength - 8];
-        } else {
-            payload = protocol == V3_4 ? new byte[payloadLength - 32 - 8] : new byte[payloadLength - 8 - 4];
+    private @Nullable MessageWrapper<?> decodeFrame(ChannelHandlerContext ctx, ByteBuf frame, String deviceId) {
+        ProtocolVersion protocol = ctx.channel().attr(PROTOCOL_ATTR).get();
+        CryptoContext cryptoContext = CryptoContext.fromChannel(ctx.channel());
+        if (cryptoContext == null) {
+            return null;
         }
 
-        buffer.get(payload);
+        if (logger.isTraceEnabled()) {
+            logger.trace("{}{}: Received encoded '{}'", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), ByteBufUtil.hexDump(frame));
+        }
+
+        int frameLength = frame.readableBytes();
+        int prefix = frame.getInt(0);
+        CommandType commandType = CommandType.fromCode(frame.getInt(8));
+        int suffix = frame.getInt(frameLength - 4);
+
+        // 3.4 uses a 32 byte HMAC, all others a 4 byte CRC, both followed by the 4 byte suffix
+        int payloadEnd = frameLength - (protocol == V3_4 ? 36 : 8);
+        int returnCode = frame.getInt(16);
+        // skip return code if present
+        int payloadStart = (returnCode & 0xffffff00) != 0 ? 16 : 20;
+        if (payloadEnd < payloadStart) {
+            logger.warn("{}{}: Decoding failed: Frame too short.", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
+            return null;
+        }
 
         if (protocol == V3_4 && commandType != UDP && commandType != UDP_NEW) {
-            byte[] fullMessage = new byte[buffer.position()];
-            buffer.position(0);
-            buffer.get(fullMessage);
-            byte[] expectedHmac = new byte[32];
-            buffer.get(expectedHmac);
-            byte[] calculatedHmac = CryptoUtil.hmac(fullMessage, sessionKey);
-            if (!Arrays.equals(expectedHmac, calculatedHmac)) {
+            // header + payload without suffix and checksum
+            try {
+                cryptoContext.hmac(frame.nioBuffer(0, payloadEnd), hmacBuffer, 0);
+            } catch (GeneralSecurityException e) {
+                logger.warn("{}{}: Creating HMAC hash failed: {}", deviceId,
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), e.getMessage());
+                return null;
+            }
+            if (!equals(frame, payloadEnd, hmacBuffer)) {
                 logger.warn("{}{}: Checksum failed for message: calculated {}, found {}", deviceId,
                         Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""),
-                        calculatedHmac != null ? HexUtils.bytesToHex(calculatedHmac) : "<null>",
-                        HexUtils.bytesToHex(expectedHmac));
-                return;
+                        HexUtils.bytesToHex(hmacBuffer), ByteBufUtil.hexDump(frame, payloadEnd, hmacBuffer.length));
+                return null;
             }
         } else {
-            int crc = buffer.getInt();
+            int crc = frame.getInt(payloadEnd);
             // header + payload without suffix and checksum
-            int calculatedCrc = CryptoUtil.calculateChecksum(bytes, 0, 16 + payloadLength - 8);
+            int calculatedCrc = CryptoUtil.calculateChecksum(frame.nioBuffer(0, payloadEnd));
             if (calculatedCrc != crc) {
                 logger.warn("{}{}: Checksum failed for message: calculated {}, found {}", deviceId,
                         Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), calculatedCrc, crc);
-                return;
+                return null;
             }
         }
 
-        int suffix = buffer.getInt();
         if (prefix != 0x000055aa || suffix != 0x0000aa55) {
             logger.warn("{}{}: Decoding failed: Prefix or suffix invalid.", deviceId,
                     Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
-            return;
+            return null;
         }
 
-        if (Arrays.equals(Arrays.copyOfRange(payload, 0, protocol.getBytes().length), protocol.getBytes())) {
+        ByteBuffer payload = frame.nioBuffer(payloadStart, payloadEnd - payloadStart);
+        if (startsWith(payload, protocol.getBytes())) {
             if (protocol == V3_3) {
                 // Remove 3.3 header
-                payload = Arrays.copyOfRange(payload, 15, payload.length);
+                payload.position(payload.position() + 15);
             } else {
-                payload = Base64.getDecoder().decode(Arrays.copyOfRange(payload, 19, payload.length));
+                payload.position(payload.position() + 19);
+                payload = Base64.getDecoder().decode(payload);
             }
         }
 
-        MessageWrapper<?> m;
         if (commandType == UDP) {
             // UDP is unencrypted
-            m = new MessageWrapper<>(commandType,
-                    Objects.requireNonNull(gson.fromJson(new String(payload), DiscoveryMessage.class)));
-        } else {
-            byte[] decodedMessage = protocol == V3_4 ? CryptoUtil.decryptAesEcb(payload, sessionKey, true)
-                    : CryptoUtil.decryptAesEcb(payload, sessionKey, false);
-            if (decodedMessage == null) {
-                return;
-            }
+            return new MessageWrapper<>(commandType, Objects.requireNonNull(
+                    gson.fromJson(StandardCharsets.UTF_8.decode(payload).toString(), DiscoveryMessage.class)));
+        }
 
-            if (Arrays.equals(Arrays.copyOfRange(decodedMessage, 0, protocol.getBytes().length), protocol.getBytes())) {
-                if (protocol == V3_4) {
-                    // Remove 3.4 header
-                    decodedMessage = Arrays.copyOfRange(decodedMessage, 15, decodedMessage.length);
-                }
+        int decodedStart = 0;
+        int decodedEnd;
+        if (decryptBuffer.capacity() < payload.remaining()) {
+            decryptBuffer = ByteBuffer.allocate(payload.remaining());
+        }
+        decryptBuffer.clear();
+        try {
+            decodedEnd = cryptoContext.decrypt(payload, decryptBuffer);
+        } catch (GeneralSecurityException e) {
+            logger.warn("{}{}: Decryption failed: {}", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), e.getMessage());
+            return null;
+        }
+        byte[] decodedMessage = decryptBuffer.array();
+        if (protocol == V3_4 && decodedEnd > 0) {
+            // remove padding
+            int paddingLength = getPaddingLength(decodedMessage, decodedEnd);
+            if (paddingLength < 0) {
+                logger.warn("{}{}: Decoding failed: Invalid padding.", deviceId,
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
+                return null;
             }
-            if (logger.isTraceEnabled()) {
-                logger.trace("{}{}: Decoded raw payload: {}", deviceId,
-                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""),
-                        HexUtils.bytesToHex(decodedMessage));
+            decodedEnd -= paddingLength;
+            if (startsWith(ByteBuffer.wrap(decodedMessage, 0, decodedEnd), protocol.getBytes())) {
+                // Remove 3.4 header
+                decodedStart = Math.min(15, decodedEnd);
             }
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("{}{}: Decoded raw payload: {}", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""),
+                    HexUtils.bytesToHex(Arrays.copyOfRange(decodedMessage, decodedStart, decodedEnd)));
+        }
 
-            try {
-                String decodedString = new String(decodedMessage).trim();
-                if (commandType == DP_QUERY && "json obj data unvalid".equals(decodedString)) {
+        try {
+            if (commandType == STATUS || commandType == DP_QUERY) {
+                // skip leading whitespace like String.trim() does, trailing bytes after the JSON are ignored
+                while (decodedStart < decodedEnd && decodedMessage[decodedStart] <= ' ') {
+                    decodedStart++;
+                }
+                if (commandType == DP_QUERY && startsWith(ByteBuffer.wrap(decodedMessage, decodedStart,
+                        decodedEnd - decodedStart), DP_QUERY_NOT_SUPPORTED_RESPONSE)) {
                     // "json obj data unvalid" would also result in a JSONSyntaxException but is a known error when
                     // DP_QUERY is not supported by the device. Using a CONTROL message with null values is a known
                     // workaround, cf. https://github.com/codetheweb/tuyapi/blob/master/index.js#L156
                     logger.info("{}{}: DP_QUERY not supported. Trying to request with CONTROL.", deviceId,
                             Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
-                    m = new MessageWrapper<>(DP_QUERY_NOT_SUPPORTED, Map.of());
-                } else if (commandType == STATUS || commandType == DP_QUERY) {
-                    m = new MessageWrapper<>(commandType,
-                            Objects.requireNonNull(gson.fromJson(decodedString, TcpStatusPayload.class)));
-                } else if (commandType == UDP_NEW || commandType == BROADCAST_LPV34) {
-                    m = new MessageWrapper<>(commandType,
-                            Objects.requireNonNull(gson.fromJson(decodedString, DiscoveryMessage.class)));
-                } else {
-                    m = new MessageWrapper<>(commandType, decodedMessage);
+                    return new MessageWrapper<>(DP_QUERY_NOT_SUPPORTED, Map.of());
                 }
-            } catch (JsonSyntaxException e) {
-                logger.warn("{}{} failed to parse JSON: {}", deviceId,
-                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), e.getMessage());
-                return;
+                // status messages are frequent (e.g. power meters), so they are parsed directly from the buffer
+                return new MessageWrapper<>(commandType,
+                        statusPayloadReader.read(decodedMessage, decodedStart, decodedEnd));
+            } else if (commandType == UDP_NEW || commandType == BROADCAST_LPV34) {
+                String decodedString = new String(decodedMessage, decodedStart, decodedEnd - decodedStart,
+                        StandardCharsets.UTF_8).trim();
+                return new MessageWrapper<>(commandType,
+                        Objects.requireNonNull(gson.fromJson(decodedString, DiscoveryMessage.class)));
+            } else {
+                // the decryption buffer is re-used, so we need to copy the content
+                return new MessageWrapper<>(commandType,
+                        Arrays.copyOfRange(decodedMessage, decodedStart, decodedEnd));
+            }
+        } catch (JsonSyntaxException e) {
+            logger.warn("{}{} failed to parse JSON: {}", deviceId,
+                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the length of the PKCS#7 padding at the end of the decrypted data
+     *
+     * @param data the decrypted data
+     * @param length the number of decrypted bytes
+     * @return the padding length (1 to 16) or -1 if the padding is invalid
+     */
+    static int getPaddingLength(byte[] data, int length) {
+        if (length <= 0) {
+            return -1;
+        }
+        int paddingLength = data[length - 1] & 0xff;
+        if (paddingLength < 1 || paddingLength > 16 || paddingLength > length) {
+            return -1;
+        }
+        for (int i = length - paddingLength; i < length - 1; i++) {
+            if ((data[i] & 0xff) != paddingLength) {
+                return -1;
+            }
+        }
+        return paddingLength;
+    }
+
+    private static boolean equals(ByteBuf buffer, int index, byte[] expected) {
+        if (buffer.readableBytes() < index + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.getByte(index + i) != expected[i]) {
+                return false;
             }
         }
+        return true;
+    }
 
-        logger.debug("{}{}: Received {}", deviceId, Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), m);
-        out.add(m);
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(buffer.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 }
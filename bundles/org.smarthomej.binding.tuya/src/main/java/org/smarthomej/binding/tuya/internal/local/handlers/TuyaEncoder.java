@@ -21,45 +21,61 @@ import static org.smarthomej.binding.tuya.internal.local.CommandType.SESS_KEY_NE
 import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_3;
 import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_4;
 import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.*;
-import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.SESSION_KEY_ATTR;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Base64;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
-import org.jose4j.base64url.Base64;
+import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.util.HexUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.CryptoContext;
 import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
 import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
 import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
  * The {@link TuyaEncoder} is a Netty Encoder for encoding Tuya Local messages
  *
+ * The JSON payload is streamed to a pooled buffer and encrypted directly into the outbound buffer.
+ *
  * Parts of this code are inspired by the TuyAPI project (see notice file)
  *
  * @author Jan N. Klug - Initial contribution
  */
 @NonNullByDefault
 public class TuyaEncoder extends MessageToByteEncoder<MessageWrapper<?>> {
+    private static final byte[] HEADER_33 = Arrays.copyOf("3.3".getBytes(StandardCharsets.UTF_8), 15);
+    private static final byte[] HEADER_34 = Arrays.copyOf("3.4".getBytes(StandardCharsets.UTF_8), 15);
+
     private final Logger logger = LoggerFactory.getLogger(TuyaEncoder.class);
 
     private final Gson gson;
 
+    // the encoder is only called from the channel's event loop, so these can be re-used
+    private final ByteBufWriter jsonWriter = new ByteBufWriter();
+    private final byte[] hmacBuffer = new byte[CryptoContext.HMAC_LENGTH];
+
     private int sequenceNo = 0;
 
     public TuyaEncoder(Gson gson) {
@@ -80,38 +96,30 @@ public class TuyaEncoder extends MessageToByteEncoder<MessageWrapper<?>> {
         String deviceId = ctx.channel().attr(DEVICE_ID_ATTR).get();
         ProtocolVersion protocol = ctx.channel().attr(PROTOCOL_ATTR).get();
         byte[] sessionKey = ctx.channel().attr(SESSION_KEY_ATTR).get();
+        CryptoContext cryptoContext = CryptoContext.fromChannel(ctx.channel());
+        if (cryptoContext == null) {
+            return;
+        }
 
-        byte[] payloadBytes;
+        ByteBuf payload;
 
         // prepare payload
         if (msg.content == null || msg.content instanceof Map<?, ?>) {
-            Map<String, Object> content = (Map<String, Object>) msg.content;
-            Map<String, Object> payload = new HashMap<>();
-            if (protocol == V3_4) {
-                payload.put("protocol", 5);
-                payload.put("t", System.currentTimeMillis() / 1000);
-                Map<String, Object> data = new HashMap<>();
-                data.put("cid", deviceId);
-                data.put("ctype", 0);
-                if (content != null) {
-                    data.putAll(content);
-                }
-                payload.put("data", data);
-            } else {
-                payload.put("devId", deviceId);
-                payload.put("gwId", deviceId);
-                payload.put("uid", deviceId);
-                payload.put("t", System.currentTimeMillis() / 1000);
-                if (content != null) {
-                    payload.putAll(content);
-                }
+            payload = ctx.alloc().buffer();
+            try {
+                writeJsonPayload(payload, (@Nullable Map<String, @Nullable Object>) msg.content, deviceId, protocol);
+            } catch (IOException | JsonIOException e) {
+                payload.release();
+                logger.warn("{}{}: Failed to create JSON payload for {}: {}", deviceId,
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), msg, e.getMessage());
+                return;
             }
 
-            logger.debug("{}{}: Sending {}, payload {}", deviceId,
-                    Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), msg.commandType, payload);
-
-            String json = gson.toJson(payload);
-            payloadBytes = json.getBytes(StandardCharsets.UTF_8);
+            if (logger.isDebugEnabled()) {
+                logger.debug("{}{}: Sending {}, payload {}", deviceId,
+                        Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""), msg.commandType,
+                        payload.toString(StandardCharsets.UTF_8));
+            }
         } else if (msg.content instanceof byte[]) {
             byte[] contentBytes = Objects.requireNonNull((byte[]) msg.content);
             if (logger.isDebugEnabled()) {
@@ -119,124 +127,209 @@ public class TuyaEncoder extends MessageToByteEncoder<MessageWrapper<?>> {
                         Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""),
                         HexUtils.bytesToHex(contentBytes));
             }
-            payloadBytes = contentBytes.clone();
+            payload = Unpooled.wrappedBuffer(contentBytes);
         } else {
             logger.warn("Can't determine payload type for '{}', discarding.", msg.content);
             return;
         }
 
-        Optional<byte[]> bufferOptional = protocol == V3_4 ? encode34(msg.commandType, payloadBytes, sessionKey)
-                : encodePre34(msg.commandType, payloadBytes, sessionKey, protocol);
-
-        bufferOptional.ifPresentOrElse(buffer -> {
-            if (logger.isTraceEnabled()) {
-                logger.trace("{}{}: Sending encoded '{}'", deviceId, ctx.channel().remoteAddress(),
-                        HexUtils.bytesToHex(buffer));
+        int startIndex = out.writerIndex();
+        try {
+            if (protocol == V3_4) {
+                encode34(msg.commandType, payload, cryptoContext, out);
+            } else {
+                encodePre34(msg.commandType, payload, cryptoContext, sessionKey, protocol, out);
             }
+        } catch (GeneralSecurityException e) {
+            logger.warn("{}{}: Encryption failed: {}", deviceId, ctx.channel().remoteAddress(), e.getMessage());
+            // discard everything that was already written
+            out.writerIndex(startIndex);
+            return;
+        } finally {
+            payload.release();
+        }
+        // report the used sequence number back, so replies can be correlated
+        msg.sequenceNo = sequenceNo;
 
-            out.writeBytes(buffer);
-        }, () -> logger.debug("{}{}: Encoding returned an empty buffer", deviceId, ctx.channel().remoteAddress()));
+        if (logger.isTraceEnabled()) {
+            logger.trace("{}{}: Sending encoded '{}'", deviceId, ctx.channel().remoteAddress(),
+                    ByteBufUtil.hexDump(out, startIndex, out.writerIndex() - startIndex));
+        }
     }
 
-    private Optional<byte[]> encodePre34(CommandType commandType, byte[] payload, byte[] deviceKey,
-            ProtocolVersion protocol) {
-        byte[] payloadBytes = payload;
-        if (protocol == V3_3) {
-            // Always encrypted
-            payloadBytes = CryptoUtil.encryptAesEcb(payloadBytes, deviceKey, true);
-            if (payloadBytes == null) {
-                return Optional.empty();
+    private void writeJsonPayload(ByteBuf buffer, @Nullable Map<String, @Nullable Object> content, String deviceId,
+            ProtocolVersion protocol) throws IOException {
+        jsonWriter.setBuffer(buffer);
+        try (JsonWriter writer = gson.newJsonWriter(jsonWriter)) {
+            writer.beginObject();
+            if (protocol == V3_4) {
+                writer.name("protocol").value(5);
+                writer.name("t").value(System.currentTimeMillis() / 1000);
+                writer.name("data").beginObject();
+                // sub-devices of a gateway are addressed by their cid, the device itself by its id
+                Object cid = content != null ? content.get("cid") : null;
+                writer.name("cid").value(cid instanceof String ? (String) cid : deviceId);
+                writer.name("ctype").value(0);
+                writeContent(writer, content, "cid");
+                writer.endObject();
+            } else {
+                writer.name("devId").value(deviceId);
+                writer.name("gwId").value(deviceId);
+                writer.name("uid").value(deviceId);
+                writer.name("t").value(System.currentTimeMillis() / 1000);
+                writeContent(writer, content, null);
             }
+            writer.endObject();
+        } finally {
+            jsonWriter.setBuffer(null);
+        }
+    }
 
-            if (commandType != DP_QUERY && commandType != CommandType.DP_REFRESH) {
-                // Add 3.3 header
-                ByteBuffer buffer = ByteBuffer.allocate(payloadBytes.length + 15);
-                buffer.put("3.3".getBytes(StandardCharsets.UTF_8));
-                buffer.position(15);
-                buffer.put(payloadBytes);
-                payloadBytes = buffer.array();
+    private void writeContent(JsonWriter writer, @Nullable Map<String, @Nullable Object> content,
+            @Nullable String skippedKey) throws IOException {
+        if (content == null) {
+            return;
+        }
+        for (Map.Entry<String, @Nullable Object> entry : content.entrySet()) {
+            Object value = entry.getValue();
+            if (value != null && !entry.getKey().equals(skippedKey)) {
+                // null values are omitted, same as Gson does for maps
+                writer.name(entry.getKey());
+                gson.toJson(value, value.getClass(), writer);
             }
+        }
+    }
+
+    private void encodePre34(CommandType commandType, ByteBuf payload, CryptoContext cryptoContext, byte[] deviceKey,
+            ProtocolVersion protocol, ByteBuf out) throws GeneralSecurityException {
+        int startIndex = out.writerIndex();
+
+        if (protocol == V3_3) {
+            // Always encrypted, add 3.3 header for all commands except DP_QUERY and DP_REFRESH
+            boolean addHeader = commandType != DP_QUERY && commandType != DP_REFRESH;
+            int encryptedLength = cryptoContext.getEncryptedSize(payload.readableBytes(), true);
+            int payloadLength = encryptedLength + (addHeader ? HEADER_33.length : 0);
+            // payload + 24 bytes for prefix, sequence, command, length, crc, and suffix
+            out.ensureWritable(payloadLength + 24);
+            writeHeader(out, commandType, payloadLength + 8);
+            if (addHeader) {
+                out.writeBytes(HEADER_33);
+            }
+            encryptTo(out, payload, encryptedLength, cryptoContext);
         } else if (CommandType.CONTROL.equals(commandType)) {
             // Protocol 3.1 and below, only encrypt data if necessary
-            byte[] encryptedPayload = CryptoUtil.encryptAesEcb(payloadBytes, deviceKey, true);
-            if (encryptedPayload == null) {
-                return Optional.empty();
-            }
-            String payloadStr = Base64.encode(encryptedPayload);
-            String hash = CryptoUtil
-                    .md5("data=" + payloadStr + "||lpv=" + protocol.getString() + "||" + new String(deviceKey));
-
-            // Create byte buffer from hex data
-            payloadBytes = (protocol + hash.substring(8, 24) + payloadStr).getBytes(StandardCharsets.UTF_8);
+            byte[] encryptedPayload = cryptoContext.encrypt(ByteBufUtil.getBytes(payload), true);
+            String payloadStr = Base64.getEncoder().encodeToString(encryptedPayload);
+            String hash = CryptoUtil.md5(
+                    "data=" + payloadStr + "||lpv=" + protocol.getString() + "||" + new String(deviceKey));
+            byte[] payloadBytes = (protocol.getString() + hash.substring(8, 24) + payloadStr)
+                    .getBytes(StandardCharsets.UTF_8);
+
+            out.ensureWritable(payloadBytes.length + 24);
+            writeHeader(out, commandType, payloadBytes.length + 8);
+            out.writeBytes(payloadBytes);
+        } else {
+            // Protocol 3.1 and below, unencrypted
+            out.ensureWritable(payload.readableBytes() + 24);
+            writeHeader(out, commandType, payload.readableBytes() + 8);
+            out.writeBytes(payload);
         }
 
-        // Allocate buffer with room for payload + 24 bytes for
-        // prefix, sequence, command, length, crc, and suffix
-        ByteBuffer buffer = ByteBuffer.allocate(payloadBytes.length + 24);
+        // Calculate and add checksum for header and payload
+        out.writeInt(CryptoUtil.calculateChecksum(out.nioBuffer(startIndex, out.writerIndex() - startIndex)));
 
-        // Add prefix, command, and length
-        buffer.putInt(0x000055AA);
-        buffer.putInt(++sequenceNo);
-        buffer.putInt(commandType.getCode());
-        buffer.putInt(payloadBytes.length + 8);
+        // Add postfix
+        out.writeInt(0x0000AA55);
+    }
+
+    private void encode34(CommandType commandType, ByteBuf payload, CryptoContext cryptoContext, ByteBuf out)
+            throws GeneralSecurityException {
+        int startIndex = out.writerIndex();
 
-        // Add payload
-        buffer.put(payloadBytes);
+        boolean addHeader = commandType != DP_QUERY && commandType != HEART_BEAT && commandType != DP_QUERY_NEW
+                && commandType != SESS_KEY_NEG_START && commandType != SESS_KEY_NEG_FINISH
+                && commandType != DP_REFRESH;
+        int rawLength = payload.readableBytes() + (addHeader ? HEADER_34.length : 0);
+        // the padding used by protocol 3.4 is the same as PKCS5/PKCS7
+        int encryptedLength = cryptoContext.getEncryptedSize(rawLength, true);
+
+        // payload + 52 bytes for prefix, sequence, command, length, hmac, and suffix
+        out.ensureWritable(encryptedLength + 52);
+        writeHeader(out, commandType, encryptedLength + 0x24);
+
+        // Add encrypted payload
+        ByteBuffer encryptedPayload = out.nioBuffer(out.writerIndex(), encryptedLength);
+        if (addHeader) {
+            cryptoContext.encryptUpdate(ByteBuffer.wrap(HEADER_34), encryptedPayload, true);
+        }
+        cryptoContext.encrypt(payload.nioBuffer(), encryptedPayload, true);
+        out.writerIndex(out.writerIndex() + encryptedLength);
 
-        // Calculate and add checksum
-        int calculatedCrc = CryptoUtil.calculateChecksum(buffer.array(), 0, payloadBytes.length + 16);
-        buffer.putInt(calculatedCrc);
+        // Calculate and add checksum for header and payload
+        cryptoContext.hmac(out.nioBuffer(startIndex, out.writerIndex() - startIndex), hmacBuffer, 0);
+        out.writeBytes(hmacBuffer);
 
         // Add postfix
-        buffer.putInt(0x0000AA55);
-
-        return Optional.of(buffer.array());
+        out.writeInt(0x0000AA55);
     }
 
-    private Optional<byte[]> encode34(CommandType commandType, byte[] payloadBytes, byte[] sessionKey) {
-        byte[] rawPayload = payloadBytes;
+    private void writeHeader(ByteBuf out, CommandType commandType, int length) {
+        // Add prefix, sequence, command, and length
+        out.writeInt(0x000055AA);
+        out.writeInt(++sequenceNo);
+        out.writeInt(commandType.getCode());
+        out.writeInt(length);
+    }
 
-        if (commandType != DP_QUERY && commandType != HEART_BEAT && commandType != DP_QUERY_NEW
-                && commandType != SESS_KEY_NEG_START && commandType != SESS_KEY_NEG_FINISH
-                && commandType != DP_REFRESH) {
-            rawPayload = new byte[payloadBytes.length + 15];
-            System.arraycopy("3.4".getBytes(StandardCharsets.UTF_8), 0, rawPayload, 0, 3);
-            System.arraycopy(payloadBytes, 0, rawPayload, 15, payloadBytes.length);
-        }
+    private void encryptTo(ByteBuf out, ByteBuf payload, int encryptedLength, CryptoContext cryptoContext)
+            throws GeneralSecurityException {
+        cryptoContext.encrypt(payload.nioBuffer(), out.nioBuffer(out.writerIndex(), encryptedLength), true);
+        out.writerIndex(out.writerIndex() + encryptedLength);
+    }
 
-        byte padding = (byte) (0x10 - (rawPayload.length & 0xf));
-        byte[] padded = new byte[rawPayload.length + padding];
-        Arrays.fill(padded, padding);
-        System.arraycopy(rawPayload, 0, padded, 0, rawPayload.length);
+    /**
+     * The {@link ByteBufWriter} writes UTF-8 encoded characters to a {@link ByteBuf}
+     */
+    private static class ByteBufWriter extends Writer {
+        private @Nullable ByteBuf buffer;
 
-        byte[] encryptedPayload = CryptoUtil.encryptAesEcb(padded, sessionKey, false);
-        if (encryptedPayload == null) {
-            return Optional.empty();
+        public void setBuffer(@Nullable ByteBuf buffer) {
+            this.buffer = buffer;
         }
 
-        ByteBuffer buffer = ByteBuffer.allocate(encryptedPayload.length + 52);
+        private ByteBuf getBuffer() throws IOException {
+            ByteBuf buffer = this.buffer;
+            if (buffer == null) {
+                throw new IOException("No buffer set");
+            }
+            return buffer;
+        }
 
-        // Add prefix, command, and length
-        buffer.putInt(0x000055AA);
-        buffer.putInt(++sequenceNo);
-        buffer.putInt(commandType.getCode());
-        buffer.putInt(encryptedPayload.length + 0x24);
+        @Override
+        public void write(int c) throws IOException {
+            if (c < 0x80) {
+                getBuffer().writeByte(c);
+            } else {
+                ByteBufUtil.writeUtf8(getBuffer(), String.valueOf((char) c));
+            }
+        }
 
-        // Add payload
-        buffer.put(encryptedPayload);
+        @Override
+        public void write(@NonNullByDefault({}) char[] cbuf, int off, int len) throws IOException {
+            ByteBufUtil.writeUtf8(getBuffer(), CharBuffer.wrap(cbuf, off, len));
+        }
 
-        // Calculate and add checksum
-        byte[] checksumContent = new byte[encryptedPayload.length + 16];
-        System.arraycopy(buffer.array(), 0, checksumContent, 0, encryptedPayload.length + 16);
-        byte[] checksum = CryptoUtil.hmac(checksumContent, sessionKey);
-        if (checksum == null) {
-            return Optional.empty();
+        @Override
+        public void write(@NonNullByDefault({}) String str, int off, int len) throws IOException {
+            ByteBufUtil.writeUtf8(getBuffer(), str, off, off + len);
         }
-        buffer.put(checksum);
 
-        // Add postfix
-        buffer.putInt(0x0000AA55);
+        @Override
+        public void flush() {
+        }
 
-        return Optional.of(buffer.array());
+        @Override
+        public void close() {
+        }
     }
 }
@@ -23,7 +23,9 @@ import org.openhab.core.util.HexUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.CryptoContext;
 import org.smarthomej.binding.tuya.internal.local.DeviceStatusListener;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
 import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
 import org.smarthomej.binding.tuya.internal.local.TuyaDevice;
 import org.smarthomej.binding.tuya.internal.local.dto.TcpStatusPayload;
@@ -88,14 +90,21 @@ public class TuyaMessageHandler extends ChannelDuplexHandler {
 
         if (msg instanceof MessageWrapper<?> m) {
             if (m.commandType == CommandType.DP_QUERY || m.commandType == CommandType.STATUS) {
-                Map<Integer, Object> stateMap = null;
+                DpStatus status = null;
+                String cid = "";
                 if (m.content instanceof TcpStatusPayload) {
                     TcpStatusPayload payload = (TcpStatusPayload) Objects.requireNonNull(m.content);
-                    stateMap = payload.protocol == 4 ? payload.data.dps : payload.dps;
+                    status = payload.protocol == 4 ? payload.data.dps : payload.dps;
+                    cid = payload.protocol == 4 ? payload.data.cid : payload.cid;
                 }
 
-                if (stateMap != null && !stateMap.isEmpty()) {
-                    deviceStatusListener.processDeviceStatus(stateMap);
+                if (status != null && !status.isEmpty()) {
+                    if (cid.isEmpty()) {
+                        deviceStatusListener.processDeviceStatus(status);
+                    } else {
+                        // status of a sub-device, e.g. if this is a gateway
+                        deviceStatusListener.processDeviceStatus(cid, status.toMap());
+                    }
                 }
             } else if (m.commandType == CommandType.DP_QUERY_NOT_SUPPORTED) {
                 deviceStatusListener.processDeviceStatus(Map.of());
@@ -108,20 +117,26 @@ public class TuyaMessageHandler extends ChannelDuplexHandler {
                 }
                 byte[] sessionKey = ctx.channel().attr(TuyaDevice.SESSION_KEY_ATTR).get();
                 byte[] sessionRandom = ctx.channel().attr(TuyaDevice.SESSION_RANDOM_ATTR).get();
-                byte[] localKeyHmac = CryptoUtil.hmac(sessionRandom, sessionKey);
+                CryptoContext cryptoContext = CryptoContext.fromChannel(ctx.channel());
+                if (cryptoContext == null) {
+                    logger.warn("{}{}: Session key negotiation failed because crypto context is not available.",
+                            deviceId, Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
+                    return;
+                }
+                byte[] localKeyHmac = cryptoContext.hmac(sessionRandom);
                 byte[] localKeyExpectedHmac = Arrays.copyOfRange((byte[]) m.content, 16, 16 + 32);
 
                 if (!Arrays.equals(localKeyHmac, localKeyExpectedHmac)) {
                     logger.warn(
                             "{}{}: Session key negotiation failed during Hmac validation: calculated {}, expected {}",
                             deviceId, Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""),
-                            localKeyHmac != null ? HexUtils.bytesToHex(localKeyHmac) : "<null>",
+                            HexUtils.bytesToHex(localKeyHmac),
                             HexUtils.bytesToHex(localKeyExpectedHmac));
                     return;
                 }
 
                 byte[] remoteKey = Arrays.copyOf((byte[]) m.content, 16);
-                byte[] remoteKeyHmac = CryptoUtil.hmac(remoteKey, sessionKey);
+                byte[] remoteKeyHmac = cryptoContext.hmac(remoteKey);
                 MessageWrapper<?> response = new MessageWrapper<>(CommandType.SESS_KEY_NEG_FINISH, remoteKeyHmac);
 
                 ctx.channel().writeAndFlush(response);
@@ -132,6 +147,7 @@ public class TuyaMessageHandler extends ChannelDuplexHandler {
                             Objects.requireNonNullElse(ctx.channel().remoteAddress(), ""));
                     return;
                 }
+                // the crypto context is re-created with the new key on next use
                 ctx.channel().attr(TuyaDevice.SESSION_KEY_ATTR).set(newSessionKey);
             }
         }
@@ -12,6 +12,7 @@
  */
 package org.smarthomej.binding.tuya.internal.util;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -21,6 +22,7 @@ import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Random;
+import java.util.zip.CRC32;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -94,6 +96,36 @@ public class CryptoUtil {
      * @return the calculated checksum
      */
     public static int calculateChecksum(byte[] bytes, int start, int end) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, start, end - start);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Compute a Tuya compatible checksum
+     *
+     * @param buffer a {@link ByteBuffer} containing the input data between position and limit (the position is not
+     *            changed)
+     * @return the calculated checksum
+     */
+    public static int calculateChecksum(ByteBuffer buffer) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.duplicate());
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Compute a Tuya compatible checksum with a lookup table
+     * <p>
+     * This is the reference implementation for {@link #calculateChecksum(byte[], int, int)}. It is only used for
+     * tests, {@link CRC32} calculates the same value but is considerably faster.
+     *
+     * @param bytes an {@link byte[]} containing the input data
+     * @param start the start position of the checksum calculation
+     * @param end the end position of the checksum position
+     * @return the calculated checksum
+     */
+    static int calculateChecksumWithTable(byte[] bytes, int start, int end) {
         int crc = 0xffffffff;
 
         for (int i = start; i < end; i++) {
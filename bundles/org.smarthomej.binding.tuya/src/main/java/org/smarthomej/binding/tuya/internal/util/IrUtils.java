@@ -13,9 +13,11 @@
 package org.smarthomej.binding.tuya.internal.util;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.slf4j.Logger;
@@ -25,6 +27,9 @@ import org.slf4j.LoggerFactory;
  * The {@link IrUtils} is a support class for decode/encode infra-red codes
  * <p>
  * Based on https://github.com/jasonacox/tinytuya/blob/master/tinytuya/Contrib/IRRemoteControlDevice.py
+ * <p>
+ * Pulses are handled as primitive arrays. Encoded codes are cached, because the same codes (e.g. "power" of a TV)
+ * are usually sent again and again.
  *
  * @author Dmitry Pyatykh - Initial contribution
  */
@@ -32,6 +37,17 @@ import org.slf4j.LoggerFactory;
 public class IrUtils {
     private static final Logger logger = LoggerFactory.getLogger(IrUtils.class);
 
+    // start mark and space, 32 bits with pulse and space each, trailing pulse and space
+    private static final int FRAME_PULSES = 68;
+    private static final int CODE_CACHE_SIZE = 64;
+    private static final PulseParams PULSE_PARAMS = new PulseParams();
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final Map<Long, String> NEC_CODE_CACHE = Collections.synchronizedMap(new CodeCache());
+    private static final Map<Long, String> SAMSUNG_CODE_CACHE = Collections.synchronizedMap(new CodeCache());
+    private static final ThreadLocal<byte[]> ENCODE_BUFFER = ThreadLocal
+            .withInitial(() -> new byte[FRAME_PULSES * 2]);
+
     private IrUtils() {
     }
 
@@ -42,12 +58,13 @@ public class IrUtils {
      * @return the nec-format code
      */
     public static String base64ToNec(String base64Code) {
-        List<Integer> pulses = base64ToPulse(base64Code);
-        if (!pulses.isEmpty()) {
-            List<String> res = pulsesToNec(pulses);
-            if (!res.isEmpty()) {
-                return res.get(0);
+        int[] pulses = base64ToPulse(base64Code);
+        if (pulses.length > 0) {
+            long[] codes = pulsesToWidthEncoded(pulses, 9000);
+            if (codes.length == 0) {
+                throw new IllegalArgumentException("[tuya:ir-controller] No ir key-code detected");
             }
+            return necToString(codes[0]);
         }
         throw new IllegalArgumentException("No pulses found or conversion result is empty.");
     }
@@ -59,242 +76,231 @@ public class IrUtils {
      * @return the samsung-format code
      */
     public static String base64ToSamsung(String base64Code) {
-        List<Integer> pulses = base64ToPulse(base64Code);
-        if (!pulses.isEmpty()) {
-            List<String> res = pulsesToSamsung(pulses);
-            if (!res.isEmpty()) {
-                return res.get(0);
+        int[] pulses = base64ToPulse(base64Code);
+        if (pulses.length > 0) {
+            long[] codes = pulsesToWidthEncoded(pulses, 4500);
+            if (codes.length > 0) {
+                return samsungToString(codes[0]);
             }
         }
         throw new IllegalArgumentException("No pulses found or conversion result is empty.");
     }
 
-    private static List<Integer> base64ToPulse(String base64Code) {
-        List<Integer> pulses = new ArrayList<>();
+    /**
+     * Convert Nec-format code to base64-format code from Tuya
+     *
+     * @param code nec-format code
+     * @return the string
+     */
+    public static String necToBase64(long code) {
+        return NEC_CODE_CACHE.computeIfAbsent(code, c -> widthEncodedToBase64(c, PULSE_PARAMS));
+    }
+
+    /**
+     * Convert Samsung-format code to base64-format code from Tuya
+     *
+     * @param code samsung-format code
+     * @return the string
+     */
+    public static String samsungToBase64(long code) {
+        return SAMSUNG_CODE_CACHE.computeIfAbsent(code, c -> widthEncodedToBase64(c, PULSE_PARAMS));
+    }
+
+    private static int[] base64ToPulse(String base64Code) {
         String key = (base64Code.length() % 4 == 1 && base64Code.startsWith("1")) ? base64Code.substring(1)
                 : base64Code;
-        byte[] raw_bytes = Base64.getDecoder().decode(key.getBytes(StandardCharsets.UTF_8));
-
-        int i = 0;
-        try {
-            while (i < raw_bytes.length) {
-                int word = ((raw_bytes[i] & 0xFF) + (raw_bytes[i + 1] & 0xFF) * 256) & 0xFFFF;
-                pulses.add(word);
-                i += 2;
-
-                // dirty hack because key not aligned by 4 byte ?
-                if (i >= raw_bytes.length) {
-                    break;
-                }
-            }
-        } catch (ArrayIndexOutOfBoundsException e) {
-            logger.warn("Failed to convert base64 key code to pulses: {}", e.getMessage());
+        byte[] rawBytes = Base64.getDecoder().decode(key.getBytes(StandardCharsets.UTF_8));
+
+        if (rawBytes.length % 2 != 0) {
+            // key not aligned, the last byte is ignored
+            logger.warn("Failed to convert base64 key code to pulses: odd number of bytes ({})", rawBytes.length);
+        }
+        int[] pulses = new int[rawBytes.length / 2];
+        for (int i = 0; i < pulses.length; i++) {
+            pulses[i] = (rawBytes[2 * i] & 0xFF) | (rawBytes[2 * i + 1] & 0xFF) << 8;
         }
         return pulses;
     }
 
-    private static List<Long> pulsesToWidthEncoded(List<Integer> pulses, Integer startMark) {
-        List<Long> ret = new ArrayList<>();
-        if (pulses.size() < 68) {
+    private static long[] pulsesToWidthEncoded(int[] pulses, int startMark) {
+        if (pulses.length < FRAME_PULSES) {
             throw new IllegalArgumentException("Not enough pulses");
         }
 
-        while (pulses.size() >= 68 && (pulses.get(0) < (startMark * 0.75) || pulses.get(0) > (startMark * 1.25))) {
-            pulses.remove(0);
+        int position = 0;
+        while (pulses.length - position >= FRAME_PULSES && !isStartMark(pulses[position], startMark)) {
+            position++;
         }
 
-        while (pulses.size() >= 68) {
-            if (pulses.get(0) < startMark * 0.75 || pulses.get(0) > startMark * 1.25) {
+        // each frame consumes start mark, start space and 32 bits, the trailing pulse is checked as next start mark
+        int remaining = pulses.length - position;
+        long[] codes = new long[remaining >= FRAME_PULSES ? (remaining - FRAME_PULSES) / 66 + 1 : 0];
+        int count = 0;
+        while (pulses.length - position >= FRAME_PULSES) {
+            if (!isStartMark(pulses[position], startMark)) {
                 throw new IllegalArgumentException(
                         "Pulse length is less than 3/4 startMark or more than 5/4 startMark");
             }
+            // skip start mark and space
+            position += 2;
 
-            // remove two first elements
-            pulses.remove(0);
-            pulses.remove(0);
-
-            int res = 0;
-            long x = 0L;
-
+            long code = 0L;
             for (int i = 31; i >= 0; i--) {
-                res = pulses.get(1) >= (Integer) 1125 ? 1 : 0;
-
-                x |= (long) (res) << i;
-
-                // remove two first elements
-                pulses.remove(0);
-                pulses.remove(0);
+                // the length of the space determines the bit
+                if (pulses[position + 1] >= 1125) {
+                    code |= 1L << i;
+                }
+                position += 2;
             }
 
-            if (!ret.contains(x)) {
-                ret.add(x);
+            if (!contains(codes, count, code)) {
+                codes[count++] = code;
             }
         }
 
-        return ret;
+        return count == codes.length ? codes : Arrays.copyOf(codes, count);
     }
 
-    private static List<Long> widthEncodedToPulses(long data, PulseParams param) {
-        List<Long> pulses = new ArrayList<>();
-        pulses.add(param.startMark);
-        pulses.add(param.startSpace);
+    private static boolean isStartMark(int pulse, int startMark) {
+        return pulse >= startMark * 0.75 && pulse <= startMark * 1.25;
+    }
 
-        for (int i = 31; i >= 0; i--) {
-            if ((data & (1L << i)) > 0L) {
-                pulses.add(param.pulseOne);
-                pulses.add(param.spaceOne);
-            } else {
-                pulses.add(param.pulseZero);
-                pulses.add(param.spaceZero);
+    private static boolean contains(long[] codes, int count, long code) {
+        for (int i = 0; i < count; i++) {
+            if (codes[i] == code) {
+                return true;
             }
         }
-        pulses.add(param.trailingPulse);
-        pulses.add(param.trailingSpace);
-        return pulses;
+        return false;
     }
 
-    private static long mirrorBits(long data) {
-        int shift = 8 - 1;
-        long out = 0;
+    private static String widthEncodedToBase64(long data, PulseParams param) {
+        byte[] bytes = ENCODE_BUFFER.get();
+        int position = writePulse(bytes, 0, param.startMark);
+        position = writePulse(bytes, position, param.startSpace);
 
-        for (int i = 0; i < 8; i++) {
+        for (int i = 31; i >= 0; i--) {
             if ((data & (1L << i)) > 0L) {
-                out |= 1L << shift;
+                position = writePulse(bytes, position, param.pulseOne);
+                position = writePulse(bytes, position, param.spaceOne);
+            } else {
+                position = writePulse(bytes, position, param.pulseZero);
+                position = writePulse(bytes, position, param.spaceZero);
             }
-            shift -= 1;
         }
-        return out & 0xFF;
+        position = writePulse(bytes, position, param.trailingPulse);
+        writePulse(bytes, position, param.trailingSpace);
+
+        return Base64.getEncoder().encodeToString(bytes);
     }
 
-    private static List<String> pulsesToNec(List<Integer> pulses) {
-        List<String> ret = new ArrayList<>();
-        List<Long> res = pulsesToWidthEncoded(pulses, 9000);
-        if (res.isEmpty()) {
-            throw new IllegalArgumentException("[tuya:ir-controller] No ir key-code detected");
-        }
-        for (Long code : res) {
-            long addr = mirrorBits((code >> 24) & 0xFF);
-            long addrNot = mirrorBits((code >> 16) & 0xFF);
-            long data = mirrorBits((code >> 8) & 0xFF);
-            long dataNot = mirrorBits(code & 0xFF);
-
-            if (addr != (addrNot ^ 0xFF)) {
-                addr = (addr << 8) | addrNot;
-            }
-            String d = String.format(
-                    "{ \"type\": \"nec\", \"uint32\": %d, \"address\": None, \"data\": None, \"hex\": \"%08X\" }", code,
-                    code);
-            if (data == (dataNot ^ 0xFF)) {
-                d = String.format(
-                        "{ \"type\": \"nec\", \"uint32\": %d, \"address\": %d, \"data\": %d, \"hex\": \"%08X\" }", code,
-                        addr, data, code);
-            }
-            ret.add(d);
-        }
-        return ret;
+    private static int writePulse(byte[] bytes, int position, int pulse) {
+        bytes[position] = (byte) pulse;
+        bytes[position + 1] = (byte) (pulse >> 8);
+        return position + 2;
     }
 
-    private static List<Long> necToPulses(long address) {
-        return widthEncodedToPulses(address, new PulseParams());
+    private static long mirrorBits(long data) {
+        return Integer.reverse((int) data) >>> 24;
     }
 
-    private static String pulsesToBase64(List<Long> pulses) {
-        byte[] bytes = new byte[pulses.size() * 2];
+    private static String necToString(long code) {
+        long addr = mirrorBits((code >> 24) & 0xFF);
+        long addrNot = mirrorBits((code >> 16) & 0xFF);
+        long data = mirrorBits((code >> 8) & 0xFF);
+        long dataNot = mirrorBits(code & 0xFF);
 
-        final Integer[] i = { 0 };
+        if (addr != (addrNot ^ 0xFF)) {
+            addr = (addr << 8) | addrNot;
+        }
+        if (data == (dataNot ^ 0xFF)) {
+            return toJson("nec", code, addr, data);
+        }
+        return toJson("nec", code);
+    }
 
-        pulses.forEach(p -> {
-            int val = p.shortValue();
-            bytes[i[0]] = (byte) (val & 0xFF);
-            bytes[i[0] + 1] = (byte) ((val >> 8) & 0xFF);
-            i[0] = i[0] + 2;
-        });
+    private static String samsungToString(long code) {
+        long addr = (code >> 24) & 0xFF;
+        long addrNot = (code >> 16) & 0xFF;
+        long data = (code >> 8) & 0xFF;
+        long dataNot = code & 0xFF;
 
-        return new String(Base64.getEncoder().encode(bytes));
+        if (addr == addrNot && data == (dataNot ^ 0xFF)) {
+            return toJson("samsung", code, mirrorBits(addr), mirrorBits(data));
+        }
+        return toJson("samsung", code);
     }
 
-    /**
-     * Convert Nec-format code to base64-format code from Tuya
-     *
-     * @param code nec-format code
-     * @return the string
-     */
-    public static String necToBase64(long code) {
-        List<Long> pulses = necToPulses(code);
-        return pulsesToBase64(pulses);
+    private static String toJson(String type, long code) {
+        return appendHex(startJson(type, code).append("\"address\": None, \"data\": None, \"hex\": \""), code)
+                .append("\" }").toString();
     }
 
-    /**
-     * Convert Samsung-format code to base64-format code from Tuya
-     *
-     * @param code samsung-format code
-     * @return the string
-     */
-    public static String samsungToBase64(long code) {
-        List<Long> pulses = samsungToPulses(code);
-        return pulsesToBase64(pulses);
+    private static String toJson(String type, long code, long address, long data) {
+        return appendHex(startJson(type, code).append("\"address\": ").append(address).append(", \"data\": ")
+                .append(data).append(", \"hex\": \""), code).append("\" }").toString();
     }
 
-    private static List<Long> samsungToPulses(long address) {
-        return widthEncodedToPulses(address, new PulseParams());
+    private static StringBuilder startJson(String type, long code) {
+        return new StringBuilder(100).append("{ \"type\": \"").append(type).append("\", \"uint32\": ").append(code)
+                .append(", ");
     }
 
-    private static List<String> pulsesToSamsung(List<Integer> pulses) {
-        List<String> ret = new ArrayList<>();
-        List<Long> res = pulsesToWidthEncoded(pulses, 4500);
-        for (Long code : res) {
-            long addr = (code >> 24) & 0xFF;
-            long addrNot = (code >> 16) & 0xFF;
-            long data = (code >> 8) & 0xFF;
-            long dataNot = code & 0xFF;
-
-            String d = String.format(
-                    "{ \"type\": \"samsung\", \"uint32\": %d, \"address\": None, \"data\": None, \"hex\": \"%08X\" }",
-                    code, code);
-            if (addr == addrNot && data == (dataNot ^ 0xFF)) {
-                addr = mirrorBits(addr);
-                data = mirrorBits(data);
-                d = String.format(
-                        "{ \"type\": \"samsung\", \"uint32\": %d, \"address\": %d, \"data\": %d, \"hex\": \"%08X\" }",
-                        code, addr, data, code);
-            }
-            ret.add(d);
+    private static StringBuilder appendHex(StringBuilder builder, long code) {
+        // 8 upper case hex digits, same as %08X
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(int) (code >> shift) & 0xF]);
         }
-        return ret;
+        return builder;
     }
 
     private static class PulseParams {
         /**
          * The Start mark.
          */
-        public long startMark = 9000;
+        public final int startMark = 9000;
         /**
          * The Start space.
          */
-        public long startSpace = 4500;
+        public final int startSpace = 4500;
         /**
          * The Pulse one.
          */
-        public long pulseOne = 563;
+        public final int pulseOne = 563;
         /**
          * The Pulse zero.
          */
-        public long pulseZero = 563;
+        public final int pulseZero = 563;
         /**
          * The Space one.
          */
-        public long spaceOne = 1688;
+        public final int spaceOne = 1688;
         /**
          * The Space zero.
          */
-        public long spaceZero = 563;
+        public final int spaceZero = 563;
         /**
          * The Trailing pulse.
          */
-        public long trailingPulse = 563;
+        public final int trailingPulse = 563;
         /**
          * The Trailing space.
          */
-        public long trailingSpace = 30000;
+        public final int trailingSpace = 30000;
+    }
+
+    /**
+     * The {@link CodeCache} is a small LRU cache for encoded codes
+     */
+    @SuppressWarnings("serial")
+    private static class CodeCache extends LinkedHashMap<Long, String> {
+        public CodeCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(@NonNullByDefault({}) Map.Entry<Long, String> eldest) {
+            return size() > CODE_CACHE_SIZE;
+        }
     }
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.cloud;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link RequestSchedulerTest} checks the limits and retries of the {@link RequestScheduler}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class RequestSchedulerTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void requestsInFlightAreLimited() {
+        RequestScheduler requestScheduler = new RequestScheduler(scheduler, 1000, 10, 2, 10);
+        List<CompletableFuture<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requestScheduler.submit(() -> {
+                CompletableFuture<String> request = new CompletableFuture<>();
+                requests.add(request);
+                return request;
+            });
+        }
+
+        assertThat(requests.size(), is(2));
+        assertThat(requestScheduler.getQueuedRequests(), is(3));
+
+        requests.get(0).complete("done");
+        assertThat(requests.size(), is(3));
+        assertThat(requestScheduler.getQueuedRequests(), is(2));
+    }
+
+    @Test
+    public void burstIsLimited() throws Exception {
+        RequestScheduler requestScheduler = new RequestScheduler(scheduler, 10, 2, 10, 10);
+        AtomicInteger sent = new AtomicInteger();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(requestScheduler.submit(() -> {
+                sent.incrementAndGet();
+                return CompletableFuture.completedFuture("done");
+            }));
+        }
+
+        // two tokens available, the third request has to wait ~100 ms for the next token
+        assertThat(sent.get(), is(2));
+        assertThat(results.get(2).get(1, TimeUnit.SECONDS), is("done"));
+        assertThat(sent.get(), is(3));
+    }
+
+    @Test
+    public void throttledRequestsAreRetried() throws Exception {
+        RequestScheduler requestScheduler = new RequestScheduler(scheduler, 1000, 10, 2, 10);
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = requestScheduler.submit(() -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new ThrottlingException("throttled"))
+                : CompletableFuture.completedFuture("done"));
+
+        assertThat(result.get(1, TimeUnit.SECONDS), is("done"));
+        assertThat(attempts.get(), is(3));
+        assertThat(requestScheduler.getThrottledRequests(), is(2L));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.handler;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_DIMMER;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_NUMBER;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_STRING;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.CHANNEL_TYPE_UID_SWITCH;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.THING_TYPE_TUYA_DEVICE;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openhab.core.thing.type.ChannelTypeUID;
+import org.openhab.core.types.UnDefType;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
+import org.smarthomej.binding.tuya.internal.local.NettyTransport;
+import org.smarthomej.binding.tuya.internal.local.ReconnectCoordinator;
+import org.smarthomej.binding.tuya.internal.local.UdpDiscoveryListener;
+import org.smarthomej.commons.SimpleDynamicCommandDescriptionProvider;
+
+import com.google.gson.Gson;
+
+/**
+ * The {@link TuyaDeviceHandlerTest} checks that the values of a status message are dispatched to the channels
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@ExtendWith(MockitoExtension.class)
+@NonNullByDefault
+public class TuyaDeviceHandlerTest {
+    private static final ThingUID THING_UID = new ThingUID(THING_TYPE_TUYA_DEVICE, "testDevice");
+    private static final ChannelUID SWITCH_CHANNEL_UID = new ChannelUID(THING_UID, "switch");
+    private static final ChannelUID NUMBER_CHANNEL_UID = new ChannelUID(THING_UID, "number");
+    private static final ChannelUID DIMMER_CHANNEL_UID = new ChannelUID(THING_UID, "dimmer");
+    private static final ChannelUID STRING_CHANNEL_UID = new ChannelUID(THING_UID, "string");
+
+    private @Mock @NonNullByDefault({}) ThingHandlerCallback callback;
+    private @Mock @NonNullByDefault({}) SimpleDynamicCommandDescriptionProvider commandDescriptionProvider;
+    private @Mock @NonNullByDefault({}) NettyTransport transport;
+    private @Mock @NonNullByDefault({}) UdpDiscoveryListener udpDiscoveryListener;
+    private @Mock @NonNullByDefault({}) ReconnectCoordinator reconnectCoordinator;
+    private @NonNullByDefault({}) TuyaDeviceHandler handler;
+
+    @BeforeEach
+    public void setUp() {
+        // without an IP address the handler waits for the discovery and does not connect
+        Thing thing = ThingBuilder.create(THING_TYPE_TUYA_DEVICE, THING_UID)
+                .withConfiguration(new Configuration(Map.of("deviceId", "bf3122fba012345fc9pqa")))
+                .withChannels(List.of(channel(SWITCH_CHANNEL_UID, CHANNEL_TYPE_UID_SWITCH, Map.of("dp", 1)),
+                        channel(NUMBER_CHANNEL_UID, CHANNEL_TYPE_UID_NUMBER, Map.of("dp", 2)),
+                        channel(DIMMER_CHANNEL_UID, CHANNEL_TYPE_UID_DIMMER, Map.of("dp", 3, "dp2", 4, "max", 1000)),
+                        channel(STRING_CHANNEL_UID, CHANNEL_TYPE_UID_STRING, Map.of("dp", 5))))
+                .build();
+
+        handler = new TuyaDeviceHandler(thing, null, new Gson(), commandDescriptionProvider, transport,
+                udpDiscoveryListener, reconnectCoordinator);
+        handler.setCallback(callback);
+        handler.initialize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        handler.dispose();
+    }
+
+    @Test
+    public void statusIsDispatchedToChannels() {
+        DpStatus status = new DpStatus();
+        status.addBoolean(1, true);
+        status.addNumber(2, 21.5);
+        status.addNumber(3, 500);
+        status.addBoolean(4, true);
+        status.addObject(5, "text");
+        handler.processDeviceStatus(status);
+
+        verify(callback).stateUpdated(SWITCH_CHANNEL_UID, OnOffType.ON);
+        verify(callback).stateUpdated(NUMBER_CHANNEL_UID, new DecimalType(21.5));
+        verify(callback).stateUpdated(DIMMER_CHANNEL_UID, new PercentType(50));
+        verify(callback).stateUpdated(DIMMER_CHANNEL_UID, OnOffType.ON);
+        verify(callback).stateUpdated(STRING_CHANNEL_UID, new StringType("text"));
+    }
+
+    @Test
+    public void mapStatusIsDispatchedToChannels() {
+        // the status of sub-devices is passed as map by the gateway
+        handler.processDeviceStatus(Map.of(1, false, 2, 3.0, 5, "text"));
+
+        verify(callback).stateUpdated(SWITCH_CHANNEL_UID, OnOffType.OFF);
+        verify(callback).stateUpdated(NUMBER_CHANNEL_UID, new DecimalType(3));
+        verify(callback).stateUpdated(STRING_CHANNEL_UID, new StringType("text"));
+    }
+
+    @Test
+    public void numberAsStringIsDecoded() {
+        DpStatus status = new DpStatus();
+        status.addObject(2, "12");
+        handler.processDeviceStatus(status);
+
+        verify(callback).stateUpdated(NUMBER_CHANNEL_UID, new DecimalType(12));
+    }
+
+    @Test
+    public void dimmerIsNotUpdatedWhenSwitchedOff() {
+        // the switch DP is evaluated before the brightness, even if it is reported after it
+        DpStatus status = new DpStatus();
+        status.addNumber(3, 500);
+        status.addBoolean(4, false);
+        handler.processDeviceStatus(status);
+
+        verify(callback).stateUpdated(DIMMER_CHANNEL_UID, OnOffType.OFF);
+        verify(callback, never()).stateUpdated(eq(DIMMER_CHANNEL_UID), any(PercentType.class));
+    }
+
+    @Test
+    public void incompatibleValueSetsUndef() {
+        DpStatus status = new DpStatus();
+        status.addObject(1, "on");
+        handler.processDeviceStatus(status);
+
+        verify(callback).stateUpdated(SWITCH_CHANNEL_UID, UnDefType.UNDEF);
+    }
+
+    @Test
+    public void nullValueKeepsChannelState() {
+        DpStatus status = new DpStatus();
+        status.addBoolean(1, true);
+        handler.processDeviceStatus(status);
+
+        status = new DpStatus();
+        status.addNull(1);
+        status.addNumber(2, 1);
+        handler.processDeviceStatus(status);
+
+        verify(callback).stateUpdated(NUMBER_CHANNEL_UID, new DecimalType(1));
+        verify(callback).stateUpdated(SWITCH_CHANNEL_UID, OnOffType.ON);
+        verify(callback, never()).stateUpdated(eq(SWITCH_CHANNEL_UID), any(UnDefType.class));
+    }
+
+    private static Channel channel(ChannelUID channelUID, ChannelTypeUID channelTypeUID,
+            Map<String, Object> configuration) {
+        return ChannelBuilder.create(channelUID).withType(channelTypeUID)
+                .withConfiguration(new Configuration(configuration)).build();
+    }
+}
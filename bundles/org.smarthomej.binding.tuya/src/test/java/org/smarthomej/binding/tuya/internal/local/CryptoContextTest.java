@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.util.HexUtils;
+import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
+
+/**
+ * The {@link CryptoContextTest} checks the {@link CryptoContext} against the {@link CryptoUtil} implementation
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class CryptoContextTest {
+    private static final byte[] KEY = "5c8c3ccc1f0fbdbb".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void encryptDecryptTest() throws Exception {
+        CryptoContext cryptoContext = new CryptoContext(KEY);
+        byte[] data = "{\"dps\":{\"1\":true}}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] encrypted = cryptoContext.encrypt(data, true);
+        assertThat(encrypted, is(CryptoUtil.encryptAesEcb(data, KEY, true)));
+
+        // re-use the context and decrypt to a larger buffer
+        ByteBuffer output = ByteBuffer.allocate(encrypted.length + 16);
+        int length = cryptoContext.decrypt(ByteBuffer.wrap(encrypted), output);
+        assertThat(length, is(encrypted.length));
+        assertThat(Arrays.copyOf(output.array(), length), is(CryptoUtil.decryptAesEcb(encrypted, KEY, false)));
+    }
+
+    @Test
+    public void hmacTest() throws Exception {
+        CryptoContext cryptoContext = new CryptoContext(KEY);
+        byte[] data = HexUtils.hexToBytes("2F4311CF69649F40166D4B98E7F9ABAA");
+
+        byte[] output = new byte[CryptoContext.HMAC_LENGTH + 4];
+        cryptoContext.hmac(ByteBuffer.wrap(data), output, 4);
+
+        assertThat(Arrays.copyOfRange(output, 4, output.length), is(CryptoUtil.hmac(data, KEY)));
+        assertThat(cryptoContext.hmac(data), is(CryptoUtil.hmac(data, KEY)));
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_INITIAL_DELAY;
+import static org.smarthomej.binding.tuya.internal.TuyaBindingConstants.RECONNECT_MAXIMUM_DELAY;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link ReconnectCoordinatorTest} checks the backoff calculation of the {@link ReconnectCoordinator}
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class ReconnectCoordinatorTest {
+
+    @Test
+    public void delayIsExponentialWithJitter() {
+        assertThat(ReconnectCoordinator.getDelay(0, 0.0), is(RECONNECT_INITIAL_DELAY / 2));
+        assertThat(ReconnectCoordinator.getDelay(0, 1.0), is(RECONNECT_INITIAL_DELAY));
+        assertThat(ReconnectCoordinator.getDelay(1, 0.0), is(RECONNECT_INITIAL_DELAY));
+        assertThat(ReconnectCoordinator.getDelay(3, 1.0), is(RECONNECT_INITIAL_DELAY * 8));
+    }
+
+    @Test
+    public void delayIsCapped() {
+        assertThat(ReconnectCoordinator.getDelay(20, 1.0), is(RECONNECT_MAXIMUM_DELAY));
+        assertThat(ReconnectCoordinator.getDelay(100, 0.0), is(RECONNECT_MAXIMUM_DELAY / 2));
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.openhab.core.util.HexUtils;
+import org.smarthomej.binding.tuya.internal.local.dto.DiscoveryMessage;
+import org.smarthomej.binding.tuya.internal.local.handlers.DatagramToByteBufDecoder;
+import org.smarthomej.binding.tuya.internal.local.handlers.TuyaDecoder;
+import org.smarthomej.binding.tuya.internal.local.simulator.SimulatedDevice;
+import org.smarthomej.binding.tuya.internal.local.simulator.TuyaSimulator;
+import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
+
+import com.google.gson.Gson;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.DatagramChannel;
+
+/**
+ * The {@link TuyaDeviceSimulatorTest} runs the {@link TuyaDevice} against simulated devices
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TuyaDeviceSimulatorTest {
+    private static final String DEVICE_ID = "simulatedDevice01";
+    private static final byte[] LOCAL_KEY = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final long TIMEOUT = 5000; // in ms
+
+    private final Gson gson = new Gson();
+    private @NonNullByDefault({}) TuyaSimulator simulator;
+    private @NonNullByDefault({}) NettyTransport transport;
+
+    @BeforeEach
+    public void setUp() {
+        simulator = new TuyaSimulator(2);
+        transport = NettyTransport.create(false, 2, "tuya-test");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transport.shutdown();
+        simulator.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ProtocolVersion.class)
+    public void statusAndCommandsAreExchanged(ProtocolVersion protocol) throws Exception {
+        SimulatedDevice device = simulator.addDevice(DEVICE_ID, LOCAL_KEY, protocol, "127.0.0.1", 0,
+                Map.of(1, false, 2, "white"));
+        RecordingListener listener = new RecordingListener();
+        TuyaDevice tuyaDevice = new TuyaDevice(gson, listener, transport, DEVICE_ID, LOCAL_KEY, "127.0.0.1",
+                protocol.getString(), 0, 0, device.getPort());
+        try {
+            waitFor(() -> device.getEstablishedConnections() == 1);
+
+            MessageWrapper<?> reply = tuyaDevice.requestStatus().get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat(reply.commandType, is(CommandType.DP_QUERY));
+            assertThat(listener.awaitStatus(1, false), is(true));
+
+            Map<Integer, @Nullable Object> command = Map.of(1, true);
+            reply = tuyaDevice.set(command).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat(reply.commandType, is(protocol == ProtocolVersion.V3_4 ? CommandType.CONTROL_NEW
+                    : CommandType.CONTROL));
+            assertThat(listener.awaitStatus(1, true), is(true));
+            assertThat(device.getDps(), hasEntry(1, (Object) true));
+
+            device.pushStatus(Map.of(2, "colour"));
+            assertThat(listener.awaitStatus(2, "colour"), is(true));
+        } finally {
+            tuyaDevice.dispose();
+        }
+    }
+
+    @Test
+    public void broadcastsAreDecoded() throws Exception {
+        simulator.addDevice("simulated31", LOCAL_KEY, ProtocolVersion.V3_1, "127.0.0.1", 0, Map.of());
+        simulator.addDevice("simulated33", LOCAL_KEY, ProtocolVersion.V3_3, "127.0.0.1", 0, Map.of());
+
+        BlockingQueue<Object> messages = new LinkedBlockingQueue<>();
+        Channel channel = transport.datagramBootstrap().handler(new ChannelInitializer<DatagramChannel>() {
+            @Override
+            protected void initChannel(DatagramChannel ch) throws Exception {
+                ch.pipeline().addLast(new DatagramToByteBufDecoder(), new TuyaDecoder(gson),
+                        new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(@NonNullByDefault({}) ChannelHandlerContext ctx,
+                                    @NonNullByDefault({}) Object msg) {
+                                messages.add(msg);
+                            }
+                        });
+            }
+        }).bind("127.0.0.1", 0).sync().channel();
+        channel.attr(TuyaDevice.DEVICE_ID_ATTR).set("udpListener");
+        channel.attr(TuyaDevice.PROTOCOL_ATTR).set(ProtocolVersion.V3_1);
+        channel.attr(TuyaDevice.SESSION_KEY_ATTR).set(HexUtils.hexToBytes(CryptoUtil.md5("yGAdlopoPVldABfn")));
+        try {
+            int port = ((InetSocketAddress) channel.localAddress()).getPort();
+            simulator.broadcast("127.0.0.1", port, port);
+
+            List<String> deviceIds = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Object msg = messages.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+                assertThat(msg, instanceOf(MessageWrapper.class));
+                Object content = Objects.requireNonNull(msg instanceof MessageWrapper<?> m ? m.content : null);
+                assertThat(content, instanceOf(DiscoveryMessage.class));
+                deviceIds.add(((DiscoveryMessage) content).deviceId);
+            }
+            assertThat(deviceIds, containsInAnyOrder("simulated31", "simulated33"));
+        } finally {
+            channel.close().sync();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "Condition not met within timeout");
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingListener implements DeviceStatusListener {
+        private final BlockingQueue<Map<Integer, Object>> statuses = new LinkedBlockingQueue<>();
+
+        @Override
+        public void processDeviceStatus(Map<Integer, Object> deviceStatus) {
+            statuses.add(deviceStatus);
+        }
+
+        @Override
+        public void connectionStatus(boolean status) {
+        }
+
+        /**
+         * Wait for a status that contains the given DP value, earlier status updates are discarded
+         */
+        public boolean awaitStatus(Integer dp, Object value) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (System.currentTimeMillis() < end) {
+                @Nullable
+                Map<Integer, Object> status = statuses.poll(end - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (status != null && hasEntry(dp, value).matches(status)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.smarthomej.binding.tuya.internal.local.simulator.SimulatedDevice;
+import org.smarthomej.binding.tuya.internal.local.simulator.TuyaSimulator;
+
+import com.google.gson.Gson;
+
+/**
+ * The {@link TuyaLoadTest} measures the local communication with a large number of simulated devices
+ * <p>
+ * The test is only run if the system property <code>tuya.loadTest</code> is set to <code>true</code>. The number of
+ * devices (<code>tuya.loadTest.devices</code>), the protocol version (<code>tuya.loadTest.protocol</code>), the
+ * number of commands per device (<code>tuya.loadTest.commands</code>) and the number of status updates per device
+ * (<code>tuya.loadTest.statusUpdates</code>) can be configured.
+ * <p>
+ * The results (connection rate, command round-trip times, status throughput and allocation rate) are printed to
+ * the console, e.g. for comparing the results before and after a change.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+@EnabledIfSystemProperty(named = "tuya.loadTest", matches = "true")
+public class TuyaLoadTest {
+    private static final byte[] LOCAL_KEY = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final long TIMEOUT = 120; // in s
+
+    private final Gson gson = new Gson();
+    private final int deviceCount = Integer.getInteger("tuya.loadTest.devices", 200);
+    private final String protocol = System.getProperty("tuya.loadTest.protocol", "3.4");
+    private final int commandsPerDevice = Integer.getInteger("tuya.loadTest.commands", 50);
+    private final int statusUpdatesPerDevice = Integer.getInteger("tuya.loadTest.statusUpdates", 100);
+
+    @Test
+    public void loadTest() throws Exception {
+        AtomicLong statusUpdates = new AtomicLong();
+        DeviceStatusListener listener = new DeviceStatusListener() {
+            @Override
+            public void processDeviceStatus(Map<Integer, Object> deviceStatus) {
+                statusUpdates.incrementAndGet();
+            }
+
+            @Override
+            public void connectionStatus(boolean status) {
+            }
+        };
+
+        NettyTransport transport = NettyTransport.create(true, 0, "tuya-load");
+        List<TuyaDevice> tuyaDevices = new ArrayList<>();
+        try (TuyaSimulator simulator = new TuyaSimulator(0)) {
+            List<SimulatedDevice> devices = new ArrayList<>();
+            for (int i = 0; i < deviceCount; i++) {
+                devices.add(simulator.addDevice(String.format("simulated%05d", i), LOCAL_KEY,
+                        ProtocolVersion.fromString(protocol), "127.0.0.1", 0, Map.of(1, false, 2, 0.0)));
+            }
+            report("Devices: %d, protocol %s, %s transport", deviceCount, protocol,
+                    transport.isNative() ? "native" : "NIO");
+
+            // connect all devices
+            Measurement measurement = new Measurement();
+            for (SimulatedDevice device : devices) {
+                tuyaDevices.add(new TuyaDevice(gson, listener, transport, device.getDeviceId(), LOCAL_KEY,
+                        "127.0.0.1", protocol, 0, 0, device.getPort()));
+            }
+            waitFor(() -> devices.stream().allMatch(device -> device.getEstablishedConnections() == 1));
+            measurement.report("Connect", deviceCount, "connections");
+
+            // wait for the initial status requests of 3.1/3.3 devices
+            Thread.sleep(500);
+            statusUpdates.set(0);
+
+            // send commands, all devices in parallel, one after the other per device
+            measurement = new Measurement();
+            long[] roundTripTimes = new long[deviceCount * commandsPerDevice];
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < deviceCount; i++) {
+                futures.add(sendCommands(tuyaDevices.get(i), roundTripTimes, i * commandsPerDevice, 0));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(TIMEOUT, TimeUnit.SECONDS);
+            measurement.report("Commands", roundTripTimes.length, "commands");
+            Arrays.sort(roundTripTimes);
+            report("Command round-trip time: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    percentile(roundTripTimes, 0.5), percentile(roundTripTimes, 0.9),
+                    percentile(roundTripTimes, 0.99), percentile(roundTripTimes, 1.0));
+
+            // wait for the status messages following the commands
+            waitFor(() -> statusUpdates.get() >= roundTripTimes.length);
+            statusUpdates.set(0);
+
+            // status storm: all devices report changes as fast as possible
+            measurement = new Measurement();
+            for (int i = 0; i < statusUpdatesPerDevice; i++) {
+                for (SimulatedDevice device : devices) {
+                    device.pushStatus(Map.of(2, (double) i));
+                }
+            }
+            long expectedUpdates = (long) deviceCount * statusUpdatesPerDevice;
+            waitFor(() -> statusUpdates.get() >= expectedUpdates);
+            measurement.report("Status updates", expectedUpdates, "updates");
+
+            assertThat(statusUpdates.get(), is(expectedUpdates));
+        } finally {
+            tuyaDevices.forEach(TuyaDevice::dispose);
+            transport.shutdown();
+        }
+    }
+
+    private CompletableFuture<?> sendCommands(TuyaDevice tuyaDevice, long[] roundTripTimes, int offset,
+            int command) {
+        if (command == commandsPerDevice) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<Integer, @Nullable Object> dps = Map.of(1, command % 2 == 0);
+        long start = System.nanoTime();
+        return tuyaDevice.set(dps).thenCompose(reply -> {
+            roundTripTimes[offset + command] = System.nanoTime() - start;
+            return sendCommands(tuyaDevice, roundTripTimes, offset, command + 1);
+        });
+    }
+
+    private static double percentile(long[] sortedValues, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, index)] / 1000000.0;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > end) {
+                throw new AssertionError("Condition not met within " + TIMEOUT + " s");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void report(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+
+    /**
+     * The {@link Measurement} measures the duration and the allocated memory (of all threads) of a test phase
+     */
+    private static class Measurement {
+        private final long startTime = System.nanoTime();
+        private final long startAllocatedBytes = getAllocatedBytes();
+
+        public void report(String phase, long operations, String unit) {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+            TuyaLoadTest.report("%s: %d %s in %.3f s (%.0f %s/s), allocated %.1f MB (%.1f MB/s, %.0f bytes/%s)",
+                    phase, operations, unit, seconds, operations / seconds, unit, allocatedBytes / 1e6,
+                    allocatedBytes / 1e6 / seconds, (double) allocatedBytes / operations, unit);
+        }
+
+        private static long getAllocatedBytes() {
+            if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean)
+                    || !threadMXBean.isThreadAllocatedMemorySupported()) {
+                return 0;
+            }
+            // threads that terminated during the measurement are not included
+            return Arrays.stream(threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds()))
+                    .filter(bytes -> bytes > 0).sum();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.socket.DatagramPacket;
+
+/**
+ * The {@link DatagramToByteBufDecoderTest} checks that repeated datagrams are discarded
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class DatagramToByteBufDecoderTest {
+    private static final InetSocketAddress RECIPIENT = new InetSocketAddress("255.255.255.255", 6667);
+    private static final InetSocketAddress SENDER_1 = new InetSocketAddress("192.168.0.10", 49153);
+    private static final InetSocketAddress SENDER_2 = new InetSocketAddress("192.168.0.11", 49153);
+
+    @Test
+    public void repeatedDatagramIsDiscarded() throws Exception {
+        DatagramToByteBufDecoder decoder = new DatagramToByteBufDecoder();
+        List<Object> out = new ArrayList<>();
+
+        decoder.decode(null, datagram("first", SENDER_1), out);
+        decoder.decode(null, datagram("first", SENDER_2), out);
+        // same content from same sender (different port) is discarded
+        decoder.decode(null, datagram("first", new InetSocketAddress("192.168.0.10", 49154)), out);
+        decoder.decode(null, datagram("second", SENDER_1), out);
+        decoder.decode(null, datagram("first", SENDER_1), out);
+
+        // the repeated datagram is not passed on, all others are passed on in order
+        List<String> decoded = new ArrayList<>();
+        for (Object o : out) {
+            ByteBuf content = (ByteBuf) o;
+            decoded.add(content.toString(StandardCharsets.UTF_8));
+            content.release();
+        }
+        assertThat(decoded, contains("first", "first", "second", "first"));
+    }
+
+    private DatagramPacket datagram(String content, InetSocketAddress sender) {
+        return new DatagramPacket(Unpooled.copiedBuffer(content, StandardCharsets.UTF_8), RECIPIENT, sender);
+    }
+}
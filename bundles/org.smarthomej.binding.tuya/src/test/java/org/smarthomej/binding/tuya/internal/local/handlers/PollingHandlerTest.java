@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.smarthomej.binding.tuya.internal.local.CommandType.DP_REFRESH;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * The {@link PollingHandlerTest} checks that refreshes are only requested after the polling interval without messages
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class PollingHandlerTest {
+    private static final int POLLING_INTERVAL = 10; // in s
+
+    // the time of the handler, advanced together with the time of the channel
+    private final AtomicLong time = new AtomicLong();
+    private @NonNullByDefault({}) EmbeddedChannel channel;
+
+    @BeforeEach
+    public void setUp() {
+        channel = new EmbeddedChannel(new PollingHandler(POLLING_INTERVAL, time::get));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void firstRefreshIsDelayedByJitter() {
+        int firstRefresh = advanceUntilRefresh();
+        // the first refresh is delayed by a random fraction of the interval
+        assertThat(firstRefresh, greaterThanOrEqualTo(POLLING_INTERVAL));
+        assertThat(firstRefresh, lessThan(2 * POLLING_INTERVAL + 1));
+    }
+
+    @Test
+    public void refreshIsRequestedAfterPollingIntervalOfSilence() {
+        advanceUntilRefresh();
+
+        advance(POLLING_INTERVAL - 1);
+        assertThat(channel.readOutbound(), is(nullValue()));
+        advance(1);
+        assertRefresh(channel.readOutbound());
+        assertThat(channel.readOutbound(), is(nullValue()));
+    }
+
+    @Test
+    public void refreshIsPostponedByInboundFrame() {
+        advanceUntilRefresh();
+
+        advance(5);
+        channel.writeInbound("status");
+        assertThat(channel.readInbound(), is("status"));
+
+        // the interval is re-armed relative to the last received message
+        advance(POLLING_INTERVAL - 1);
+        assertThat(channel.readOutbound(), is(nullValue()));
+        advance(1);
+        assertRefresh(channel.readOutbound());
+    }
+
+    @Test
+    public void refreshIsSkippedWhileDeviceReports() {
+        advanceUntilRefresh();
+
+        for (int i = 0; i < 5; i++) {
+            advance(POLLING_INTERVAL - 1);
+            channel.writeInbound("status");
+            channel.readInbound();
+        }
+        assertThat(channel.readOutbound(), is(nullValue()));
+    }
+
+    @Test
+    public void pollingIsCancelledWhenChannelIsInactive() {
+        channel.close();
+        advance(3 * POLLING_INTERVAL);
+        assertThat(channel.readOutbound(), is(nullValue()));
+    }
+
+    private void advance(int seconds) {
+        // advance in steps of one second, so that tasks run at the time they are due
+        for (int i = 0; i < seconds; i++) {
+            time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            channel.advanceTimeBy(1, TimeUnit.SECONDS);
+            channel.runPendingTasks();
+        }
+    }
+
+    /**
+     * Advance the time until the first refresh was requested
+     *
+     * @return the time of the refresh in s
+     */
+    private int advanceUntilRefresh() {
+        for (int seconds = 1; seconds <= 3 * POLLING_INTERVAL; seconds++) {
+            advance(1);
+            Object message = channel.readOutbound();
+            if (message != null) {
+                assertRefresh(message);
+                return seconds;
+            }
+        }
+        throw new AssertionError("No refresh requested");
+    }
+
+    private void assertRefresh(Object message) {
+        assertThat(message instanceof RequestPipelineHandler.Request, is(true));
+        assertThat(((RequestPipelineHandler.Request) message).getMessage().commandType, is(DP_REFRESH));
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.handlers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.smarthomej.binding.tuya.internal.local.DpStatus;
+import org.smarthomej.binding.tuya.internal.local.dto.TcpStatusPayload;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The {@link TcpStatusPayloadReaderTest} checks that the {@link TcpStatusPayloadReader} produces the same values as
+ * Gson
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TcpStatusPayloadReaderTest {
+    private final Gson gson = new Gson();
+    private final TcpStatusPayloadReader reader = new TcpStatusPayloadReader(gson);
+
+    @Test
+    public void statusIsRead() {
+        String json = "{\"devId\":\"bf3122fba012345fc9pqa\",\"dps\":{\"1\":true,\"2\":\"colour\",\"3\":255,"
+                + "\"4\":12.5},\"t\":1690000000,\"unknown\":[1,{\"a\":null}]}";
+        TcpStatusPayload payload = read("  " + json + "\0\0");
+        assertThat(payload.devId, is("bf3122fba012345fc9pqa"));
+        assertThat(payload.t, is(1690000000L));
+        assertThat(payload.dps.toMap(), is(gsonDps(json)));
+    }
+
+    @Test
+    public void status34IsRead() {
+        String json = "{\"protocol\":4,\"t\":\"1690000000\",\"data\":{\"cid\":\"a4c1381234567890\","
+                + "\"dps\":{\"1\":false,\"20\":\"Küche ☀ 😀\"}}}";
+        TcpStatusPayload payload = read(json);
+        assertThat(payload.protocol, is(4));
+        assertThat(payload.data.cid, is("a4c1381234567890"));
+        assertThat(payload.data.dps.toMap(), is(Map.of(1, false, 20, "Küche ☀ 😀")));
+        assertThat(payload.dps.isEmpty(), is(true));
+    }
+
+    @Test
+    public void valuesAreReadAsPrimitives() {
+        String json = "{\"dps\":{\"1\":true,\"2\":3,\"3\":\"a\",\"4\":[1,2],\"5\":{\"b\":1},\"6\":false,"
+                + "\"7\":7,\"8\":8,\"9\":9.5,\"10\":10}}";
+        TcpStatusPayload payload = read(json);
+
+        assertThat(values(payload.dps),
+                contains("1:boolean:true", "2:number:3.0", "3:object:a", "4:object:[1.0, 2.0]", "5:object:{b=1.0}",
+                        "6:boolean:false", "7:number:7.0", "8:number:8.0", "9:number:9.5", "10:number:10.0"));
+        assertThat(payload.dps.toMap(), is(gsonDps(json)));
+    }
+
+    @Test
+    public void nullValuesAreReportedWithoutValue() {
+        TcpStatusPayload payload = read("{\"devId\":null,\"dps\":{\"1\":null,\"2\":true}}");
+        assertThat(payload.devId, is(""));
+        assertThat(values(payload.dps), contains("1:null", "2:boolean:true"));
+        assertThat(payload.dps.toMap(), is(Map.of(2, true)));
+    }
+
+    @Test
+    public void invalidUtf8IsReplaced() {
+        byte[] bytes = "{\"dps\":{\"1\":\"a?b\"}}".getBytes(StandardCharsets.UTF_8);
+        bytes[14] = (byte) 0xff;
+        TcpStatusPayload payload = reader.read(bytes, 0, bytes.length);
+        assertThat(payload.dps.toMap(), is(Map.of(1, "a\uFFFDb")));
+    }
+
+    @Test
+    public void invalidJsonIsRejected() {
+        assertThrows(JsonSyntaxException.class, () -> read(""));
+        assertThrows(JsonSyntaxException.class, () -> read("json obj data unvalid"));
+        assertThrows(JsonSyntaxException.class, () -> read("{\"dps\":{\"switch\":true}}"));
+        assertThrows(JsonSyntaxException.class, () -> read("{\"dps\":{\"1\":true"));
+    }
+
+    private TcpStatusPayload read(String json) {
+        // surround the JSON with other data to check that only the given part of the array is used
+        byte[] bytes = ("xx" + json + "yy").getBytes(StandardCharsets.UTF_8);
+        return reader.read(bytes, 2, bytes.length - 2);
+    }
+
+    private static List<String> values(DpStatus dpStatus) {
+        List<String> values = new ArrayList<>();
+        dpStatus.forEach(new DpStatus.DpConsumer() {
+            @Override
+            public void booleanValue(int dp, boolean value) {
+                values.add(dp + ":boolean:" + value);
+            }
+
+            @Override
+            public void numberValue(int dp, double value) {
+                values.add(dp + ":number:" + value);
+            }
+
+            @Override
+            public void objectValue(int dp, Object value) {
+                values.add(dp + ":object:" + value);
+            }
+
+            @Override
+            public void nullValue(int dp) {
+                values.add(dp + ":null");
+            }
+        });
+        return values;
+    }
+
+    private Map<Integer, Object> gsonDps(String json) {
+        JsonObject dps = gson.fromJson(json, JsonObject.class).getAsJsonObject("dps");
+        return gson.fromJson(dps, new TypeToken<Map<Integer, Object>>() {
+        }.getType());
+    }
+}
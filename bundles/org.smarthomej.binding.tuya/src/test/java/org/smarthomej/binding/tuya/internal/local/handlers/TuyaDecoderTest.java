@@ -28,6 +28,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openhab.core.util.HexUtils;
+import org.smarthomej.binding.tuya.internal.local.CryptoContext;
 import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
 import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
 
@@ -53,6 +54,7 @@ public class TuyaDecoderTest {
     private @Mock @NonNullByDefault({}) Attribute<String> deviceIdAttrMock;
     private @Mock @NonNullByDefault({}) Attribute<ProtocolVersion> protocolAttrMock;
     private @Mock @NonNullByDefault({}) Attribute<byte[]> sessionKeyAttrMock;
+    private @Mock @NonNullByDefault({}) Attribute<CryptoContext> cryptoContextAttrMock;
 
     @Test
     public void decode34Test() throws Exception {
@@ -70,6 +72,8 @@ public class TuyaDecoderTest {
         when(channelMock.attr(SESSION_KEY_ATTR)).thenReturn(sessionKeyAttrMock);
         when(sessionKeyAttrMock.get()).thenReturn("5c8c3ccc1f0fbdbb".getBytes(StandardCharsets.UTF_8));
 
+        when(channelMock.attr(CRYPTO_CONTEXT_ATTR)).thenReturn(cryptoContextAttrMock);
+
         byte[] packet = HexUtils.hexToBytes(
                 "000055aa0000fc6c0000000400000068000000004b578f442ec0802f26ca6794389ce4ebf57f94561e9367569b0ff90afebe08765460b35678102c0a96b666a6f6a3aabf9328e42ea1f29fd0eca40999ab964927c340dba68f847cb840b473c19572f8de9e222de2d5b1793dc7d4888a8b4f11b00000aa55");
         byte[] expectedResult = HexUtils.hexToBytes(
@@ -84,4 +88,19 @@ public class TuyaDecoderTest {
         MessageWrapper<?> result = (MessageWrapper<?>) out.get(0);
         assertThat(result.content, is(expectedResult));
     }
+
+    @Test
+    public void paddingIsValidated() {
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 2, 2 }, 4), is(2));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 'c', 1 }, 4), is(1));
+        // data after the decrypted length is ignored
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 3, 3, 3, 5 }, 4), is(3));
+
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 'c', 0 }, 4), is(-1));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 'c', 17 }, 4), is(-1));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 'c', (byte) 0x80 }, 4), is(-1));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 5, 5, 5 }, 4), is(-1));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[] { 'a', 'b', 3, 3 }, 4), is(-1));
+        assertThat(TuyaDecoder.getPaddingLength(new byte[0], 0), is(-1));
+    }
 }
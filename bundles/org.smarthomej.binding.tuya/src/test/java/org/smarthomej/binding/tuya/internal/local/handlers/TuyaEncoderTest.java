@@ -13,27 +13,35 @@
 package org.smarthomej.binding.tuya.internal.local.handlers;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.smarthomej.binding.tuya.internal.local.TuyaDevice.*;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openhab.core.util.HexUtils;
 import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.CryptoContext;
 import org.smarthomej.binding.tuya.internal.local.MessageWrapper;
 import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
+import org.smarthomej.binding.tuya.internal.local.dto.TcpStatusPayload;
 
 import com.google.gson.Gson;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.Attribute;
@@ -53,10 +61,98 @@ public class TuyaEncoderTest {
     private @Mock @NonNullByDefault({}) Attribute<String> deviceIdAttrMock;
     private @Mock @NonNullByDefault({}) Attribute<ProtocolVersion> protocolAttrMock;
     private @Mock @NonNullByDefault({}) Attribute<byte[]> sessionKeyAttrMock;
-    private @Mock @NonNullByDefault({}) ByteBuf out;
+    private @Mock @NonNullByDefault({}) Attribute<CryptoContext> cryptoContextAttrMock;
 
     @Test
     public void testEncoding34() throws Exception {
+        setupChannel(ProtocolVersion.V3_4);
+
+        byte[] payload = HexUtils.hexToBytes("47f877066f5983df0681e1f08be9f1a1");
+        byte[] expectedResult = HexUtils.hexToBytes(
+                "000055aa000000010000000300000044af06484eb01c2272666a10953aaa23e89328e42ea1f29fd0eca40999ab964927c99646647abb2ab242062a7e911953195ae99b2ee79fa00a95da8cc67e0b42e20000aa55");
+
+        MessageWrapper<?> msg = new MessageWrapper<>(CommandType.SESS_KEY_NEG_START, payload);
+
+        TuyaEncoder encoder = new TuyaEncoder(gson);
+        ByteBuf out = Unpooled.buffer();
+        encoder.encode(ctxMock, msg, out);
+
+        byte[] result = ByteBufUtil.getBytes(out);
+        assertThat(result.length, is(expectedResult.length));
+        assertThat(result, is(expectedResult));
+    }
+
+    @Test
+    public void testJsonRoundTrip33() throws Exception {
+        jsonRoundTrip(ProtocolVersion.V3_3);
+    }
+
+    @Test
+    public void testJsonRoundTrip34() throws Exception {
+        jsonRoundTrip(ProtocolVersion.V3_4);
+    }
+
+    private void jsonRoundTrip(ProtocolVersion protocolVersion) throws Exception {
+        setupChannel(protocolVersion);
+        when(ctxMock.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+
+        Map<Integer, Object> dps = Map.of(1, true, 2, "colour", 3, 255.0);
+        MessageWrapper<?> msg = new MessageWrapper<>(CommandType.STATUS, Map.of("dps", dps));
+
+        TuyaEncoder encoder = new TuyaEncoder(gson);
+        ByteBuf out = Unpooled.buffer();
+        encoder.encode(ctxMock, msg, out);
+
+        TuyaDecoder decoder = new TuyaDecoder(gson);
+        List<Object> decoded = new ArrayList<>();
+        decoder.decode(ctxMock, out, decoded);
+
+        assertThat(decoded, hasSize(1));
+        MessageWrapper<?> result = (MessageWrapper<?>) decoded.get(0);
+        assertThat(result.commandType, is(CommandType.STATUS));
+        TcpStatusPayload payload = (TcpStatusPayload) Objects.requireNonNull(result.content);
+        assertThat(protocolVersion == ProtocolVersion.V3_4 ? payload.data.dps.toMap() : payload.dps.toMap(), is(dps));
+    }
+
+    @Test
+    public void testSubDeviceJsonRoundTrip33() throws Exception {
+        subDeviceJsonRoundTrip(ProtocolVersion.V3_3);
+    }
+
+    @Test
+    public void testSubDeviceJsonRoundTrip34() throws Exception {
+        subDeviceJsonRoundTrip(ProtocolVersion.V3_4);
+    }
+
+    private void subDeviceJsonRoundTrip(ProtocolVersion protocolVersion) throws Exception {
+        setupChannel(protocolVersion);
+        when(ctxMock.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+
+        Map<Integer, Object> dps = Map.of(1, true);
+        MessageWrapper<?> msg = new MessageWrapper<>(CommandType.STATUS,
+                Map.of("cid", "a4c1380000000000", "dps", dps));
+
+        TuyaEncoder encoder = new TuyaEncoder(gson);
+        ByteBuf out = Unpooled.buffer();
+        encoder.encode(ctxMock, msg, out);
+
+        TuyaDecoder decoder = new TuyaDecoder(gson);
+        List<Object> decoded = new ArrayList<>();
+        decoder.decode(ctxMock, out, decoded);
+
+        assertThat(decoded, hasSize(1));
+        TcpStatusPayload payload = (TcpStatusPayload) Objects
+                .requireNonNull(((MessageWrapper<?>) decoded.get(0)).content);
+        if (protocolVersion == ProtocolVersion.V3_4) {
+            assertThat(payload.data.cid, is("a4c1380000000000"));
+            assertThat(payload.data.dps.toMap(), is(dps));
+        } else {
+            assertThat(payload.cid, is("a4c1380000000000"));
+            assertThat(payload.dps.toMap(), is(dps));
+        }
+    }
+
+    private void setupChannel(ProtocolVersion protocolVersion) {
         when(ctxMock.channel()).thenReturn(channelMock);
 
         when(channelMock.hasAttr(DEVICE_ID_ATTR)).thenReturn(true);
@@ -65,26 +161,12 @@ public class TuyaEncoderTest {
 
         when(channelMock.hasAttr(PROTOCOL_ATTR)).thenReturn(true);
         when(channelMock.attr(PROTOCOL_ATTR)).thenReturn(protocolAttrMock);
-        when(protocolAttrMock.get()).thenReturn(ProtocolVersion.V3_4);
+        when(protocolAttrMock.get()).thenReturn(protocolVersion);
 
         when(channelMock.hasAttr(SESSION_KEY_ATTR)).thenReturn(true);
         when(channelMock.attr(SESSION_KEY_ATTR)).thenReturn(sessionKeyAttrMock);
         when(sessionKeyAttrMock.get()).thenReturn("5c8c3ccc1f0fbdbb".getBytes(StandardCharsets.UTF_8));
 
-        byte[] payload = HexUtils.hexToBytes("47f877066f5983df0681e1f08be9f1a1");
-        byte[] expectedResult = HexUtils.hexToBytes(
-                "000055aa000000010000000300000044af06484eb01c2272666a10953aaa23e89328e42ea1f29fd0eca40999ab964927c99646647abb2ab242062a7e911953195ae99b2ee79fa00a95da8cc67e0b42e20000aa55");
-
-        MessageWrapper<?> msg = new MessageWrapper<>(CommandType.SESS_KEY_NEG_START, payload);
-
-        TuyaEncoder encoder = new TuyaEncoder(gson);
-        encoder.encode(ctxMock, msg, out);
-
-        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
-
-        verify(out).writeBytes((byte[]) captor.capture());
-        byte[] result = (byte[]) captor.getValue();
-        assertThat(result.length, is(expectedResult.length));
-        assertThat(result, is(expectedResult));
+        when(channelMock.attr(CRYPTO_CONTEXT_ATTR)).thenReturn(cryptoContextAttrMock);
     }
 }
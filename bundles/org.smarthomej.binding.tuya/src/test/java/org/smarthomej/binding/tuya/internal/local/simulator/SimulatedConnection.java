@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.simulator;
+
+import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_1;
+import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_3;
+import static org.smarthomej.binding.tuya.internal.local.ProtocolVersion.V3_4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
+import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+/**
+ * The {@link SimulatedConnection} handles a single client connection of a {@link SimulatedDevice}
+ * <p>
+ * Frames from the client are decoded, answered and the DPs of the device are updated. The connection is only used
+ * from its event loop, so the session state needs no synchronization.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class SimulatedConnection extends ByteToMessageDecoder {
+    private static final byte[] HEADER_33 = Arrays.copyOf("3.3".getBytes(StandardCharsets.UTF_8), 15);
+    private static final byte[] HEADER_34 = Arrays.copyOf("3.4".getBytes(StandardCharsets.UTF_8), 15);
+
+    private final Logger logger = LoggerFactory.getLogger(SimulatedConnection.class);
+
+    private final SimulatedDevice device;
+    private final ProtocolVersion protocol;
+
+    private @Nullable ChannelHandlerContext ctx;
+    private byte[] sessionKey;
+    private byte[] clientRandom = new byte[0];
+    private byte[] deviceRandom = new byte[0];
+    private boolean established = false;
+
+    public SimulatedConnection(SimulatedDevice device) {
+        this.device = device;
+        this.protocol = device.getProtocol();
+        this.sessionKey = device.getLocalKey();
+    }
+
+    @Override
+    public void handlerAdded(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        if (protocol != V3_4) {
+            // no session key negotiation
+            setEstablished(true);
+        }
+    }
+
+    @Override
+    public void channelInactive(@NonNullByDefault({}) ChannelHandlerContext ctx) throws Exception {
+        setEstablished(false);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    protected void decode(@NonNullByDefault({}) ChannelHandlerContext ctx, @NonNullByDefault({}) ByteBuf in,
+            @NonNullByDefault({}) List<Object> out) throws Exception {
+        while (in.readableBytes() >= 16) {
+            int frameLength = in.getInt(in.readerIndex() + 12) + 16;
+            if (in.getInt(in.readerIndex()) != 0x55aa || frameLength < 24) {
+                logger.warn("{}: Received invalid frame, closing connection", device.getDeviceId());
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            } else if (in.readableBytes() < frameLength) {
+                return;
+            }
+            byte[] frame = new byte[frameLength];
+            in.readBytes(frame);
+            device.receivedFrames.incrementAndGet();
+            handleFrame(ctx, frame);
+        }
+    }
+
+    /**
+     * Send a STATUS message with the given DPs to the client
+     *
+     * @param status the DPs
+     */
+    void sendStatus(Map<Integer, Object> status) {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx != null && established && ctx.channel().isActive()) {
+            send(ctx, CommandType.STATUS, 0, device.getStatusPayload(status), true);
+        }
+    }
+
+    private void handleFrame(ChannelHandlerContext ctx, byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        int sequenceNo = buffer.getInt(4);
+        CommandType commandType = CommandType.fromCode(buffer.getInt(8));
+        int payloadEnd = frame.length - (protocol == V3_4 ? 36 : 8);
+        if (payloadEnd < 16) {
+            logger.warn("{}: Frame too short", device.getDeviceId());
+            return;
+        }
+
+        if (protocol == V3_4) {
+            byte[] hmac = CryptoUtil.hmac(Arrays.copyOf(frame, payloadEnd), sessionKey);
+            if (!Arrays.equals(hmac, Arrays.copyOfRange(frame, payloadEnd, payloadEnd + 32))) {
+                logger.warn("{}: HMAC check failed for {}", device.getDeviceId(), commandType);
+                return;
+            }
+        } else if (CryptoUtil.calculateChecksum(frame, 0, payloadEnd) != buffer.getInt(payloadEnd)) {
+            logger.warn("{}: CRC check failed for {}", device.getDeviceId(), commandType);
+            return;
+        }
+
+        // clients never send a return code
+        byte[] payload = decodePayload(Arrays.copyOfRange(frame, 16, payloadEnd));
+        if (payload == null) {
+            logger.warn("{}: Failed to decrypt {}", device.getDeviceId(), commandType);
+            return;
+        }
+
+        switch (commandType) {
+            case SESS_KEY_NEG_START:
+                clientRandom = payload;
+                deviceRandom = CryptoUtil.generateRandom(16);
+                byte[] clientRandomHmac = Objects.requireNonNull(CryptoUtil.hmac(clientRandom, sessionKey));
+                byte[] response = new byte[48];
+                System.arraycopy(deviceRandom, 0, response, 0, 16);
+                System.arraycopy(clientRandomHmac, 0, response, 16, 32);
+                send(ctx, CommandType.SESS_KEY_NEG_RESPONSE, sequenceNo, response, false);
+                break;
+            case SESS_KEY_NEG_FINISH:
+                if (!Arrays.equals(payload, CryptoUtil.hmac(deviceRandom, sessionKey))) {
+                    logger.warn("{}: Session key negotiation failed", device.getDeviceId());
+                    ctx.close();
+                    return;
+                }
+                sessionKey = Objects.requireNonNull(
+                        CryptoUtil.generateSessionKey(clientRandom, deviceRandom, device.getLocalKey()));
+                setEstablished(true);
+                break;
+            case HEART_BEAT:
+                send(ctx, CommandType.HEART_BEAT, sequenceNo, new byte[0], false);
+                break;
+            case DP_QUERY:
+            case DP_QUERY_NEW:
+                send(ctx, commandType, sequenceNo, device.getStatusPayload(device.getDps()), false);
+                break;
+            case CONTROL:
+            case CONTROL_NEW:
+                JsonObject json = parse(payload);
+                if (json == null) {
+                    return;
+                }
+                // 3.4 wraps the DPs in a data object
+                JsonObject container = protocol == V3_4 ? json.getAsJsonObject("data") : json;
+                JsonObject dps = container != null ? container.getAsJsonObject("dps") : null;
+                Map<Integer, Object> changes = new HashMap<>();
+                if (dps != null) {
+                    for (Map.Entry<String, JsonElement> dp : dps.entrySet()) {
+                        Object value = device.getGson().fromJson(dp.getValue(), Object.class);
+                        if (value != null) {
+                            changes.put(Integer.valueOf(dp.getKey()), value);
+                        }
+                    }
+                }
+                device.applyDps(changes);
+                send(ctx, commandType, sequenceNo, new byte[0], false);
+                if (!changes.isEmpty()) {
+                    send(ctx, CommandType.STATUS, 0, device.getStatusPayload(changes), true);
+                }
+                break;
+            case DP_REFRESH:
+                JsonObject refresh = parse(payload);
+                if (refresh == null) {
+                    return;
+                }
+                List<Integer> dpIds = new ArrayList<>();
+                JsonArray requestedDpIds = refresh.getAsJsonArray("dpId");
+                if (requestedDpIds != null) {
+                    requestedDpIds.forEach(dpId -> dpIds.add(dpId.getAsInt()));
+                }
+                send(ctx, CommandType.DP_REFRESH, sequenceNo, new byte[0], false);
+                Map<Integer, Object> refreshed = device.getDps(dpIds);
+                if (!refreshed.isEmpty()) {
+                    send(ctx, CommandType.STATUS, 0, device.getStatusPayload(refreshed), true);
+                }
+                break;
+            default:
+                logger.debug("{}: Ignoring {}", device.getDeviceId(), commandType);
+        }
+    }
+
+    private byte @Nullable [] decodePayload(byte[] payload) {
+        if (payload.length == 0) {
+            return payload;
+        }
+        if (protocol == V3_4) {
+            byte[] decrypted = CryptoUtil.decryptAesEcb(payload, sessionKey, true);
+            return decrypted != null && startsWith(decrypted, HEADER_34)
+                    ? Arrays.copyOfRange(decrypted, HEADER_34.length, decrypted.length)
+                    : decrypted;
+        } else if (protocol == V3_3) {
+            byte[] encrypted = startsWith(payload, HEADER_33)
+                    ? Arrays.copyOfRange(payload, HEADER_33.length, payload.length)
+                    : payload;
+            return CryptoUtil.decryptAesEcb(encrypted, sessionKey, true);
+        } else if (startsWith(payload, V3_1.getBytes())) {
+            // "3.1" + 16 characters MD5 + Base64 encoded encrypted data
+            byte[] encrypted = Base64.getDecoder().decode(Arrays.copyOfRange(payload, 19, payload.length));
+            return CryptoUtil.decryptAesEcb(encrypted, sessionKey, true);
+        }
+        // 3.1 queries are not encrypted
+        return payload;
+    }
+
+    private void send(ChannelHandlerContext ctx, CommandType commandType, int sequenceNo, byte[] content,
+            boolean addHeader) {
+        byte[] payload = new byte[0];
+        if (content.length > 0) {
+            if (protocol == V3_4) {
+                byte[] data = addHeader ? concat(HEADER_34, content) : content;
+                payload = Objects.requireNonNull(CryptoUtil.encryptAesEcb(data, sessionKey, true));
+            } else if (protocol == V3_3) {
+                byte[] encrypted = Objects.requireNonNull(CryptoUtil.encryptAesEcb(content, sessionKey, true));
+                payload = addHeader ? concat(HEADER_33, encrypted) : encrypted;
+            } else {
+                // the client always expects the "3.1" + MD5 + Base64 format
+                byte[] encrypted = Base64.getEncoder()
+                        .encode(Objects.requireNonNull(CryptoUtil.encryptAesEcb(content, sessionKey, true)));
+                String md5 = CryptoUtil.md5("data=" + new String(encrypted, StandardCharsets.UTF_8) + "||lpv=3.1||"
+                        + new String(sessionKey, StandardCharsets.UTF_8));
+                payload = concat(concat(V3_1.getBytes(), md5.substring(8, 24).getBytes(StandardCharsets.UTF_8)),
+                        encrypted);
+            }
+        }
+
+        int trailerLength = protocol == V3_4 ? 36 : 8;
+        // devices always send a return code
+        ByteBuffer frame = ByteBuffer.allocate(20 + payload.length + trailerLength);
+        frame.putInt(0x55aa).putInt(sequenceNo).putInt(commandType.getCode())
+                .putInt(4 + payload.length + trailerLength).putInt(0).put(payload);
+        if (protocol == V3_4) {
+            frame.put(Objects.requireNonNull(CryptoUtil.hmac(Arrays.copyOf(frame.array(), frame.position()),
+                    sessionKey)));
+        } else {
+            frame.putInt(CryptoUtil.calculateChecksum(frame.array(), 0, frame.position()));
+        }
+        frame.putInt(0xaa55);
+
+        device.sentFrames.incrementAndGet();
+        ctx.writeAndFlush(Unpooled.wrappedBuffer(frame.array()));
+    }
+
+    private @Nullable JsonObject parse(byte[] payload) {
+        try {
+            return JsonParser.parseString(new String(payload, StandardCharsets.UTF_8).trim()).getAsJsonObject();
+        } catch (JsonSyntaxException | IllegalStateException e) {
+            logger.warn("{}: Failed to parse '{}': {}", device.getDeviceId(),
+                    new String(payload, StandardCharsets.UTF_8), e.getMessage());
+            return null;
+        }
+    }
+
+    private void setEstablished(boolean established) {
+        if (this.established != established) {
+            this.established = established;
+            if (established) {
+                device.establishedConnections.incrementAndGet();
+            } else {
+                device.establishedConnections.decrementAndGet();
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length
+                && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.simulator;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.util.HexUtils;
+import org.smarthomej.binding.tuya.internal.local.CommandType;
+import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
+import org.smarthomej.binding.tuya.internal.util.CryptoUtil;
+
+import com.google.gson.Gson;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * The {@link SimulatedDevice} is a TCP server that behaves like a Tuya device
+ * <p>
+ * The DP values are shared by all connections. Each connection is handled by a {@link SimulatedConnection}.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class SimulatedDevice {
+    private static final byte[] UDP_KEY = HexUtils.hexToBytes(CryptoUtil.md5("yGAdlopoPVldABfn"));
+
+    private final Gson gson;
+    private final String deviceId;
+    private final byte[] localKey;
+    private final ProtocolVersion protocol;
+    private final String address;
+    private final Map<Integer, Object> dps = new ConcurrentHashMap<>();
+    private final ChannelGroup connections = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private @Nullable Channel serverChannel;
+
+    final AtomicInteger establishedConnections = new AtomicInteger();
+    final AtomicLong receivedFrames = new AtomicLong();
+    final AtomicLong sentFrames = new AtomicLong();
+
+    SimulatedDevice(Gson gson, String deviceId, byte[] localKey, ProtocolVersion protocol, String address,
+            Map<Integer, Object> dps) {
+        this.gson = gson;
+        this.deviceId = deviceId;
+        this.localKey = localKey;
+        this.protocol = protocol;
+        this.address = address;
+        this.dps.putAll(dps);
+    }
+
+    void start(EventLoopGroup group, int port) throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024).childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        connections.add(ch);
+                        ch.pipeline().addLast("simulatedConnection", new SimulatedConnection(SimulatedDevice.this));
+                    }
+                });
+        serverChannel = bootstrap.bind(address, port).sync().channel();
+    }
+
+    void stop() {
+        connections.close().awaitUninterruptibly();
+        Channel serverChannel = this.serverChannel;
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+            this.serverChannel = null;
+        }
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public byte[] getLocalKey() {
+        return localKey;
+    }
+
+    public ProtocolVersion getProtocol() {
+        return protocol;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the port the device is listening on
+     *
+     * @return the port (or 0 if the device is not started)
+     */
+    public int getPort() {
+        Channel serverChannel = this.serverChannel;
+        return serverChannel != null ? ((InetSocketAddress) serverChannel.localAddress()).getPort() : 0;
+    }
+
+    /**
+     * Get the current DP values
+     *
+     * @return a copy of the DP values
+     */
+    public Map<Integer, Object> getDps() {
+        return Map.copyOf(dps);
+    }
+
+    /**
+     * Get the number of connections that can exchange data (i.e. the session key negotiation is finished for 3.4)
+     *
+     * @return the number of connections
+     */
+    public int getEstablishedConnections() {
+        return establishedConnections.get();
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    /**
+     * Change DP values and send a STATUS message to all connected clients (like a device that is operated manually)
+     *
+     * @param changes the changed DPs
+     */
+    public void pushStatus(Map<Integer, Object> changes) {
+        dps.putAll(changes);
+        Map<Integer, Object> status = Map.copyOf(changes);
+        for (Channel channel : connections) {
+            SimulatedConnection connection = channel.pipeline().get(SimulatedConnection.class);
+            if (connection != null) {
+                channel.eventLoop().execute(() -> connection.sendStatus(status));
+            }
+        }
+    }
+
+    /**
+     * Create the payload of a status message
+     *
+     * @param status the DPs to include
+     * @return the JSON payload
+     */
+    byte[] getStatusPayload(Map<Integer, Object> status) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        if (protocol == ProtocolVersion.V3_4) {
+            json.put("protocol", 4);
+            json.put("t", System.currentTimeMillis() / 1000);
+            json.put("data", Map.of("dps", status));
+        } else {
+            json.put("devId", deviceId);
+            json.put("dps", status);
+            json.put("t", System.currentTimeMillis() / 1000);
+        }
+        return gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Apply DPs received from a client
+     *
+     * @param changes the DPs
+     */
+    void applyDps(Map<Integer, Object> changes) {
+        dps.putAll(changes);
+    }
+
+    Map<Integer, Object> getDps(Iterable<Integer> dpIds) {
+        Map<Integer, Object> result = new LinkedHashMap<>();
+        for (Integer dpId : dpIds) {
+            Object value = dps.get(dpId);
+            if (value != null) {
+                result.put(dpId, value);
+            }
+        }
+        return result;
+    }
+
+    Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * Create a discovery broadcast for this device
+     * <p>
+     * 3.1 devices send unencrypted broadcasts (to port 6666), all others encrypted broadcasts (to port 6667).
+     *
+     * @return the complete frame
+     */
+    byte[] getBroadcastFrame() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("ip", address);
+        json.put("gwId", deviceId);
+        json.put("active", 2);
+        json.put("ability", 0);
+        json.put("mode", 0);
+        json.put("encrypt", true);
+        json.put("productKey", "simulated");
+        json.put("version", protocol.getString());
+        byte[] payload = gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+
+        CommandType commandType = CommandType.UDP;
+        if (protocol != ProtocolVersion.V3_1) {
+            commandType = CommandType.UDP_NEW;
+            payload = Objects.requireNonNull(CryptoUtil.encryptAesEcb(payload, UDP_KEY, true));
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(payload.length + 28);
+        frame.putInt(0x55aa).putInt(0).putInt(commandType.getCode()).putInt(payload.length + 12).putInt(0)
+                .put(payload);
+        frame.putInt(CryptoUtil.calculateChecksum(frame.array(), 0, frame.position())).putInt(0xaa55);
+        return frame.array();
+    }
+
+    boolean isBroadcastPlain() {
+        return protocol == ProtocolVersion.V3_1;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.local.simulator;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.smarthomej.binding.tuya.internal.local.ProtocolVersion;
+
+import com.google.gson.Gson;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The {@link TuyaSimulator} runs simulated Tuya devices for functional and load tests
+ * <p>
+ * Each device listens on its own TCP port and supports protocol 3.1, 3.3 and 3.4 (including session key
+ * negotiation). Devices reply to queries, commands and heartbeats, can send status updates on their own (see
+ * {@link SimulatedDevice#pushStatus(Map)}) and can send discovery broadcasts.
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class TuyaSimulator implements AutoCloseable {
+    private final Gson gson = new Gson();
+    private final EventLoopGroup eventLoopGroup;
+    private final List<SimulatedDevice> devices = new CopyOnWriteArrayList<>();
+    private @Nullable Channel broadcastChannel;
+
+    /**
+     * Create a new simulator
+     *
+     * @param threads the number of event loop threads (0 = Netty default)
+     */
+    public TuyaSimulator(int threads) {
+        eventLoopGroup = new NioEventLoopGroup(threads, new DefaultThreadFactory("tuya-simulator", true));
+    }
+
+    /**
+     * Add and start a device
+     *
+     * @param deviceId the id of the device
+     * @param localKey the local key (16 bytes)
+     * @param protocol the protocol version
+     * @param address the address to listen on (e.g. "127.0.0.1")
+     * @param port the port to listen on (0 = ephemeral port)
+     * @param dps the initial DP values
+     * @return the started device
+     * @throws InterruptedException if interrupted while binding
+     */
+    public SimulatedDevice addDevice(String deviceId, byte[] localKey, ProtocolVersion protocol, String address,
+            int port, Map<Integer, Object> dps) throws InterruptedException {
+        SimulatedDevice device = new SimulatedDevice(gson, deviceId, localKey, protocol, address, dps);
+        device.start(eventLoopGroup, port);
+        devices.add(device);
+        return device;
+    }
+
+    public List<SimulatedDevice> getDevices() {
+        return List.copyOf(devices);
+    }
+
+    /**
+     * Send a discovery broadcast for all devices
+     *
+     * @param host the target host (e.g. "255.255.255.255" or "127.0.0.1")
+     * @param plainPort the target port for unencrypted broadcasts (6666 for real devices)
+     * @param encryptedPort the target port for encrypted broadcasts (6667 for real devices)
+     * @throws InterruptedException if interrupted while binding the socket
+     */
+    public void broadcast(String host, int plainPort, int encryptedPort) throws InterruptedException {
+        Channel channel = getBroadcastChannel();
+        for (SimulatedDevice device : devices) {
+            InetSocketAddress target = new InetSocketAddress(host,
+                    device.isBroadcastPlain() ? plainPort : encryptedPort);
+            channel.write(new DatagramPacket(Unpooled.wrappedBuffer(device.getBroadcastFrame()), target));
+        }
+        channel.flush();
+    }
+
+    private synchronized Channel getBroadcastChannel() throws InterruptedException {
+        Channel broadcastChannel = this.broadcastChannel;
+        if (broadcastChannel == null) {
+            broadcastChannel = new Bootstrap().group(eventLoopGroup).channel(NioDatagramChannel.class)
+                    .option(ChannelOption.SO_BROADCAST, true).handler(new ChannelInboundHandlerAdapter()).bind(0)
+                    .sync().channel();
+            this.broadcastChannel = broadcastChannel;
+        }
+        return broadcastChannel;
+    }
+
+    @Override
+    public void close() {
+        devices.forEach(SimulatedDevice::stop);
+        devices.clear();
+        Channel broadcastChannel = this.broadcastChannel;
+        if (broadcastChannel != null) {
+            broadcastChannel.close().syncUninterruptibly();
+        }
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+}
@@ -15,6 +15,7 @@ package org.smarthomej.binding.tuya.internal.util;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -41,6 +42,25 @@ public class CryptoUtilTest {
         assertThat(sessionKey, is(expectedSessionKey));
     }
 
+    @Test
+    public void checksumMatchesReferenceImplementation() {
+        // heartbeat, status frames and IR code payloads
+        for (int size : new int[] { 0, 1, 24, 59, 128, 251, 1024, 2048, 4099 }) {
+            byte[] data = CryptoUtil.generateRandom(size + 8);
+            int expected = CryptoUtil.calculateChecksumWithTable(data, 4, size + 4);
+
+            assertThat(CryptoUtil.calculateChecksum(data, 4, size + 4), is(expected));
+
+            ByteBuffer buffer = ByteBuffer.wrap(data, 4, size);
+            assertThat(CryptoUtil.calculateChecksum(buffer), is(expected));
+            assertThat(buffer.position(), is(4));
+
+            ByteBuffer directBuffer = ByteBuffer.allocateDirect(size);
+            directBuffer.put(data, 4, size).flip();
+            assertThat(CryptoUtil.calculateChecksum(directBuffer), is(expected));
+        }
+    }
+
     @Test
     public void hmac() {
         byte[] deviceKey = "5c8c3ccc1f0fbdbb".getBytes(StandardCharsets.UTF_8);
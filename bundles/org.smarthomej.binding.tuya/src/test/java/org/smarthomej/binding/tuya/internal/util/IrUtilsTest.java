@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2021-2023 Contributors to the SmartHome/J project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.smarthomej.binding.tuya.internal.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link IrUtilsTest} is a test class for the {@link IrUtils} class
+ *
+ * @author Jan N. Klug - Initial contribution
+ */
+@NonNullByDefault
+public class IrUtilsTest {
+    private static final String NEC_20DF10EF = "KCOUETMCMwIzAjMCMwKYBjMCMwIzAjMCMwIzAjMCMwIzAjMCMwKYBjMCmAYz"
+            + "AjMCMwKYBjMCmAYzApgGMwKYBjMCmAYzAjMCMwIzAjMCMwIzApgGMwIzAjMCMwIzAjMCMwIzAjMCmAYzApgGMwKYBjMC"
+            + "MwIzApgGMwKYBjMCmAYzApgGMwIwdQ==";
+    // same code with a samsung start mark (4500 instead of 9000)
+    private static final String SAMSUNG_E0E040BF = "lBGUETMCmAYzApgGMwKYBjMCMwIzAjMCMwIzAjMCMwIzAjMCMwKYBjMC"
+            + "mAYzApgGMwIzAjMCMwIzAjMCMwIzAjMCMwIzAjMCMwKYBjMCMwIzAjMCMwIzAjMCMwIzAjMCMwIzAjMCmAYzAjMCMwKY"
+            + "BjMCmAYzApgGMwKYBjMCmAYzApgGMwIwdQ==";
+
+    @Test
+    public void necEncoding() {
+        assertThat(IrUtils.necToBase64(0x20DF10EFL), is(NEC_20DF10EF));
+        // second call is served from the cache
+        assertThat(IrUtils.necToBase64(0x20DF10EFL), is(NEC_20DF10EF));
+    }
+
+    @Test
+    public void necDecoding() {
+        assertThat(IrUtils.base64ToNec(NEC_20DF10EF),
+                is("{ \"type\": \"nec\", \"uint32\": 551489775, \"address\": 4, \"data\": 8, \"hex\": \"20DF10EF\" }"));
+        assertThat(IrUtils.base64ToNec(IrUtils.necToBase64(0x12345678L)),
+                is("{ \"type\": \"nec\", \"uint32\": 305419896, \"address\": None, \"data\": None, "
+                        + "\"hex\": \"12345678\" }"));
+    }
+
+    @Test
+    public void samsungDecoding() {
+        assertThat(IrUtils.base64ToSamsung(SAMSUNG_E0E040BF), is("{ \"type\": \"samsung\", \"uint32\": 3772793023, "
+                + "\"address\": 7, \"data\": 2, \"hex\": \"E0E040BF\" }"));
+    }
+
+    @Test
+    public void encodingDoesNotMixUpCodes() {
+        // the scratch buffer is shared, make sure different codes do not interfere
+        String first = IrUtils.samsungToBase64(0x00FF00FFL);
+        String second = IrUtils.necToBase64(0xFFFFFFFFL);
+        assertThat(IrUtils.base64ToNec(first).contains("\"hex\": \"00FF00FF\""), is(true));
+        assertThat(IrUtils.base64ToNec(second).contains("\"hex\": \"FFFFFFFF\""), is(true));
+    }
+
+    @Test
+    public void invalidCodesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> IrUtils.base64ToNec(""));
+        assertThrows(IllegalArgumentException.class, () -> IrUtils.base64ToNec("AQID"));
+        assertThrows(IllegalArgumentException.class, () -> IrUtils.base64ToSamsung(NEC_20DF10EF));
+    }
+}